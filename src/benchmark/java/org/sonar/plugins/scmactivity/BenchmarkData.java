@@ -0,0 +1,124 @@
+/*
+ * Sonar SCM Activity Plugin
+ * Copyright (C) 2010 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+
+package org.sonar.plugins.scmactivity;
+
+import org.apache.maven.scm.command.blame.BlameLine;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Deterministic inputs shared by the benchmarks.
+ */
+public final class BenchmarkData {
+  private static final String[] AUTHORS = {
+    "godin", "simon.brandhof@gmail.com", "Frédéric Lamotte", "Jérôme Müller-Öhlund", "david@gageot.net", "Łukasz Ślęzak"
+  };
+
+  private BenchmarkData() {
+  }
+
+  /**
+   * Java-like source file, with lines of varying length.
+   */
+  public static String sourceFile(int lineCount) {
+    Random random = new Random(42);
+    StringBuilder content = new StringBuilder();
+    for (int i = 0; i < lineCount; i++) {
+      int indent = random.nextInt(4) * 2;
+      for (int j = 0; j < indent; j++) {
+        content.append(' ');
+      }
+      content.append("int value").append(i).append(" = compute(").append(random.nextInt(1000)).append(", \"literal\");");
+      content.append(i % 10 == 0 ? "\r\n" : "\n");
+    }
+    return content.toString();
+  }
+
+  public static String revision(int commit) {
+    return String.format("%040x", commit * 2654435761L);
+  }
+
+  public static String author(int commit) {
+    return AUTHORS[commit % AUTHORS.length];
+  }
+
+  public static Date date(int commit) {
+    return new Date(1300000000000L + commit * 3600000L);
+  }
+
+  /**
+   * Blame lines of a file modified by the given number of commits, in blocks of consecutive lines.
+   * Like the git providers, the lines of a commit share the same {@link BlameLine}.
+   */
+  public static List<BlameLine> blameLines(int lineCount, int commitCount) {
+    BlameLine[] commits = new BlameLine[commitCount];
+    for (int commit = 0; commit < commitCount; commit++) {
+      commits[commit] = new BlameLine(date(commit), revision(commit), author(commit), author(commit));
+    }
+
+    Random random = new Random(42);
+    List<BlameLine> lines = new ArrayList<BlameLine>(lineCount);
+    int commit = 0;
+    for (int i = 0; i < lineCount; i++) {
+      if (random.nextInt(8) == 0) {
+        commit = random.nextInt(commitCount);
+      }
+      lines.add(commits[commit]);
+    }
+    return lines;
+  }
+
+  /**
+   * Output of <code>git blame --porcelain</code>: the commit headers are only given the first time a commit appears.
+   */
+  public static List<String> gitBlamePorcelain(int lineCount, int commitCount) {
+    Random random = new Random(42);
+    List<String> output = new ArrayList<String>();
+    boolean[] described = new boolean[commitCount];
+    int commit = 0;
+    for (int i = 1; i <= lineCount; i++) {
+      if (random.nextInt(8) == 0) {
+        commit = random.nextInt(commitCount);
+      }
+      output.add(revision(commit) + " " + i + " " + i + " 1");
+      if (!described[commit]) {
+        described[commit] = true;
+        long time = date(commit).getTime() / 1000;
+        String mail = "<" + author(commit).replace(' ', '.') + "@example.com>";
+        output.add("author " + author(commit));
+        output.add("author-mail " + mail);
+        output.add("author-time " + time);
+        output.add("author-tz +0100");
+        output.add("committer " + author(commit));
+        output.add("committer-mail " + mail);
+        output.add("committer-time " + time);
+        output.add("committer-tz +0100");
+        output.add("summary Commit number " + commit);
+        output.add("filename src/main/java/Foo.java");
+      }
+      output.add("\tint value" + i + " = compute(" + i + ");");
+    }
+    return output;
+  }
+}
@@ -0,0 +1,110 @@
+/*
+ * Sonar SCM Activity Plugin
+ * Copyright (C) 2010 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+
+package org.sonar.plugins.scmactivity;
+
+import org.apache.maven.scm.command.blame.BlameScmResult;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.sonar.api.resources.Resource;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building of the measures by line from a blame result, without running any SCM command.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BlameBenchmark {
+  @Param({"100", "10000"})
+  public int lineCount;
+
+  private final File file = new File("src/main/java/Foo.java");
+  private final Resource resource = new org.sonar.api.resources.File("Foo.java");
+  private Blame blame;
+
+  @Setup
+  public void setUp() {
+    final BlameScmResult result = new BlameScmResult("git blame", BenchmarkData.blameLines(lineCount, 50));
+
+    ScmFacade scmFacade = new ScmFacade(null, null, null) {
+      @Override
+      public BlameScmResult blame(File file) {
+        return result;
+      }
+    };
+    blame = new Blame(scmFacade, new BlameCircuitBreaker(), new NoCostModel(), new NoBlameService(), new BlameTimings(null));
+  }
+
+  @Benchmark
+  public MeasureUpdate save() {
+    return blame.save(file, resource, "SHA1", lineCount);
+  }
+
+  @Benchmark
+  public String normalizeAsciiAuthor() {
+    return Blame.normalizeString("simon.brandhof@gmail.com");
+  }
+
+  @Benchmark
+  public String normalizeNonAsciiAuthor() {
+    return Blame.normalizeString("Jérôme Müller-Öhlund");
+  }
+
+  private static class NoCostModel extends BlameCostModel {
+    NoCostModel() {
+      super(null);
+    }
+
+    @Override
+    public void record(File file, long durationNanos) {
+      // Not measured
+    }
+  }
+
+  /**
+   * Never returns a cached result, so that each invocation builds the measures.
+   */
+  private static class NoBlameService extends BlameService {
+    @Override
+    public synchronized BlameScmResult getBlame(File file, String sha1) {
+      return null;
+    }
+
+    @Override
+    public synchronized void putBlame(File file, String sha1, BlameScmResult result) {
+      // Not cached
+    }
+  }
+}
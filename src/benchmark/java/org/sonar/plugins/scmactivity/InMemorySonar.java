@@ -0,0 +1,169 @@
+/*
+ * Sonar SCM Activity Plugin
+ * Copyright (C) 2010 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+
+package org.sonar.plugins.scmactivity;
+
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.sonar.api.batch.SensorContext;
+import org.sonar.api.batch.TimeMachine;
+import org.sonar.api.batch.TimeMachineQuery;
+import org.sonar.api.measures.Measure;
+import org.sonar.api.measures.Metric;
+import org.sonar.api.resources.Project;
+import org.sonar.api.resources.Resource;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * In-memory stand-ins of the Sonar index and database used by the sensor: the measures saved by an analysis
+ * become the previous measures of the next one, and the analyzed resources become persisted (they get an id).
+ */
+final class InMemorySonar {
+  private final Map<String, Integer> ids = Maps.newHashMap();
+  private Map<String, Map<String, String>> previous = Maps.newHashMap();
+  private Map<String, Map<String, String>> current = Maps.newHashMap();
+  private Project project;
+
+  /**
+   * Makes the measures of the current analysis the previous measures of the next one.
+   */
+  void commitAnalysis() {
+    previous = current;
+    current = Maps.newHashMap();
+    for (String key : previous.keySet()) {
+      if (!ids.containsKey(key)) {
+        ids.put(key, ids.size() + 1);
+      }
+    }
+  }
+
+  /**
+   * Number of files with new measures.
+   */
+  int savedResourceCount() {
+    return current.size() - (project != null && current.containsKey(project.getKey()) ? 1 : 0);
+  }
+
+  /**
+   * @param project the analyzed project, which gets the measures saved without resource
+   */
+  SensorContext context(final Project project) {
+    this.project = project;
+    project.setId(ids.get(project.getKey()));
+    return proxy(SensorContext.class, new InvocationHandler() {
+      public Object invoke(Object proxy, Method method, Object[] args) {
+        if ("getResource".equals(method.getName())) {
+          Resource resource = (Resource) args[0];
+          resource.setId(ids.get(resource.getKey()));
+          return resource;
+        }
+        if ("saveMeasure".equals(method.getName()) && args.length == 2 && args[1] instanceof Measure) {
+          saveMeasure((Resource) args[0], (Measure) args[1]);
+          return args[1];
+        }
+        if ("saveMeasure".equals(method.getName()) && args.length == 1 && args[0] instanceof Measure) {
+          saveMeasure(project, (Measure) args[0]);
+          return args[0];
+        }
+        return defaultValue(method);
+      }
+    });
+  }
+
+  TimeMachine timeMachine() {
+    return proxy(TimeMachine.class, new InvocationHandler() {
+      public Object invoke(Object proxy, Method method, Object[] args) {
+        if ("getMeasures".equals(method.getName())) {
+          TimeMachineQuery query = (TimeMachineQuery) args[0];
+          return previousMeasures(query.getResource(), query.getMetrics());
+        }
+        return defaultValue(method);
+      }
+    });
+  }
+
+  PreviousMeasuresLoader previousMeasuresLoader() {
+    return new PreviousMeasuresLoader(null, null) {
+      private int queryCount;
+
+      @Override
+      public ListMultimap<Resource, Measure> load(Collection<Resource> resources, List<Metric> metrics) {
+        ListMultimap<Resource, Measure> measures = ArrayListMultimap.create();
+        for (List<Resource> chunk : Iterables.partition(resources, CHUNK_SIZE)) {
+          queryCount++;
+          for (Resource resource : chunk) {
+            measures.putAll(resource, previousMeasures(resource, metrics));
+          }
+        }
+        return measures;
+      }
+
+      @Override
+      public int getQueryCount() {
+        return queryCount;
+      }
+    };
+  }
+
+  private synchronized void saveMeasure(Resource resource, Measure measure) {
+    Map<String, String> measures = current.get(resource.getKey());
+    if (measures == null) {
+      measures = Maps.newHashMap();
+      current.put(resource.getKey(), measures);
+    }
+    measures.put(measure.getMetricKey(), measure.getData());
+  }
+
+  private synchronized List<Measure> previousMeasures(Resource resource, List<Metric> metrics) {
+    List<Measure> measures = Lists.newArrayList();
+    Map<String, String> data = resource.getId() == null ? null : previous.get(resource.getKey());
+    if (data != null) {
+      for (Metric metric : metrics) {
+        if (data.containsKey(metric.getKey())) {
+          measures.add(new Measure(metric, data.get(metric.getKey())));
+        }
+      }
+    }
+    return measures;
+  }
+
+  static <T> T proxy(Class<T> type, InvocationHandler handler) {
+    return type.cast(Proxy.newProxyInstance(InMemorySonar.class.getClassLoader(), new Class<?>[] {type}, handler));
+  }
+
+  private static Object defaultValue(Method method) {
+    if (method.getReturnType() == boolean.class) {
+      return false;
+    }
+    if (method.getReturnType().isPrimitive() && method.getReturnType() != void.class) {
+      return 0;
+    }
+    return null;
+  }
+}
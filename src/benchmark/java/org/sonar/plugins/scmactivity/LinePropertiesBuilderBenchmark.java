@@ -0,0 +1,79 @@
+/*
+ * Sonar SCM Activity Plugin
+ * Copyright (C) 2010 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+
+package org.sonar.plugins.scmactivity;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.sonar.api.measures.CoreMetrics;
+import org.sonar.api.measures.PropertiesBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serialization of a value by line: {@link PropertiesBuilder} against {@link LinePropertiesBuilder}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LinePropertiesBuilderBenchmark {
+  @Param({"100", "10000"})
+  public int lineCount;
+
+  private String[] values;
+
+  @Setup
+  public void setUp() {
+    values = new String[lineCount];
+    for (int i = 0; i < lineCount; i++) {
+      values[i] = BenchmarkData.revision(i % 50);
+    }
+  }
+
+  @Benchmark
+  public String propertiesBuilder() {
+    PropertiesBuilder<Integer, String> builder = new PropertiesBuilder<Integer, String>(CoreMetrics.SCM_REVISIONS_BY_LINE);
+    for (int i = 0; i < lineCount; i++) {
+      builder.add(i + 1, values[i]);
+    }
+    return builder.buildData();
+  }
+
+  @Benchmark
+  public String linePropertiesBuilder() {
+    LinePropertiesBuilder builder = new LinePropertiesBuilder(CoreMetrics.SCM_REVISIONS_BY_LINE, lineCount, 40);
+    for (int i = 0; i < lineCount; i++) {
+      builder.add(values[i]);
+    }
+    return builder.buildData();
+  }
+}
@@ -0,0 +1,282 @@
+/*
+ * Sonar SCM Activity Plugin
+ * Copyright (C) 2010 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+
+package org.sonar.plugins.scmactivity;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Throwaway local repository with generated Java files, built with the command line client of the SCM.
+ */
+abstract class LocalRepository {
+  private static final String[] AUTHORS = {"Simon Brandhof", "Frédéric Lamotte", "Evgeny Mandrikov", "Jérôme Müller"};
+
+  final File root;
+  private final Random random = new Random(42);
+  private final List<File> files = Lists.newArrayList();
+  private int commitCount;
+
+  LocalRepository(File root) {
+    this.root = root;
+  }
+
+  static LocalRepository create(String scm, File root) throws IOException {
+    LocalRepository repository;
+    if ("git".equals(scm)) {
+      repository = new Git(root);
+    } else if ("hg".equals(scm)) {
+      repository = new Mercurial(root);
+    } else if ("svn".equals(scm)) {
+      repository = new Subversion(root);
+    } else {
+      throw new IllegalArgumentException("Unsupported SCM: " + scm + ". Use git, hg or svn.");
+    }
+    repository.init();
+    return repository;
+  }
+
+  /**
+   * @return <code>true</code> if the command line client of the given SCM is installed
+   */
+  static boolean isAvailable(String scm) {
+    String executable = "svn".equals(scm) ? "svnadmin" : scm;
+    try {
+      return new ProcessBuilder(executable, "--version").redirectErrorStream(true).start().waitFor() == 0;
+    } catch (IOException e) {
+      return false;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return false;
+    }
+  }
+
+  abstract String url();
+
+  /**
+   * Directory containing the checked out files.
+   */
+  abstract File workDir();
+
+  abstract void init() throws IOException;
+
+  abstract void commitAll(String message, String author, long epochSeconds) throws IOException;
+
+  File sourceDir() {
+    return new File(workDir(), "src/main/java");
+  }
+
+  List<File> files() {
+    return Collections.unmodifiableList(files);
+  }
+
+  /**
+   * Adds the files in a first commit, then modifies some of them in each of the next commits.
+   */
+  void generate(int fileCount, int lineCount, int commits) throws IOException {
+    for (int i = 0; i < fileCount; i++) {
+      File file = new File(sourceDir(), "gen/pkg" + (i % 20) + "/Class" + i + ".java");
+      List<String> lines = Lists.newArrayList();
+      lines.add("package gen.pkg" + (i % 20) + ";");
+      lines.add("public class Class" + i + " {");
+      for (int j = 0; j < lineCount - 3; j++) {
+        lines.add("  int field" + j + " = " + random.nextInt(1000) + ";");
+      }
+      lines.add("}");
+      FileUtils.writeLines(file, "UTF-8", lines, "\n");
+      files.add(file);
+    }
+    commit();
+
+    for (int c = 1; c < commits; c++) {
+      modify(Math.max(1, fileCount / 10));
+      commit();
+    }
+  }
+
+  /**
+   * Modifies some lines of the given number of files, and commits them.
+   */
+  void modifyAndCommit(int count) throws IOException {
+    modify(count);
+    commit();
+  }
+
+  private void modify(int count) throws IOException {
+    List<File> shuffled = Lists.newArrayList(files);
+    Collections.shuffle(shuffled, random);
+    for (File file : shuffled.subList(0, Math.min(count, shuffled.size()))) {
+      List<String> lines = FileUtils.readLines(file, "UTF-8");
+      for (int i = 2; i < lines.size() - 1; i++) {
+        if (random.nextInt(10) == 0) {
+          lines.set(i, "  int field" + i + " = " + random.nextInt(1000) + ";");
+        }
+      }
+      FileUtils.writeLines(file, "UTF-8", lines, "\n");
+    }
+  }
+
+  private void commit() throws IOException {
+    String author = AUTHORS[commitCount % AUTHORS.length];
+    commitAll("Commit " + commitCount, author, 1300000000L + commitCount * 3600L);
+    commitCount++;
+  }
+
+  static String mail(String author) {
+    return author.toLowerCase().replace(' ', '.') + "@example.com";
+  }
+
+  static void run(File dir, Map<String, String> env, String... command) throws IOException {
+    ProcessBuilder builder = new ProcessBuilder(command).directory(dir).redirectErrorStream(true);
+    builder.environment().putAll(env);
+    Process process = builder.start();
+    try {
+      String output = IOUtils.toString(process.getInputStream());
+      if (process.waitFor() != 0) {
+        throw new IOException("Command failed: " + Arrays.asList(command) + "\n" + output);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted: " + Arrays.asList(command));
+    } finally {
+      IOUtils.closeQuietly(process.getInputStream());
+      IOUtils.closeQuietly(process.getOutputStream());
+    }
+  }
+
+  static void run(File dir, String... command) throws IOException {
+    run(dir, Collections.<String, String> emptyMap(), command);
+  }
+
+  static class Git extends LocalRepository {
+    Git(File root) {
+      super(root);
+    }
+
+    @Override
+    String url() {
+      return "scm:git:file://" + root.getAbsolutePath();
+    }
+
+    @Override
+    File workDir() {
+      return root;
+    }
+
+    @Override
+    void init() throws IOException {
+      root.mkdirs();
+      run(root, "git", "init", "-q");
+      run(root, "git", "config", "user.name", "Benchmark");
+      run(root, "git", "config", "user.email", "benchmark@example.com");
+      run(root, "git", "config", "commit.gpgsign", "false");
+      FileUtils.writeStringToFile(new File(root, ".gitignore"), "target/\n");
+    }
+
+    @Override
+    void commitAll(String message, String author, long epochSeconds) throws IOException {
+      Map<String, String> env = Maps.newHashMap();
+      env.put("GIT_AUTHOR_NAME", author);
+      env.put("GIT_AUTHOR_EMAIL", mail(author));
+      env.put("GIT_AUTHOR_DATE", epochSeconds + " +0000");
+      env.put("GIT_COMMITTER_NAME", author);
+      env.put("GIT_COMMITTER_EMAIL", mail(author));
+      env.put("GIT_COMMITTER_DATE", epochSeconds + " +0000");
+      run(root, env, "git", "add", "-A");
+      run(root, env, "git", "commit", "-q", "-m", message);
+    }
+  }
+
+  static class Mercurial extends LocalRepository {
+    Mercurial(File root) {
+      super(root);
+    }
+
+    @Override
+    String url() {
+      return "scm:hg:file://" + root.getAbsolutePath();
+    }
+
+    @Override
+    File workDir() {
+      return root;
+    }
+
+    @Override
+    void init() throws IOException {
+      root.mkdirs();
+      run(root, "hg", "init");
+      FileUtils.writeStringToFile(new File(root, ".hgignore"), "syntax: glob\ntarget/\n");
+    }
+
+    @Override
+    void commitAll(String message, String author, long epochSeconds) throws IOException {
+      run(root, "hg", "addremove", "-q");
+      run(root, "hg", "commit", "-q", "-m", message, "-u", author + " <" + mail(author) + ">", "-d", epochSeconds + " 0");
+    }
+  }
+
+  /**
+   * Repository served with file://, and a working copy next to it. Commit dates can't be set.
+   */
+  static class Subversion extends LocalRepository {
+    Subversion(File root) {
+      super(root);
+    }
+
+    private File repositoryDir() {
+      return new File(root, "repository");
+    }
+
+    @Override
+    String url() {
+      return "scm:svn:file://" + repositoryDir().getAbsolutePath();
+    }
+
+    @Override
+    File workDir() {
+      return new File(root, "wc");
+    }
+
+    @Override
+    void init() throws IOException {
+      root.mkdirs();
+      run(root, "svnadmin", "create", repositoryDir().getAbsolutePath());
+      run(root, "svn", "checkout", "-q", "file://" + repositoryDir().getAbsolutePath(), workDir().getAbsolutePath());
+      run(workDir(), "svn", "propset", "-q", "svn:ignore", "target", ".");
+    }
+
+    @Override
+    void commitAll(String message, String author, long epochSeconds) throws IOException {
+      run(workDir(), "svn", "add", "-q", "--force", ".");
+      run(workDir(), "svn", "commit", "-q", "-m", message, "--username", mail(author));
+    }
+  }
+}
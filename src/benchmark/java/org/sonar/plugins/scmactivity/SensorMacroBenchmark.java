@@ -0,0 +1,251 @@
+/*
+ * Sonar SCM Activity Plugin
+ * Copyright (C) 2010 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+
+package org.sonar.plugins.scmactivity;
+
+import ch.qos.logback.classic.Level;
+import com.google.common.base.Splitter;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonar.api.batch.SensorContext;
+import org.sonar.api.batch.TimeMachine;
+import org.sonar.api.config.PropertyDefinitions;
+import org.sonar.api.config.Settings;
+import org.sonar.api.resources.InputFile;
+import org.sonar.api.resources.InputFileUtils;
+import org.sonar.api.resources.Project;
+import org.sonar.api.resources.ProjectFileSystem;
+import org.sonar.plugins.scmactivity.BlameTimings.Phase;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.spy;
+
+/**
+ * End-to-end macrobenchmark of {@link ScmActivitySensor}, against a repository generated in a temporary directory.
+ * <p/>
+ * Runs a first analysis, then changes a percentage of the files in a new commit and runs a second analysis
+ * whose previous measures are those saved by the first one. The Sonar index and database are replaced by {@link InMemorySonar}.
+ * Reports the wall time, the throughput, the time spent by the main thread and the peak heap of each analysis.
+ * <p/>
+ * Usage: <code>mvn -Pbenchmarks test-compile exec:exec -Dbenchmark.main=org.sonar.plugins.scmactivity.SensorMacroBenchmark
+ * -Dbenchmark=scm=git,files=2000,lines=200,commits=20,changed=5,threads=auto,singlePass=false,indexFingerprint=false</code>
+ * <p/>
+ * Supported SCMs are git, hg and svn, as long as their command line client is installed.
+ */
+public final class SensorMacroBenchmark {
+  private static final Logger LOG = LoggerFactory.getLogger(SensorMacroBenchmark.class);
+
+  private final String scm;
+  private final int files;
+  private final int lines;
+  private final int commits;
+  private final int changedPercent;
+  private final String threads;
+  private final boolean singlePass;
+  private final boolean indexFingerprint;
+
+  SensorMacroBenchmark(Map<String, String> options) {
+    scm = option(options, "scm", "git");
+    files = Integer.parseInt(option(options, "files", "1000"));
+    lines = Integer.parseInt(option(options, "lines", "200"));
+    commits = Integer.parseInt(option(options, "commits", "10"));
+    changedPercent = Integer.parseInt(option(options, "changed", "5"));
+    threads = option(options, "threads", ScmActivityPlugin.AUTO_THREAD_COUNT);
+    singlePass = Boolean.parseBoolean(option(options, "singlePass", "false"));
+    indexFingerprint = Boolean.parseBoolean(option(options, "indexFingerprint", "false"));
+  }
+
+  public static void main(String[] args) throws Exception {
+    ((ch.qos.logback.classic.Logger) LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME)).setLevel(Level.INFO);
+
+    Map<String, String> options = Maps.newHashMap();
+    for (String arg : args) {
+      if (arg.contains("=")) {
+        options.putAll(Splitter.on(',').omitEmptyStrings().withKeyValueSeparator("=").split(arg));
+      }
+    }
+    new SensorMacroBenchmark(options).run();
+  }
+
+  void run() throws Exception {
+    if (!LocalRepository.isAvailable(scm)) {
+      LOG.warn("{} is not installed, benchmark skipped", scm);
+      return;
+    }
+
+    File root = new File(FileUtils.getTempDirectory(), "scm-activity-benchmark-" + System.nanoTime());
+    try {
+      long start = System.nanoTime();
+      LocalRepository repository = LocalRepository.create(scm, root);
+      repository.generate(files, lines, commits);
+      LOG.info("Generated {} repository with {} file(s) of {} line(s) and {} commit(s) in {}", new Object[] {scm, files, lines, commits,
+        BlameProgress.duration(System.nanoTime() - start)});
+
+      InMemorySonar sonar = new InMemorySonar();
+      Result first = analyse(repository, sonar);
+      sonar.commitAnalysis();
+
+      repository.modifyAndCommit(files * changedPercent / 100);
+      Result second = analyse(repository, sonar);
+
+      LOG.info("First analysis: {}", first);
+      LOG.info("Re-analysis with {}% of changed files: {}", changedPercent, second);
+    } finally {
+      FileUtils.deleteQuietly(root);
+    }
+  }
+
+  private Result analyse(LocalRepository repository, InMemorySonar sonar) {
+    Settings settings = new Settings(new PropertyDefinitions(ScmActivityPlugin.class));
+    settings.setProperty(ScmActivityPlugin.URL, repository.url());
+    settings.setProperty(ScmActivityPlugin.THREAD_COUNT, threads);
+    settings.setProperty(ScmActivityPlugin.SINGLE_PASS_BLAME, singlePass);
+    settings.setProperty(ScmActivityPlugin.GIT_INDEX_FINGERPRINT, indexFingerprint);
+
+    ProjectFileSystem fileSystem = fileSystem(repository);
+    Project project = spy(new Project("benchmark").setLanguageKey("java"));
+    doReturn(fileSystem).when(project).getFileSystem();
+    TimeMachine timeMachine = sonar.timeMachine();
+    SensorContext context = sonar.context(project);
+    PreviousMeasuresLoader loader = sonar.previousMeasuresLoader();
+
+    ScmConfiguration configuration = new ScmConfiguration(settings, new ScmUrlGuess(fileSystem));
+    BlameService blameService = new BlameService();
+    BlameTimings timings = new BlameTimings(fileSystem);
+    BlameCostModel costModel = new BlameCostModel(fileSystem);
+    FileToResource fileToResource = new FileToResource(project);
+    ScmFacade scmFacade = new ScmFacade(new SonarScmManager(blameService), configuration, blameService);
+    Blame blame = new Blame(scmFacade, new BlameCircuitBreaker(), costModel, blameService, timings);
+    BlameVersionSelector selector = new BlameVersionSelector(blame, new Sha1Generator(), fileToResource, fileSystem, timings);
+    ScmActivitySensor sensor = new ScmActivitySensor(configuration, selector, new UrlChecker(), fileToResource,
+        new PreviousSha1Finder(timeMachine, loader), loader, costModel, blameService, timings, timeMachine);
+
+    resetPeakHeap();
+    long cpu = ManagementFactory.getThreadMXBean().getCurrentThreadCpuTime();
+    long start = System.nanoTime();
+    try {
+      sensor.analyse(project, context);
+    } finally {
+      blameService.stop();
+    }
+    long wall = System.nanoTime() - start;
+
+    Result result = new Result();
+    result.wallNanos = wall;
+    result.mainThreadBusyNanos = wall - timings.get(Phase.WAIT).total();
+    result.mainThreadCpuNanos = ManagementFactory.getThreadMXBean().getCurrentThreadCpuTime() - cpu;
+    result.peakHeapBytes = peakHeap();
+    result.fileCount = repository.files().size();
+    result.savedCount = sonar.savedResourceCount();
+    return result;
+  }
+
+  private static ProjectFileSystem fileSystem(LocalRepository repository) {
+    final File basedir = repository.workDir();
+    final File sourceDir = repository.sourceDir();
+    final File workingDir = new File(basedir, "target/sonar");
+    final List<InputFile> mainFiles = Lists.newArrayList();
+    for (File file : repository.files()) {
+      mainFiles.add(InputFileUtils.create(sourceDir, file));
+    }
+
+    return InMemorySonar.proxy(ProjectFileSystem.class, new InvocationHandler() {
+      public Object invoke(Object proxy, Method method, Object[] args) {
+        String name = method.getName();
+        if ("mainFiles".equals(name)) {
+          return mainFiles;
+        }
+        if ("testFiles".equals(name)) {
+          return Collections.emptyList();
+        }
+        if ("getBasedir".equals(name)) {
+          return basedir;
+        }
+        if ("getSonarWorkingDirectory".equals(name)) {
+          return workingDir;
+        }
+        if ("getSourceCharset".equals(name)) {
+          return Charset.forName("UTF-8");
+        }
+        if ("getSourceDirs".equals(name)) {
+          return Collections.singletonList(sourceDir);
+        }
+        throw new UnsupportedOperationException(name);
+      }
+    });
+  }
+
+  private static void resetPeakHeap() {
+    System.gc();
+    for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+      if (pool.getType() == MemoryType.HEAP) {
+        pool.resetPeakUsage();
+      }
+    }
+  }
+
+  /**
+   * Sum of the peaks of the heap pools, which is an upper bound of the peak heap usage.
+   */
+  private static long peakHeap() {
+    long peak = 0;
+    for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+      if (pool.getType() == MemoryType.HEAP) {
+        peak += pool.getPeakUsage().getUsed();
+      }
+    }
+    return peak;
+  }
+
+  private static String option(Map<String, String> options, String key, String defaultValue) {
+    return options.containsKey(key) ? options.get(key) : defaultValue;
+  }
+
+  static class Result {
+    long wallNanos;
+    long mainThreadBusyNanos;
+    long mainThreadCpuNanos;
+    long peakHeapBytes;
+    int fileCount;
+    int savedCount;
+
+    @Override
+    public String toString() {
+      return String.format("%d file(s) in %d ms (%.1f file(s)/s), main thread busy %d ms and on CPU %d ms, peak heap %d MB, %d file(s) saved",
+          fileCount, TimeUnit.NANOSECONDS.toMillis(wallNanos), fileCount * (double) TimeUnit.SECONDS.toNanos(1) / wallNanos,
+          TimeUnit.NANOSECONDS.toMillis(mainThreadBusyNanos), TimeUnit.NANOSECONDS.toMillis(mainThreadCpuNanos), peakHeapBytes >> 20, savedCount);
+    }
+  }
+}
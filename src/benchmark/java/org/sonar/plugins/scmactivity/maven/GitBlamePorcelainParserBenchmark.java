@@ -0,0 +1,71 @@
+/*
+ * Sonar SCM Activity Plugin
+ * Copyright (C) 2010 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+
+package org.sonar.plugins.scmactivity.maven;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Joiner;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.sonar.plugins.scmactivity.BenchmarkData;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing of the output of <code>git blame --porcelain</code> with {@link GitBlamePorcelainParser}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GitBlamePorcelainParserBenchmark {
+  @Param({"100", "10000"})
+  public int lineCount;
+
+  @Param({"5", "500"})
+  public int commitCount;
+
+  private byte[] bytes;
+
+  @Setup
+  public void setUp() {
+    bytes = Joiner.on('\n').join(BenchmarkData.gitBlamePorcelain(lineCount, commitCount)).getBytes(Charsets.UTF_8);
+  }
+
+  @Benchmark
+  public int parse() throws IOException {
+    GitBlamePorcelainParser parser = new GitBlamePorcelainParser(new BlameCommits());
+    parser.parse(new ByteArrayInputStream(bytes));
+    return parser.getLines().size();
+  }
+}
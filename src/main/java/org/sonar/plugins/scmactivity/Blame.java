@@ -20,96 +20,153 @@
 
 package org.sonar.plugins.scmactivity;
 
+import com.google.common.annotations.VisibleForTesting;
 import org.apache.maven.scm.ScmException;
-import org.apache.maven.scm.command.blame.BlameLine;
 import org.apache.maven.scm.command.blame.BlameScmResult;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.sonar.api.BatchExtension;
-import org.sonar.api.measures.CoreMetrics;
 import org.sonar.api.measures.Measure;
-import org.sonar.api.measures.Metric;
-import org.sonar.api.measures.PropertiesBuilder;
 import org.sonar.api.resources.Resource;
-import org.sonar.api.utils.DateUtils;
+import org.sonar.plugins.scmactivity.BlameTimings.Phase;
+import org.sonar.plugins.scmactivity.maven.CompactBlame;
+import org.sonar.plugins.scmactivity.maven.CompactBlameScmResult;
+import org.sonar.plugins.scmactivity.maven.TimedBlameScmResult;
 
 import java.io.File;
 import java.text.Normalizer;
 import java.util.regex.Pattern;
 
+import javax.annotation.CheckForNull;
+
 public class Blame implements BatchExtension {
   private static final Logger LOG = LoggerFactory.getLogger(Blame.class);
   private static final Pattern NON_ASCII_CHARS = Pattern.compile("[^\\x00-\\x7F]");
   private static final Pattern ACCENT_CODES = Pattern.compile("\\p{InCombiningDiacriticalMarks}+");
 
   private final ScmFacade scmFacade;
+  private final BlameCircuitBreaker circuitBreaker;
+  private final BlameCostModel costModel;
+  private final BlameService blameService;
+  private final BlameTimings timings;
 
-  public Blame(ScmFacade scmFacade) {
+  public Blame(ScmFacade scmFacade, BlameCircuitBreaker circuitBreaker, BlameCostModel costModel, BlameService blameService,
+      BlameTimings timings) {
     this.scmFacade = scmFacade;
+    this.circuitBreaker = circuitBreaker;
+    this.costModel = costModel;
+    this.blameService = blameService;
+    this.timings = timings;
   }
 
   public MeasureUpdate save(File file, Resource resource, String sha1, int lineCount) {
-    BlameScmResult result = retrieveBlame(file);
+    // Same file already blamed by another module
+    BlameScmResult result = blameService.getBlame(file, sha1);
     if (result == null) {
-      return new CopyPreviousMeasures(resource);
-    }
-
-    PropertiesBuilder<Integer, String> authors = propertiesBuilder(CoreMetrics.SCM_AUTHORS_BY_LINE);
-    PropertiesBuilder<Integer, String> dates = propertiesBuilder(CoreMetrics.SCM_LAST_COMMIT_DATETIMES_BY_LINE);
-    PropertiesBuilder<Integer, String> revisions = propertiesBuilder(CoreMetrics.SCM_REVISIONS_BY_LINE);
-
-    int lineNumber = 1;
-    for (BlameLine line : result.getLines()) {
-      final String author = line.getAuthor() == null ? "" : line.getAuthor();
-      authors.add(lineNumber, normalizeString(author));
-      dates.add(lineNumber, DateUtils.formatDateTime(line.getDate()));
-      revisions.add(lineNumber, line.getRevision());
-
-      lineNumber++;
-      // SONARPLUGINS-3097 For some SCM blame is missing on last empty line
-      if (lineNumber > result.getLines().size() && lineNumber == lineCount) {
-        authors.add(lineNumber, normalizeString(author));
-        dates.add(lineNumber, DateUtils.formatDateTime(line.getDate()));
-        revisions.add(lineNumber, line.getRevision());
+      if (!circuitBreaker.allowRequest()) {
+        LOG.debug("SCM blame suspended, keep previous SCM info of {}", file);
+        return CopyPreviousMeasures.skipped(resource);
+      }
+      result = retrieveBlame(file);
+      if (result == null) {
+        return CopyPreviousMeasures.outdated(resource);
       }
+      blameService.putBlame(file, sha1, result);
     }
 
-    return new SaveNewMeasures(resource, authors.build(), dates.build(), revisions.build(), new Measure(ScmActivityMetrics.SCM_HASH, sha1));
+    return save(file, resource, sha1, lineCount, result);
   }
 
+  /**
+   * Builds the measures from blame information already retrieved.
+   */
+  public MeasureUpdate save(File file, Resource resource, String sha1, int lineCount, BlameScmResult result) {
+    long start = System.nanoTime();
+    CompactBlame blame = CompactBlame.of(result);
+    LineMeasuresSink sink = new LineMeasuresSink(Math.max(lineCount, blame.getLineCount()), blameService.getCommitValues());
+    blame.copyTo(sink);
+    sink.complete(lineCount);
+
+    SaveNewMeasures measures = new SaveNewMeasures(resource, sink.getAuthors(), sink.getDates(), sink.getRevisions(),
+        new Measure(ScmActivityMetrics.SCM_HASH, sha1));
+    timings.record(Phase.SERIALIZE, start);
+
+    return measures;
+  }
+
+  /**
+   * Must be allowed by the circuit breaker, which always gets the outcome.
+   */
+  @CheckForNull
   private BlameScmResult retrieveBlame(File file) {
-    LOG.info("Retrieve SCM info for {}", file);
+    LOG.debug("Retrieve SCM info for {}", file);
 
+    boolean success = false;
+    boolean backendFailure = false;
     try {
+      long start = System.nanoTime();
       BlameScmResult result = scmFacade.blame(file);
+      long duration = System.nanoTime() - start;
+      timings.recordDuration(Phase.BLAME, duration);
+      if (result instanceof TimedBlameScmResult) {
+        timings.recordDuration(Phase.PARSE, ((TimedBlameScmResult) result).getParseNanos());
+      }
       if (result.isSuccess()) {
+        if (!(result instanceof CompactBlameScmResult)) {
+          // Lines of the other providers don't share their values
+          blameService.getStrings().internAll(result.getLines());
+        }
+        costModel.record(file, duration);
+        success = true;
         return result;
       }
+      backendFailure = !Thread.currentThread().isInterrupted()
+        && BlameCircuitBreaker.isBackendFailure(null, result.getProviderMessage() + '\n' + result.getCommandOutput());
       LOG.warn(String.format("Fail to retrieve SCM info of: %s. Reason: %s%n%s", file, result.getProviderMessage(), result.getCommandOutput()));
     } catch (ScmException e) {
       // See SONARPLUGINS-368. Can occur on generated source
+      backendFailure = BlameCircuitBreaker.isBackendFailure(e, null);
       LOG.warn(String.format("Fail to retrieve SCM info of: %s", file), e);
+    } finally {
+      if (success) {
+        circuitBreaker.recordSuccess();
+      } else if (backendFailure) {
+        circuitBreaker.recordFailure();
+      } else {
+        // File not blamed, timeout or unexpected error
+        circuitBreaker.recordInconclusive();
+      }
     }
 
     return null;
   }
 
-  private static PropertiesBuilder<Integer, String> propertiesBuilder(Metric metric) {
-    return new PropertiesBuilder<Integer, String>(metric);
-  }
-
-  private String normalizeString(String inputString) {
+  @VisibleForTesting
+  static String normalizeString(String inputString) {
     String lowerCasedString = inputString.toLowerCase();
+    if (isAscii(lowerCasedString)) {
+      // Nothing to decompose nor to replace
+      return lowerCasedString;
+    }
     String stringWithoutAccents = removeAccents(lowerCasedString);
     return removeNonAsciiCharacters(stringWithoutAccents);
   }
 
-  private String removeAccents(String inputString) {
+  private static boolean isAscii(String value) {
+    for (int i = 0; i < value.length(); i++) {
+      if (value.charAt(i) > 0x7F) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static String removeAccents(String inputString) {
     String unicodeDecomposedString = Normalizer.normalize(inputString, Normalizer.Form.NFD);
     return ACCENT_CODES.matcher(unicodeDecomposedString).replaceAll("");
   }
 
-  private String removeNonAsciiCharacters(String inputString) {
+  private static String removeNonAsciiCharacters(String inputString) {
     return NON_ASCII_CHARS.matcher(inputString).replaceAll("_");
   }
 }
@@ -0,0 +1,207 @@
+/*
+ * Sonar SCM Activity Plugin
+ * Copyright (C) 2010 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+
+package org.sonar.plugins.scmactivity;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Throwables;
+import com.google.common.base.Ticker;
+import org.codehaus.plexus.util.cli.CommandLineException;
+import org.codehaus.plexus.util.cli.CommandLineTimeOutException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonar.api.BatchExtension;
+
+import java.io.InterruptedIOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import javax.annotation.Nullable;
+
+/**
+ * Stops launching blame commands when the SCM backend looks unavailable (server down, wrong credentials...).
+ * <p/>
+ * After <code>sonar.scm.circuitBreaker.failures</code> consecutive backend failures within <code>sonar.scm.circuitBreaker.window</code>,
+ * the circuit opens and blame is skipped: the previous measures are kept. After <code>sonar.scm.circuitBreaker.openDuration</code>,
+ * a single probe is let through. The circuit closes again if it succeeds, and stays open for another period otherwise.
+ * <p/>
+ * Only failures of the backend itself are counted: the command can't be launched, or its output reports an authentication
+ * or network error. Only successful blames reset the failure count. Files that can't be blamed (untracked or generated sources,
+ * see SONARPLUGINS-368), timeouts and unexpected errors are neither successes nor failures.
+ */
+public class BlameCircuitBreaker implements BatchExtension {
+  private static final Logger LOG = LoggerFactory.getLogger(BlameCircuitBreaker.class);
+
+  static final int DEFAULT_FAILURE_THRESHOLD = 10;
+  static final long DEFAULT_FAILURE_WINDOW_SECONDS = 60;
+  static final long DEFAULT_OPEN_DURATION_SECONDS = 30;
+
+  private static final Pattern BACKEND_ERROR = Pattern.compile("authenticat|authoriz|access denied|could not resolve host"
+    + "|unable to connect|connection (refused|reset|timed out)|network is unreachable|no route to host"
+    + "|could not read from remote repository", Pattern.CASE_INSENSITIVE);
+
+  enum State {
+    CLOSED, OPEN, HALF_OPEN
+  }
+
+  private final int failureThreshold;
+  private final long failureWindowNanos;
+  private final long openDurationNanos;
+  private final Ticker ticker;
+
+  private State state = State.CLOSED;
+  private int failures;
+  private long firstFailure;
+  private long openedAt;
+  private int skipped;
+
+  public BlameCircuitBreaker(ScmConfiguration configuration) {
+    this(configuration.getCircuitBreakerFailures(), configuration.getCircuitBreakerWindow(), configuration.getCircuitBreakerOpenDuration(),
+        TimeUnit.SECONDS, Ticker.systemTicker());
+  }
+
+  @VisibleForTesting
+  BlameCircuitBreaker() {
+    this(DEFAULT_FAILURE_THRESHOLD, DEFAULT_FAILURE_WINDOW_SECONDS, DEFAULT_OPEN_DURATION_SECONDS, TimeUnit.SECONDS, Ticker.systemTicker());
+  }
+
+  /**
+   * @param failureThreshold number of consecutive backend failures opening the circuit, or 0 to never open it
+   */
+  @VisibleForTesting
+  BlameCircuitBreaker(int failureThreshold, long failureWindow, long openDuration, TimeUnit unit, Ticker ticker) {
+    this.failureThreshold = failureThreshold;
+    this.failureWindowNanos = unit.toNanos(failureWindow);
+    this.openDurationNanos = unit.toNanos(openDuration);
+    this.ticker = ticker;
+  }
+
+  /**
+   * Whether a blame failure comes from the SCM backend rather than from the file. Commands killed by a timeout
+   * or interrupted are not backend failures.
+   *
+   * @param e the exception thrown by the SCM command, if any
+   * @param output the provider message and the output of the command
+   */
+  static boolean isBackendFailure(@Nullable Exception e, @Nullable String output) {
+    if (e != null) {
+      List<Throwable> causes = Throwables.getCausalChain(e);
+      for (Throwable cause : causes) {
+        if (isInterruption(cause)) {
+          return false;
+        }
+      }
+      for (Throwable cause : causes) {
+        if (cause instanceof CommandLineException || isBackendError(cause.getMessage())) {
+          return true;
+        }
+      }
+    }
+    return isBackendError(output);
+  }
+
+  private static boolean isInterruption(Throwable cause) {
+    return cause instanceof CommandLineTimeOutException || cause instanceof InterruptedException || cause instanceof InterruptedIOException;
+  }
+
+  private static boolean isBackendError(@Nullable String message) {
+    return message != null && BACKEND_ERROR.matcher(message).find();
+  }
+
+  /**
+   * @return <code>true</code> if the blame command can be launched. In that case, the caller must then report
+   *         the outcome with {@link #recordSuccess()}, {@link #recordFailure()} or {@link #recordInconclusive()}.
+   */
+  public synchronized boolean allowRequest() {
+    if (state == State.CLOSED) {
+      return true;
+    }
+    if (state == State.OPEN && ticker.read() - openedAt >= openDurationNanos) {
+      LOG.info("Probing SCM blame after {} skipped file(s)", skipped);
+      state = State.HALF_OPEN;
+      return true;
+    }
+
+    skipped++;
+    return false;
+  }
+
+  /**
+   * The file was blamed.
+   */
+  public synchronized void recordSuccess() {
+    if (state != State.CLOSED) {
+      LOG.info("SCM blame is back, resuming blame retrieval");
+    }
+    state = State.CLOSED;
+    failures = 0;
+    skipped = 0;
+  }
+
+  /**
+   * The backend failed, see {@link #isBackendFailure(Exception, String)}.
+   */
+  public synchronized void recordFailure() {
+    long now = ticker.read();
+
+    if (state == State.HALF_OPEN) {
+      open(now);
+      return;
+    }
+    if (state == State.OPEN || failureThreshold <= 0) {
+      // Outcome of a request allowed before the circuit opened, or circuit breaker disabled
+      return;
+    }
+
+    if (failures == 0 || now - firstFailure > failureWindowNanos) {
+      failures = 0;
+      firstFailure = now;
+    }
+    failures++;
+    if (failures >= failureThreshold) {
+      LOG.warn("SCM backend failed for {} files in a row. Blame is suspended and previous SCM information is kept for the next files.",
+          failures);
+      open(now);
+    }
+  }
+
+  /**
+   * The blame ended without telling whether the backend is available: the file can't be blamed, timeout or unexpected error.
+   * A probe is let through again by the next request.
+   */
+  public synchronized void recordInconclusive() {
+    if (state == State.HALF_OPEN) {
+      // Still past the open duration
+      state = State.OPEN;
+    }
+  }
+
+  private void open(long now) {
+    state = State.OPEN;
+    openedAt = now;
+    failures = 0;
+  }
+
+  @VisibleForTesting
+  synchronized State getState() {
+    return state;
+  }
+}
@@ -0,0 +1,189 @@
+/*
+ * Sonar SCM Activity Plugin
+ * Copyright (C) 2010 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+
+package org.sonar.plugins.scmactivity;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonar.api.BatchExtension;
+import org.sonar.api.resources.InputFile;
+import org.sonar.api.resources.ProjectFileSystem;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Predicts the cost of the blame of a file, so that the most expensive files are started first
+ * and do not set the duration of the whole analysis by starting last.
+ * <p/>
+ * Blame durations are recorded and stored in the working directory for the next analyses.
+ * Files never blamed before are estimated from their size, using the average duration by byte of the recorded files.
+ * Unchanged files are not blamed: whatever their rank, they only cost a read of their content.
+ */
+public class BlameCostModel implements BatchExtension {
+  private static final Logger LOG = LoggerFactory.getLogger(BlameCostModel.class);
+
+  static final String FILENAME = "scm-blame-durations.properties";
+
+  /**
+   * Used until some durations are recorded, roughly 40 bytes by line and 50 microseconds by line.
+   */
+  static final double DEFAULT_NANOS_PER_BYTE = TimeUnit.MICROSECONDS.toNanos(50) / 40.0;
+
+  private final ProjectFileSystem projectFileSystem;
+  private final ConcurrentMap<String, Long> recorded = Maps.newConcurrentMap();
+  private Map<String, Long> previous;
+
+  public BlameCostModel(ProjectFileSystem projectFileSystem) {
+    this.projectFileSystem = projectFileSystem;
+  }
+
+  /**
+   * Thread-safe.
+   */
+  public void record(File file, long durationNanos) {
+    recorded.put(key(file), TimeUnit.NANOSECONDS.toMillis(durationNanos));
+  }
+
+  /**
+   * @return the files sorted by decreasing predicted blame duration
+   */
+  public List<InputFile> sortByDecreasingCost(Collection<InputFile> inputFiles) {
+    Map<String, Long> durations = previousDurations();
+    double nanosPerByte = nanosPerByte(inputFiles, durations);
+
+    final Map<InputFile, Long> costs = Maps.newHashMap();
+    for (InputFile inputFile : inputFiles) {
+      File file = inputFile.getFile();
+      Long duration = durations.get(key(file));
+      costs.put(inputFile, duration == null ? (long) (file.length() * nanosPerByte) : TimeUnit.MILLISECONDS.toNanos(duration));
+    }
+
+    List<InputFile> sorted = Lists.newArrayList(inputFiles);
+    Collections.sort(sorted, new Comparator<InputFile>() {
+      public int compare(InputFile left, InputFile right) {
+        return costs.get(right).compareTo(costs.get(left));
+      }
+    });
+    return sorted;
+  }
+
+  /**
+   * Stores the durations recorded during this analysis, along with the previous durations of the files not blamed again.
+   */
+  public void save() {
+    if (recorded.isEmpty()) {
+      return;
+    }
+
+    Properties properties = new Properties();
+    for (Map.Entry<String, Long> entry : previousDurations().entrySet()) {
+      properties.setProperty(entry.getKey(), entry.getValue().toString());
+    }
+    for (Map.Entry<String, Long> entry : recorded.entrySet()) {
+      properties.setProperty(entry.getKey(), entry.getValue().toString());
+    }
+
+    OutputStream output = null;
+    try {
+      File file = durationsFile();
+      file.getParentFile().mkdirs();
+      output = new FileOutputStream(file);
+      properties.store(output, "Durations of SCM blame in milliseconds");
+    } catch (IOException e) {
+      LOG.warn("Unable to store SCM blame durations", e);
+    } finally {
+      IOUtils.closeQuietly(output);
+    }
+  }
+
+  private synchronized Map<String, Long> previousDurations() {
+    if (previous == null) {
+      previous = load();
+    }
+    return previous;
+  }
+
+  private Map<String, Long> load() {
+    Map<String, Long> durations = Maps.newHashMap();
+
+    File file = durationsFile();
+    if (!file.isFile()) {
+      return durations;
+    }
+
+    Properties properties = new Properties();
+    InputStream input = null;
+    try {
+      input = new FileInputStream(file);
+      properties.load(input);
+      for (String key : properties.stringPropertyNames()) {
+        durations.put(key, Long.parseLong(properties.getProperty(key)));
+      }
+    } catch (IOException e) {
+      LOG.warn("Unable to load SCM blame durations", e);
+    } catch (NumberFormatException e) {
+      LOG.warn("Ignore corrupted SCM blame durations: {}", file);
+      durations.clear();
+    } finally {
+      IOUtils.closeQuietly(input);
+    }
+
+    return durations;
+  }
+
+  private double nanosPerByte(Collection<InputFile> inputFiles, Map<String, Long> durations) {
+    long totalBytes = 0;
+    long totalNanos = 0;
+    for (InputFile inputFile : inputFiles) {
+      Long duration = durations.get(key(inputFile.getFile()));
+      if (duration != null) {
+        totalBytes += inputFile.getFile().length();
+        totalNanos += TimeUnit.MILLISECONDS.toNanos(duration);
+      }
+    }
+    return totalBytes == 0 ? DEFAULT_NANOS_PER_BYTE : (double) totalNanos / totalBytes;
+  }
+
+  @VisibleForTesting
+  File durationsFile() {
+    return new File(projectFileSystem.getSonarWorkingDirectory(), FILENAME);
+  }
+
+  private String key(File file) {
+    return projectFileSystem.getBasedir().toURI().relativize(file.toURI()).getPath();
+  }
+}
@@ -0,0 +1,139 @@
+/*
+ * Sonar SCM Activity Plugin
+ * Copyright (C) 2010 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+
+package org.sonar.plugins.scmactivity;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Ticker;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Periodically logs the progress of the blame retrieval of a module, instead of one line by file.
+ * <p/>
+ * Only used by the main thread.
+ */
+class BlameProgress {
+  private static final Logger LOG = LoggerFactory.getLogger(BlameProgress.class);
+
+  static final long REPORT_PERIOD_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+  private final int total;
+  private final BlameService blameService;
+  private final Ticker ticker;
+  private final long start;
+  private final int initialCacheHits;
+  private long lastReport;
+  private int done;
+  private int blamed;
+  private int unchanged;
+  private int skipped;
+
+  BlameProgress(int total, BlameService blameService) {
+    this(total, blameService, Ticker.systemTicker());
+  }
+
+  @VisibleForTesting
+  BlameProgress(int total, BlameService blameService, Ticker ticker) {
+    this.total = total;
+    this.blameService = blameService;
+    this.ticker = ticker;
+    this.start = ticker.read();
+    this.lastReport = start;
+    this.initialCacheHits = blameService.getCacheHits();
+  }
+
+  void blamed() {
+    done++;
+    blamed++;
+  }
+
+  /**
+   * Previous measures kept: file not changed, or blame not available.
+   */
+  void unchanged() {
+    done++;
+    unchanged++;
+  }
+
+  /**
+   * Changed but not blamed, because blame is suspended. The previous measures are kept.
+   */
+  void skipped() {
+    done++;
+    skipped++;
+  }
+
+  /**
+   * Neither blamed nor unchanged: timeout or failure.
+   */
+  void failed() {
+    done++;
+  }
+
+  /**
+   * Logs the progress if the previous report is old enough.
+   */
+  void report() {
+    long now = ticker.read();
+    if (now - lastReport >= REPORT_PERIOD_NANOS) {
+      lastReport = now;
+      LOG.info(status());
+    }
+  }
+
+  void logSummary() {
+    LOG.info("SCM blame retrieval done for {} file(s) in {}: {} blamed, {} unchanged, {} skipped",
+        new Object[] {done, duration(ticker.read() - start), blamed, unchanged, skipped});
+  }
+
+  @VisibleForTesting
+  String status() {
+    long elapsed = ticker.read() - start;
+    double filesPerSecond = elapsed == 0 ? 0.0 : done * (double) TimeUnit.SECONDS.toNanos(1) / elapsed;
+
+    StringBuilder status = new StringBuilder()
+        .append(done).append('/').append(total).append(" file(s) done")
+        .append(" (").append(unchanged).append(" unchanged, ").append(skipped).append(" skipped, ")
+        .append(blameService.getCacheHits() - initialCacheHits)
+        .append(" already blamed by another module), ")
+        .append(String.format("%.1f", filesPerSecond)).append(" file(s)/s, ETA ");
+    if (done == 0) {
+      status.append("unknown");
+    } else {
+      status.append(duration((long) ((total - done) * (double) elapsed / done)));
+    }
+    return status.toString();
+  }
+
+  @VisibleForTesting
+  static String duration(long nanos) {
+    long seconds = TimeUnit.NANOSECONDS.toSeconds(nanos);
+    if (seconds < 60) {
+      return seconds + "s";
+    }
+    if (seconds < 3600) {
+      return String.format("%dm%02ds", seconds / 60, seconds % 60);
+    }
+    return String.format("%dh%02dm", seconds / 3600, (seconds % 3600) / 60);
+  }
+}
@@ -0,0 +1,188 @@
+/*
+ * Sonar SCM Activity Plugin
+ * Copyright (C) 2010 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+
+package org.sonar.plugins.scmactivity;
+
+import com.google.common.base.Supplier;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.maven.scm.command.blame.BlameScmResult;
+import org.apache.maven.scm.repository.ScmRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonar.api.BatchExtension;
+import org.sonar.api.batch.InstantiationStrategy;
+import org.sonar.plugins.scmactivity.maven.BlameCommits;
+import org.sonar.plugins.scmactivity.maven.JGitRepositories;
+import org.sonar.plugins.scmactivity.maven.StringPool;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.CheckForNull;
+
+/**
+ * State shared by the analyses of all the modules of a multi-module project:
+ * <ul>
+ * <li>the blame threads, created once and stopped at the end of the batch</li>
+ * <li>the SCM repositories, resolved once for each URL and credentials</li>
+ * <li>the recent blame results, so that source files shared by several modules are blamed only once</li>
+ * <li>the metadata of the blamed commits, stored once whatever the number of files and modules</li>
+ * <li>the formatted dates and normalized authors of the commits</li>
+ * <li>the canonical instances of the authors, committers and revisions</li>
+ * <li>the git repositories opened by JGit, closed at the end of the batch</li>
+ * </ul>
+ */
+@InstantiationStrategy(InstantiationStrategy.PER_BATCH)
+public class BlameService implements BatchExtension {
+  private static final Logger LOG = LoggerFactory.getLogger(BlameService.class);
+
+  /**
+   * Bounds the memory used by the cached blame results, roughly 100 bytes by line.
+   */
+  static final int MAX_CACHED_LINES = 100000;
+
+  private final Map<Object, ScmRepository> repositories = Maps.newHashMap();
+  private final Map<String, BlameScmResult> blameResults = Maps.newLinkedHashMap();
+  private final StringPool strings = new StringPool();
+  private final BlameCommits commits = new BlameCommits(strings);
+  private final CommitValues commitValues = new CommitValues(strings);
+  private final JGitRepositories jgitRepositories = new JGitRepositories();
+  private int cachedLines;
+  private int cacheHits;
+  private ThreadPoolExecutor executor;
+
+  /**
+   * Reuses the pool of the previous module, resized to the thread count of the module. The returned pool must not be shut down.
+   */
+  public synchronized ThreadPoolExecutor getExecutor(int threadCount) {
+    if (executor == null) {
+      executor = new ThreadPoolExecutor(threadCount, threadCount, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(),
+          new ThreadFactoryBuilder().setNameFormat("scm-blame-%d").setDaemon(true).build());
+    } else {
+      BlameThreadCount.resize(executor, threadCount);
+    }
+    return executor;
+  }
+
+  /**
+   * @param key identifies the repository, for example its URL and credentials
+   */
+  public synchronized ScmRepository getRepository(Object key, Supplier<ScmRepository> factory) {
+    ScmRepository repository = repositories.get(key);
+    if (repository == null) {
+      repository = factory.get();
+      repositories.put(key, repository);
+    }
+    return repository;
+  }
+
+  public BlameCommits getCommits() {
+    return commits;
+  }
+
+  public StringPool getStrings() {
+    return strings;
+  }
+
+  public JGitRepositories getJGitRepositories() {
+    return jgitRepositories;
+  }
+
+  CommitValues getCommitValues() {
+    return commitValues;
+  }
+
+  @CheckForNull
+  public synchronized BlameScmResult getBlame(File file, String sha1) {
+    BlameScmResult result = blameResults.get(key(file, sha1));
+    if (result != null) {
+      cacheHits++;
+    }
+    return result;
+  }
+
+  /**
+   * Number of files found in the cache of blame results since the beginning of the batch.
+   */
+  public synchronized int getCacheHits() {
+    return cacheHits;
+  }
+
+  public synchronized void putBlame(File file, String sha1, BlameScmResult result) {
+    int lines = result.getLines().size();
+    if (lines > MAX_CACHED_LINES) {
+      return;
+    }
+
+    BlameScmResult previous = blameResults.put(key(file, sha1), result);
+    if (previous != null) {
+      cachedLines -= previous.getLines().size();
+    }
+    cachedLines += lines;
+
+    // Evict the oldest results
+    Iterator<BlameScmResult> oldest = blameResults.values().iterator();
+    while (cachedLines > MAX_CACHED_LINES) {
+      cachedLines -= oldest.next().getLines().size();
+      oldest.remove();
+    }
+  }
+
+  private static String key(File file, String sha1) {
+    String path;
+    try {
+      path = file.getCanonicalPath();
+    } catch (IOException e) {
+      path = file.getAbsolutePath();
+    }
+    return path + ':' + sha1;
+  }
+
+  private void logStrings() {
+    StringPool strings = getStrings();
+    long lookups = strings.getHits() + strings.getMisses();
+    if (lookups > 0) {
+      LOG.info("SCM authors and revisions: {} distinct value(s), {}% of {} found in the pool",
+          new Object[] {strings.size(), 100 * strings.getHits() / lookups, lookups});
+    }
+  }
+
+  public synchronized void stop() {
+    if (executor != null) {
+      executor.shutdownNow();
+      executor = null;
+    }
+    repositories.clear();
+    blameResults.clear();
+    cachedLines = 0;
+    getCommits().clear();
+    commitValues.clear();
+    logStrings();
+    getStrings().clear();
+    getJGitRepositories().close();
+  }
+
+}
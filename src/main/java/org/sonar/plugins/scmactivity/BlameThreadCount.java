@@ -0,0 +1,193 @@
+/*
+ * Sonar SCM Activity Plugin
+ * Copyright (C) 2010 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+
+package org.sonar.plugins.scmactivity;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Ticker;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Number of threads used to retrieve blame information.
+ * <p/>
+ * Twice as many tasks as threads are kept in flight so that the pool never starves.
+ * <p/>
+ * The count is either fixed, or tuned at runtime when <code>sonar.scm.threadCount=auto</code>.
+ * Blame mostly waits on child processes and disk, so the number of processors is a poor guess:
+ * the adaptive mode measures the throughput (blamed files per second) and keeps adding threads while it improves,
+ * unless the system load gets too high.
+ */
+class BlameThreadCount {
+  private static final Logger LOG = LoggerFactory.getLogger(BlameThreadCount.class);
+
+  /**
+   * Keeps each thread busy while the main thread saves the measures, without letting
+   * the blame results pile up in memory.
+   */
+  private static final int IN_FLIGHT_TASKS_PER_THREAD = 2;
+
+  private final int initial;
+
+  protected BlameThreadCount(int initial) {
+    this.initial = initial;
+  }
+
+  static BlameThreadCount fixed(int threadCount) {
+    return new BlameThreadCount(threadCount);
+  }
+
+  static BlameThreadCount adaptive(ThreadPoolExecutor executor) {
+    int processors = Runtime.getRuntime().availableProcessors();
+    return new Adaptive(executor, processors, Adaptive.MAX_THREADS_PER_PROCESSOR * processors, Ticker.systemTicker(),
+        ManagementFactory.getOperatingSystemMXBean());
+  }
+
+  public int get() {
+    return initial;
+  }
+
+  /**
+   * Maximum number of tasks submitted and not yet consumed by the main thread.
+   */
+  public int maxInFlight() {
+    return IN_FLIGHT_TASKS_PER_THREAD * get();
+  }
+
+  /**
+   * Called once for each task that ran a blame, whether it succeeded, failed or timed out.
+   */
+  public void taskCompleted() {
+    // Nothing to tune
+  }
+
+  public void logReport() {
+    // Nothing to report
+  }
+
+  static void resize(ThreadPoolExecutor pool, int threadCount) {
+    // Keep core <= max at any time
+    if (threadCount > pool.getMaximumPoolSize()) {
+      pool.setMaximumPoolSize(threadCount);
+      pool.setCorePoolSize(threadCount);
+    } else {
+      pool.setCorePoolSize(threadCount);
+      pool.setMaximumPoolSize(threadCount);
+    }
+  }
+
+  @VisibleForTesting
+  static class Adaptive extends BlameThreadCount {
+    static final int MAX_THREADS_PER_PROCESSOR = 4;
+    static final long SAMPLE_PERIOD_NANOS = TimeUnit.SECONDS.toNanos(2);
+    static final double TOLERANCE = 0.05;
+    static final double MAX_LOAD_PER_PROCESSOR = 2.0;
+
+    private final ThreadPoolExecutor executor;
+    private final int max;
+    private final Ticker ticker;
+    private final OperatingSystemMXBean os;
+
+    private int threadCount;
+    private int direction = 1;
+    private long sampleStart;
+    private int sampleCompleted;
+    private double previousThroughput;
+    private double bestThroughput;
+    private int bestThreadCount;
+
+    Adaptive(ThreadPoolExecutor executor, int initial, int max, Ticker ticker, OperatingSystemMXBean os) {
+      super(initial);
+      this.executor = executor;
+      this.max = Math.max(initial, max);
+      this.ticker = ticker;
+      this.os = os;
+      this.sampleStart = ticker.read();
+      this.bestThreadCount = initial;
+      resize(initial);
+    }
+
+    @Override
+    public int get() {
+      return threadCount;
+    }
+
+    @Override
+    public void taskCompleted() {
+      sampleCompleted++;
+
+      long now = ticker.read();
+      long elapsed = now - sampleStart;
+      if (elapsed >= SAMPLE_PERIOD_NANOS) {
+        tune(sampleCompleted * (double) TimeUnit.SECONDS.toNanos(1) / elapsed);
+        sampleStart = now;
+        sampleCompleted = 0;
+      }
+    }
+
+    private void tune(double throughput) {
+      if (throughput > bestThroughput) {
+        bestThroughput = throughput;
+        bestThreadCount = threadCount;
+      }
+
+      if (isOverloaded()) {
+        direction = -1;
+      } else if (throughput < previousThroughput * (1 - TOLERANCE)) {
+        direction = -direction;
+      }
+      previousThroughput = throughput;
+
+      int next = threadCount + direction;
+      if (next < 1 || next > max) {
+        direction = -direction;
+        next = threadCount + direction;
+      }
+      resize(Math.max(1, Math.min(max, next)));
+
+      LOG.debug("SCM blame throughput: {} file(s)/s with {} thread(s)", String.format("%.1f", throughput), threadCount);
+    }
+
+    private boolean isOverloaded() {
+      double load = os.getSystemLoadAverage();
+      return load >= 0 && load > MAX_LOAD_PER_PROCESSOR * os.getAvailableProcessors();
+    }
+
+    private void resize(int count) {
+      threadCount = count;
+      BlameThreadCount.resize(executor, count);
+    }
+
+    @Override
+    public void logReport() {
+      LOG.info("SCM blame thread count tuned to {} ({} file(s)/s)", bestThreadCount, String.format("%.1f", bestThroughput));
+    }
+
+    @VisibleForTesting
+    int getBestThreadCount() {
+      return bestThreadCount;
+    }
+  }
+}
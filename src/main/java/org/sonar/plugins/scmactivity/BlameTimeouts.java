@@ -0,0 +1,62 @@
+/*
+ * Sonar SCM Activity Plugin
+ * Copyright (C) 2010 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+
+package org.sonar.plugins.scmactivity;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Deadlines of the blame retrieval. A value of 0 means no deadline.
+ */
+class BlameTimeouts {
+  private final long fileTimeoutNanos;
+  private final long totalTimeoutNanos;
+
+  BlameTimeouts(long fileTimeout, long totalTimeout, TimeUnit unit) {
+    this.fileTimeoutNanos = unit.toNanos(fileTimeout);
+    this.totalTimeoutNanos = unit.toNanos(totalTimeout);
+  }
+
+  static BlameTimeouts none() {
+    return new BlameTimeouts(0, 0, TimeUnit.SECONDS);
+  }
+
+  /**
+   * Maximum time spent on a single file, from the moment a thread starts working on it.
+   */
+  long getFileTimeoutNanos() {
+    return fileTimeoutNanos;
+  }
+
+  /**
+   * Maximum time spent on all the files of the module.
+   */
+  long getTotalTimeoutNanos() {
+    return totalTimeoutNanos;
+  }
+
+  boolean hasFileTimeout() {
+    return fileTimeoutNanos > 0;
+  }
+
+  boolean hasTotalTimeout() {
+    return totalTimeoutNanos > 0;
+  }
+}
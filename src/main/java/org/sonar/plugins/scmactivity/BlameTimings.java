@@ -0,0 +1,217 @@
+/*
+ * Sonar SCM Activity Plugin
+ * Copyright (C) 2010 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+
+package org.sonar.plugins.scmactivity;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.Maps;
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonar.api.BatchExtension;
+import org.sonar.api.resources.ProjectFileSystem;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nullable;
+
+/**
+ * Cumulative and percentile durations of each phase of the SCM activity analysis of a module.
+ * <p/>
+ * They are written in JSON to the working directory at the end of the analysis, to track regressions across builds.
+ * Percentiles are computed on a uniform sample of at most {@link #MAX_SAMPLES} durations by phase.
+ */
+public class BlameTimings implements BatchExtension {
+  private static final Logger LOG = LoggerFactory.getLogger(BlameTimings.class);
+
+  static final String FILENAME = "scm-activity-timings.json";
+  static final int MAX_SAMPLES = 10000;
+
+  enum Phase {
+    /** Main thread: lookup of the resources in the Sonar index */
+    INDEX("index"),
+    /** Main thread: bulk loading of the previous sha1 */
+    PREFETCH("prefetch"),
+    /** Main thread: files changed since the commit of the previous analysis */
+    CHANGES("changes"),
+    /** Main thread: blob ids of the git index */
+    FINGERPRINTS("fingerprints"),
+    /** Main thread: previous sha1 of a file */
+    PREVIOUS_SHA1("previousSha1"),
+    /** Blame thread: file content */
+    READ("read"),
+    /** Blame thread: sha1 of the file content */
+    SHA1("sha1"),
+    /** Blame thread: SCM blame command, including the process spawn and the output parsing */
+    BLAME("blame"),
+    /** Blame thread: parsing of the git blame output, included in {@link #BLAME} */
+    PARSE("parse"),
+    /** Blame thread: serialization of the measures by line */
+    SERIALIZE("serialize"),
+    /** Main thread: waiting for the blame threads */
+    WAIT("wait"),
+    /** Main thread: saving of the new measures */
+    SAVE("save"),
+    /** Main thread: copy of the previous measures of unchanged files */
+    CARRY_FORWARD("carryForward");
+
+    private final String key;
+
+    Phase(String key) {
+      this.key = key;
+    }
+  }
+
+  private final ProjectFileSystem projectFileSystem;
+  private final Map<Phase, Durations> durations = Maps.newEnumMap(Phase.class);
+
+  public BlameTimings(ProjectFileSystem projectFileSystem) {
+    this.projectFileSystem = projectFileSystem;
+    for (Phase phase : Phase.values()) {
+      durations.put(phase, new Durations());
+    }
+  }
+
+  /**
+   * Thread-safe.
+   *
+   * @param start value of {@link System#nanoTime()} at the beginning of the phase
+   */
+  public void record(Phase phase, long start) {
+    recordDuration(phase, System.nanoTime() - start);
+  }
+
+  /**
+   * Thread-safe.
+   */
+  public void recordDuration(Phase phase, long nanos) {
+    durations.get(phase).add(nanos);
+  }
+
+  public void save(@Nullable String moduleKey, int fileCount, long wallTimeNanos) {
+    File file = new File(projectFileSystem.getSonarWorkingDirectory(), FILENAME);
+    try {
+      FileUtils.writeStringToFile(file, toJson(moduleKey, fileCount, wallTimeNanos), "UTF-8");
+      LOG.debug("SCM activity timings written to {}", file);
+    } catch (IOException e) {
+      LOG.warn("Unable to write SCM activity timings to " + file, e);
+    }
+  }
+
+  @VisibleForTesting
+  String toJson(@Nullable String moduleKey, int fileCount, long wallTimeNanos) {
+    StringBuilder json = new StringBuilder();
+    json.append("{\n");
+    json.append("  \"module\": ").append(quote(moduleKey)).append(",\n");
+    json.append("  \"files\": ").append(fileCount).append(",\n");
+    json.append("  \"wallTimeMs\": ").append(millis(wallTimeNanos)).append(",\n");
+    json.append("  \"phases\": {");
+
+    String separator = "\n";
+    for (Phase phase : Phase.values()) {
+      json.append(separator).append("    \"").append(phase.key).append("\": ");
+      durations.get(phase).appendJson(json);
+      separator = ",\n";
+    }
+
+    json.append("\n  }\n}\n");
+    return json.toString();
+  }
+
+  @VisibleForTesting
+  Durations get(Phase phase) {
+    return durations.get(phase);
+  }
+
+  private static String quote(@Nullable String value) {
+    if (value == null) {
+      return "null";
+    }
+    return '"' + value.replace("\\", "\\\\").replace("\"", "\\\"") + '"';
+  }
+
+  private static String millis(long nanos) {
+    return String.format(Locale.ENGLISH, "%.3f", nanos / (double) TimeUnit.MILLISECONDS.toNanos(1));
+  }
+
+  @VisibleForTesting
+  static class Durations {
+    private final Random random = new Random(0);
+    private final long[] samples = new long[MAX_SAMPLES];
+    private int count;
+    private long total;
+    private long max;
+
+    synchronized void add(long nanos) {
+      total += nanos;
+      max = Math.max(max, nanos);
+
+      // Reservoir sampling
+      if (count < MAX_SAMPLES) {
+        samples[count] = nanos;
+      } else {
+        int index = random.nextInt(count + 1);
+        if (index < MAX_SAMPLES) {
+          samples[index] = nanos;
+        }
+      }
+      count++;
+    }
+
+    synchronized int count() {
+      return count;
+    }
+
+    synchronized long total() {
+      return total;
+    }
+
+    /**
+     * @param percentile between 0 and 100
+     */
+    synchronized long percentile(double percentile) {
+      if (count == 0) {
+        return 0;
+      }
+
+      int size = Math.min(count, MAX_SAMPLES);
+      long[] sorted = Arrays.copyOf(samples, size);
+      Arrays.sort(sorted);
+      int rank = (int) Math.ceil(percentile / 100.0 * size);
+      return sorted[Math.max(0, Math.min(size - 1, rank - 1))];
+    }
+
+    synchronized void appendJson(StringBuilder json) {
+      json.append("{\"count\": ").append(count)
+          .append(", \"totalMs\": ").append(millis(total))
+          .append(", \"p50Ms\": ").append(millis(percentile(50)))
+          .append(", \"p90Ms\": ").append(millis(percentile(90)))
+          .append(", \"p99Ms\": ").append(millis(percentile(99)))
+          .append(", \"maxMs\": ").append(millis(max))
+          .append('}');
+    }
+  }
+}
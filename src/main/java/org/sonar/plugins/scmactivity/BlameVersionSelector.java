@@ -20,7 +20,9 @@
 
 package org.sonar.plugins.scmactivity;
 
+import com.google.common.annotations.VisibleForTesting;
 import org.apache.commons.io.FileUtils;
+import org.apache.maven.scm.command.blame.BlameScmResult;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.sonar.api.BatchExtension;
@@ -28,11 +30,15 @@ import org.sonar.api.batch.SensorContext;
 import org.sonar.api.resources.InputFile;
 import org.sonar.api.resources.ProjectFileSystem;
 import org.sonar.api.resources.Resource;
+import org.sonar.plugins.scmactivity.BlameTimings.Phase;
 
 import java.io.File;
 import java.io.IOException;
 import java.nio.charset.Charset;
 
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+
 public class BlameVersionSelector implements BatchExtension {
   private static final Logger LOG = LoggerFactory.getLogger(BlameVersionSelector.class);
 
@@ -40,45 +46,120 @@ public class BlameVersionSelector implements BatchExtension {
   private final Sha1Generator sha1Generator;
   private final FileToResource fileToResource;
   private final ProjectFileSystem projectFileSystem;
+  private final BlameTimings timings;
 
-  public BlameVersionSelector(Blame blame, Sha1Generator sha1Generator, FileToResource fileToResource, ProjectFileSystem projectFileSystem) {
+  public BlameVersionSelector(Blame blame, Sha1Generator sha1Generator, FileToResource fileToResource, ProjectFileSystem projectFileSystem,
+      BlameTimings timings) {
     this.blame = blame;
     this.sha1Generator = sha1Generator;
     this.fileToResource = fileToResource;
     this.projectFileSystem = projectFileSystem;
+    this.timings = timings;
   }
 
   public MeasureUpdate detect(InputFile inputFile, String previousSha1, SensorContext context) {
+    return detect(inputFile, previousSha1, null, context);
+  }
+
+  /**
+   * @param fingerprint the fingerprint of the file given by the SCM, or <code>null</code> to hash its content
+   */
+  public MeasureUpdate detect(InputFile inputFile, String previousSha1, @Nullable String fingerprint, SensorContext context) {
+    FileVersion version = read(inputFile, fingerprint, context);
+    if (version == null) {
+      return MeasureUpdate.NONE;
+    }
+    if (!version.isChangedSince(previousSha1)) {
+      return notChanged(version);
+    }
+
+    return blame(version);
+  }
+
+  /**
+   * Reads the file and computes its SHA1, without retrieving its blame information.
+   *
+   * @return <code>null</code> if the file can't be read
+   */
+  @CheckForNull
+  FileVersion read(InputFile inputFile, SensorContext context) {
+    return read(inputFile, null, context);
+  }
+
+  /**
+   * Same as {@link #read(InputFile, SensorContext)}, except that a file with a fingerprint is not read.
+   */
+  @CheckForNull
+  FileVersion read(InputFile inputFile, @Nullable String fingerprint, SensorContext context) {
     File file = inputFile.getFile();
+    if (fingerprint != null) {
+      return new FileVersion(file, fileToResource.toResource(inputFile, context), fingerprint, FileVersion.UNKNOWN_LINE_COUNT);
+    }
 
     try {
       Resource resource = fileToResource.toResource(inputFile, context);
       Charset charset = projectFileSystem.getSourceCharset();
 
+      long start = System.nanoTime();
       String fileContent = FileUtils.readFileToString(file, charset.name());
+      timings.record(Phase.READ, start);
 
+      start = System.nanoTime();
       String currentSha1 = sha1Generator.find(fileContent);
-      if (currentSha1.equals(previousSha1)) {
-        return fileNotChanged(file, resource);
-      }
+      timings.record(Phase.SHA1, start);
 
-      String[] lines = fileContent.split("(\r)?\n|\r", -1);
-      return fileChanged(file, resource, currentSha1, lines.length);
+      return new FileVersion(file, resource, currentSha1, countLines(fileContent));
     } catch (IOException e) {
       LOG.error("Unable to get scm information: {}", file, e);
-      return MeasureUpdate.NONE;
+      return null;
     }
   }
 
-  private MeasureUpdate fileNotChanged(File file, Resource resource) {
-    LOG.debug("File not changed since previous analysis: {}", file);
+  MeasureUpdate notChanged(FileVersion version) {
+    LOG.debug("File not changed since previous analysis: {}", version.getFile());
 
-    return new CopyPreviousMeasures(resource);
+    return new CopyPreviousMeasures(version.getResource());
   }
 
-  private MeasureUpdate fileChanged(File file, Resource resource, String currentSha1, int lineCount) {
-    LOG.debug("File changed since previous analysis: {}", file);
+  /**
+   * Retrieves the blame information of a changed file.
+   */
+  MeasureUpdate blame(FileVersion version) {
+    LOG.debug("File changed since previous analysis: {}", version.getFile());
+
+    return blame.save(version.getFile(), version.getResource(), version.getSha1(), lineCount(version));
+  }
+
+  /**
+   * Saves the blame information of a changed file, already retrieved for all the files at once.
+   */
+  MeasureUpdate blame(FileVersion version, BlameScmResult result) {
+    LOG.debug("File changed since previous analysis: {}", version.getFile());
+
+    return blame.save(version.getFile(), version.getResource(), version.getSha1(), lineCount(version), result);
+  }
+
+  /**
+   * Files with a fingerprint are only read once they have to be blamed.
+   */
+  private int lineCount(FileVersion version) {
+    if (version.getLineCount() != FileVersion.UNKNOWN_LINE_COUNT) {
+      return version.getLineCount();
+    }
+
+    try {
+      long start = System.nanoTime();
+      String fileContent = FileUtils.readFileToString(version.getFile(), projectFileSystem.getSourceCharset().name());
+      timings.record(Phase.READ, start);
+      return countLines(fileContent);
+    } catch (IOException e) {
+      LOG.warn("Unable to count the lines of {}", version.getFile(), e);
+      return 0;
+    }
+  }
 
-    return blame.save(file, resource, currentSha1, lineCount);
+  @VisibleForTesting
+  static int countLines(String content) {
+    return content.split("(\r)?\n|\r", -1).length;
   }
 }
@@ -0,0 +1,101 @@
+/*
+ * Sonar SCM Activity Plugin
+ * Copyright (C) 2010 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+
+package org.sonar.plugins.scmactivity;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Lists;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonar.api.batch.SensorContext;
+import org.sonar.api.batch.TimeMachine;
+import org.sonar.api.measures.Measure;
+import org.sonar.api.resources.Resource;
+import org.sonar.plugins.scmactivity.BlameTimings.Phase;
+
+import java.util.List;
+
+/**
+ * Batched version of {@link CopyPreviousMeasures}: the previous measures of unchanged files are loaded
+ * with one query per {@link PreviousMeasuresLoader#CHUNK_SIZE} files instead of one query per file.
+ * <p/>
+ * Must be used from the main thread only.
+ */
+class CarryForwardMeasures {
+  private static final Logger LOG = LoggerFactory.getLogger(CarryForwardMeasures.class);
+
+  private final PreviousMeasuresLoader previousMeasuresLoader;
+  private final TimeMachine timeMachine;
+  private final SensorContext context;
+  private final BlameTimings timings;
+  private final List<Resource> pending = Lists.newArrayList();
+  private int fileCount;
+  private int queryCount;
+
+  CarryForwardMeasures(PreviousMeasuresLoader previousMeasuresLoader, TimeMachine timeMachine, SensorContext context, BlameTimings timings) {
+    this.previousMeasuresLoader = previousMeasuresLoader;
+    this.timeMachine = timeMachine;
+    this.context = context;
+    this.timings = timings;
+  }
+
+  public void add(Resource resource) {
+    pending.add(resource);
+    if (pending.size() >= PreviousMeasuresLoader.CHUNK_SIZE) {
+      flush();
+    }
+  }
+
+  public void flush() {
+    if (pending.isEmpty()) {
+      return;
+    }
+
+    long start = System.nanoTime();
+    List<Resource> resources = ImmutableList.copyOf(pending);
+    pending.clear();
+
+    int queriesBefore = previousMeasuresLoader.getQueryCount();
+    ListMultimap<Resource, Measure> measures = previousMeasuresLoader.load(resources, CopyPreviousMeasures.METRICS);
+    queryCount += previousMeasuresLoader.getQueryCount() - queriesBefore;
+
+    for (Resource resource : resources) {
+      if (resource.getId() == null) {
+        new CopyPreviousMeasures(resource).execute(timeMachine, context);
+        queryCount++;
+      } else {
+        for (Measure measure : measures.get(resource)) {
+          CopyPreviousMeasures.saveMeasure(context, resource, measure);
+        }
+      }
+    }
+
+    fileCount += resources.size();
+    timings.record(Phase.CARRY_FORWARD, start);
+  }
+
+  public void logReport() {
+    if (fileCount > 0) {
+      LOG.info("SCM measures of {} unchanged file(s) copied with {} quer(ies), {} round trip(s) saved",
+          new Object[] {fileCount, queryCount, fileCount - queryCount});
+    }
+  }
+}
@@ -0,0 +1,96 @@
+/*
+ * Sonar SCM Activity Plugin
+ * Copyright (C) 2010 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+
+package org.sonar.plugins.scmactivity;
+
+import com.google.common.collect.Maps;
+import org.apache.maven.scm.command.blame.BlameLine;
+import org.sonar.api.utils.DateUtils;
+import org.sonar.plugins.scmactivity.maven.StringPool;
+
+import java.util.Date;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Values of the measures by line which depend only on the commit, computed once for the whole batch:
+ * the formatted date by revision and the normalized author by raw author. Normalized authors are interned in the {@link StringPool}.
+ * <p/>
+ * A date is reused only if the commit has the same time, so that revisions of different repositories never get mixed up.
+ * Lines without revision are formatted each time. Once {@link #MAX_ENTRIES} values are stored, new values are no longer added.
+ */
+class CommitValues {
+  static final int MAX_ENTRIES = 200000;
+
+  private final ConcurrentMap<String, FormattedDate> datesByRevision = Maps.newConcurrentMap();
+  private final ConcurrentMap<String, String> authorsByRawAuthor = Maps.newConcurrentMap();
+  private final StringPool strings;
+
+  CommitValues(StringPool strings) {
+    this.strings = strings;
+  }
+
+  String date(BlameLine commit) {
+    Date date = commit.getDate();
+    String revision = commit.getRevision();
+    if (revision == null || date == null) {
+      return DateUtils.formatDateTime(date);
+    }
+
+    FormattedDate formatted = datesByRevision.get(revision);
+    if (formatted != null && formatted.time == date.getTime()) {
+      return formatted.value;
+    }
+
+    formatted = new FormattedDate(date.getTime(), DateUtils.formatDateTime(date));
+    if (datesByRevision.size() < MAX_ENTRIES) {
+      datesByRevision.put(revision, formatted);
+    }
+    return formatted.value;
+  }
+
+  String author(BlameLine commit) {
+    String rawAuthor = commit.getAuthor() == null ? "" : commit.getAuthor();
+    String normalized = authorsByRawAuthor.get(rawAuthor);
+    if (normalized != null) {
+      return normalized;
+    }
+
+    normalized = strings.intern(Blame.normalizeString(rawAuthor));
+    if (authorsByRawAuthor.size() < MAX_ENTRIES) {
+      authorsByRawAuthor.put(rawAuthor, normalized);
+    }
+    return normalized;
+  }
+
+  void clear() {
+    datesByRevision.clear();
+    authorsByRawAuthor.clear();
+  }
+
+  private static class FormattedDate {
+    private final long time;
+    private final String value;
+
+    FormattedDate(long time, String value) {
+      this.time = time;
+      this.value = value;
+    }
+  }
+}
@@ -33,27 +33,67 @@ import org.sonar.api.resources.Resource;
 import java.util.List;
 
 public class CopyPreviousMeasures implements MeasureUpdate {
-  private static final List<Metric> METRICS = ImmutableList.of(
+  static final List<Metric> METRICS = ImmutableList.of(
       CoreMetrics.SCM_LAST_COMMIT_DATETIMES_BY_LINE,
       CoreMetrics.SCM_REVISIONS_BY_LINE,
       CoreMetrics.SCM_AUTHORS_BY_LINE,
       ScmActivityMetrics.SCM_HASH);
 
   private final Resource resource;
+  private final boolean outdated;
+  private final boolean skipped;
 
   public CopyPreviousMeasures(Resource resource) {
+    this(resource, false, false);
+  }
+
+  private CopyPreviousMeasures(Resource resource, boolean outdated, boolean skipped) {
     this.resource = resource;
+    this.outdated = outdated;
+    this.skipped = skipped;
+  }
+
+  /**
+   * Keeps the previous measures of a changed file whose blame information can't be retrieved.
+   */
+  static CopyPreviousMeasures outdated(Resource resource) {
+    return new CopyPreviousMeasures(resource, true, false);
+  }
+
+  /**
+   * Keeps the previous measures of a changed file which is not blamed, because blame is suspended.
+   */
+  static CopyPreviousMeasures skipped(Resource resource) {
+    return new CopyPreviousMeasures(resource, true, true);
   }
 
   public void execute(TimeMachine timeMachine, SensorContext context) {
     TimeMachineQuery query = new TimeMachineQuery(resource).setOnlyLastAnalysis(true).setMetrics(METRICS);
 
     for (Measure measure : timeMachine.getMeasures(query)) {
-      saveMeasure(context, measure);
+      saveMeasure(context, resource, measure);
     }
   }
 
-  private void saveMeasure(SensorContext context, Measure measure) {
+  Resource getResource() {
+    return resource;
+  }
+
+  /**
+   * Whether the previous measures don't match the current content of the file.
+   */
+  boolean isOutdated() {
+    return outdated;
+  }
+
+  /**
+   * Whether the file wasn't blamed at all.
+   */
+  boolean isSkipped() {
+    return skipped;
+  }
+
+  static void saveMeasure(SensorContext context, Resource resource, Measure measure) {
     context.saveMeasure(resource, new Measure(measure.getMetric(), measure.getData()).setPersistenceMode(PersistenceMode.DATABASE));
   }
 }
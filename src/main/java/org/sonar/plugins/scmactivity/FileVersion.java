@@ -0,0 +1,72 @@
+/*
+ * Sonar SCM Activity Plugin
+ * Copyright (C) 2010 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+
+package org.sonar.plugins.scmactivity;
+
+import org.sonar.api.resources.Resource;
+
+import java.io.File;
+
+import javax.annotation.Nullable;
+
+/**
+ * Content of a source file at the time of the analysis, as needed to decide whether it must be blamed again.
+ */
+class FileVersion {
+  /**
+   * The file was not read: its fingerprint comes from the SCM.
+   */
+  static final int UNKNOWN_LINE_COUNT = -1;
+
+  private final File file;
+  private final Resource resource;
+  private final String sha1;
+  private final int lineCount;
+
+  FileVersion(File file, Resource resource, String sha1, int lineCount) {
+    this.file = file;
+    this.resource = resource;
+    this.sha1 = sha1;
+    this.lineCount = lineCount;
+  }
+
+  File getFile() {
+    return file;
+  }
+
+  Resource getResource() {
+    return resource;
+  }
+
+  String getSha1() {
+    return sha1;
+  }
+
+  /**
+   * @return the number of lines, or {@link #UNKNOWN_LINE_COUNT}
+   */
+  int getLineCount() {
+    return lineCount;
+  }
+
+  boolean isChangedSince(@Nullable String previousSha1) {
+    return !sha1.equals(previousSha1);
+  }
+}
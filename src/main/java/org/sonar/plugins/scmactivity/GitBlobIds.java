@@ -0,0 +1,118 @@
+/*
+ * Sonar SCM Activity Plugin
+ * Copyright (C) 2010 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+
+package org.sonar.plugins.scmactivity;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.CheckForNull;
+
+/**
+ * Ids of the blobs of the git index, used as fingerprints of the files instead of hashing their content.
+ * <p/>
+ * All the ids of a module are read with a single <code>git ls-files -s</code>. A file has a blob id only if it's a regular file
+ * of the index, without conflict, whose content in the working copy is the same as in the index.
+ */
+class GitBlobIds {
+  private static final String[] REGULAR_FILE_MODES = {"100644", "100755"};
+
+  private final File root;
+  private final Map<String, String> ids;
+
+  @VisibleForTesting
+  GitBlobIds(File root, Map<String, String> ids) {
+    this.root = root;
+    this.ids = ids;
+  }
+
+  /**
+   * @throws IOException if the basedir is not in a git working copy
+   */
+  static GitBlobIds load(File basedir) throws IOException {
+    File root = new File(GitProcess.revParse(basedir, "--show-toplevel").get(0)).getCanonicalFile();
+    Map<String, String> ids = parse(GitProcess.run(basedir, "ls-files", "-s", "-z", "--full-name", "--", "."));
+
+    // Compared to the index, not to HEAD: staged changes are part of the blob ids
+    for (String modified : GitProcess.diffNames(basedir)) {
+      ids.remove(modified);
+    }
+    return new GitBlobIds(root, ids);
+  }
+
+  /**
+   * Parses the output of <code>git ls-files -s -z</code>: "mode id stage\tpath" entries.
+   */
+  @VisibleForTesting
+  static Map<String, String> parse(String lsFiles) {
+    Map<String, String> ids = Maps.newHashMap();
+    Set<String> conflicts = Sets.newHashSet();
+    for (String entry : GitProcess.split(lsFiles, '\0')) {
+      int tab = entry.indexOf('\t');
+      String[] fields = tab < 0 ? new String[0] : entry.substring(0, tab).split(" ");
+      if (fields.length != 3) {
+        continue;
+      }
+      String path = entry.substring(tab + 1);
+      if (!"0".equals(fields[2])) {
+        conflicts.add(path);
+      } else if (isRegularFile(fields[0])) {
+        ids.put(path, fields[1]);
+      }
+    }
+    for (String conflict : conflicts) {
+      ids.remove(conflict);
+    }
+    return ids;
+  }
+
+  private static boolean isRegularFile(String mode) {
+    for (String regularFileMode : REGULAR_FILE_MODES) {
+      if (regularFileMode.equals(mode)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * @return the blob id of the file, or <code>null</code> if its content must be hashed:
+   * not tracked, modified in the working copy, in conflict or not a regular file
+   */
+  @CheckForNull
+  String get(File file) {
+    try {
+      String path = GitProcess.relativePath(root, file);
+      return path == null ? null : ids.get(path);
+    } catch (IOException e) {
+      return null;
+    }
+  }
+
+  int size() {
+    return ids.size();
+  }
+}
@@ -0,0 +1,114 @@
+/*
+ * Sonar SCM Activity Plugin
+ * Copyright (C) 2010 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+
+package org.sonar.plugins.scmactivity;
+
+import com.google.common.collect.Sets;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+
+import javax.annotation.Nullable;
+
+/**
+ * Files of a git working copy which changed since a given commit, found without reading any file.
+ * <p/>
+ * A file is changed if it's not tracked, if it's modified in the working copy or the index,
+ * or if it's modified by a commit between the given commit and HEAD.
+ * Without a previous commit, all the files are changed.
+ */
+class GitChangedFiles {
+  private final File root;
+  private final String head;
+  private final boolean knownPrevious;
+  private final Set<String> tracked;
+  private final Set<String> committed;
+  private final Set<String> modified;
+
+  private GitChangedFiles(File root, String head, boolean knownPrevious, Set<String> tracked, Set<String> committed, Set<String> modified) {
+    this.root = root;
+    this.head = head;
+    this.knownPrevious = knownPrevious;
+    this.tracked = tracked;
+    this.committed = committed;
+    this.modified = modified;
+  }
+
+  /**
+   * @param previousRevision the commit of the previous analysis, or <code>null</code> if unknown
+   * @throws IOException if the basedir is not in a git working copy, or if HEAD doesn't exist yet
+   */
+  static GitChangedFiles since(File basedir, @Nullable String previousRevision) throws IOException {
+    List<String> revParse = GitProcess.revParse(basedir, "--show-toplevel", "HEAD");
+    File root = new File(revParse.get(0)).getCanonicalFile();
+    String head = revParse.get(1);
+
+    Set<String> modified = GitProcess.diffNames(basedir, "HEAD");
+    if (previousRevision == null || !isCommit(basedir, previousRevision)) {
+      return new GitChangedFiles(root, head, false, Sets.<String> newHashSet(), Sets.<String> newHashSet(), modified);
+    }
+
+    Set<String> tracked = Sets.newHashSet(GitProcess.split(GitProcess.run(basedir, "ls-files", "-z", "--full-name", "--", "."), '\0'));
+    Set<String> committed = GitProcess.diffNames(basedir, previousRevision, "HEAD");
+    return new GitChangedFiles(root, head, true, tracked, committed, modified);
+  }
+
+  private static boolean isCommit(File basedir, String revision) {
+    try {
+      GitProcess.run(basedir, "cat-file", "-e", revision + "^{commit}");
+      return true;
+    } catch (IOException e) {
+      // Unknown commit, for example after a rebase or with a shallow clone
+      return false;
+    }
+  }
+
+  /**
+   * @return the commit checked out in the working copy
+   */
+  String getHead() {
+    return head;
+  }
+
+  /**
+   * Whether the commit of the previous analysis was found in the repository.
+   */
+  boolean isPreviousKnown() {
+    return knownPrevious;
+  }
+
+  /**
+   * Whether no tracked file is modified in the working copy or in the index.
+   * The files blamed in such a working copy match HEAD.
+   */
+  boolean isClean() {
+    return modified.isEmpty();
+  }
+
+  boolean isChanged(File file) throws IOException {
+    if (!knownPrevious) {
+      return true;
+    }
+    String path = GitProcess.relativePath(root, file);
+    return path == null || !tracked.contains(path) || committed.contains(path) || modified.contains(path);
+  }
+}
@@ -0,0 +1,462 @@
+/*
+ * Sonar SCM Activity Plugin
+ * Copyright (C) 2010 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+
+package org.sonar.plugins.scmactivity;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.apache.maven.scm.command.blame.BlameLine;
+import org.apache.maven.scm.command.blame.BlameScmResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonar.plugins.scmactivity.maven.BlameCommits;
+import org.sonar.plugins.scmactivity.maven.CompactBlame;
+import org.sonar.plugins.scmactivity.maven.CompactBlameScmResult;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.annotation.CheckForNull;
+
+/**
+ * Blames all the files of a git working copy in a single walk of the history, instead of running one <code>git blame</code> by file.
+ * <p/>
+ * The history is walked from HEAD to the root commit with <code>git log -p</code>, following the first parent of merge commits.
+ * The lines added by a commit which still exist in HEAD are attributed to this commit, like <code>git blame -w --first-parent</code> does:
+ * lines merged from another branch are attributed to the merge commit. Renames are followed, including the files moved
+ * into the module from another directory of the repository: the history of the whole repository is walked, then filtered to the files of the module.
+ * <p/>
+ * Each file is reported as soon as all its lines are attributed, and the walk stops once all the files are reported.
+ * Files which are not committed, modified in the working copy or binary are never reported and should be blamed one by one,
+ * with <code>git blame -w --first-parent</code> to get the same attribution.
+ */
+class GitHistoryBlame {
+  private static final Logger LOG = LoggerFactory.getLogger(GitHistoryBlame.class);
+  private static final Pattern HUNK = Pattern.compile("@@ -(\\d+)(?:,(\\d+))? \\+(\\d+)(?:,(\\d+))? @@.*");
+  private static final Result END = new Result(null, null);
+
+  private final File basedir;
+  private final BlameCommits blameCommits;
+  private final BlockingQueue<Result> results = new LinkedBlockingQueue<Result>();
+  private volatile Process process;
+  private volatile boolean cancelled;
+
+  GitHistoryBlame(File basedir, BlameCommits blameCommits) {
+    this.basedir = basedir;
+    this.blameCommits = blameCommits;
+  }
+
+  /**
+   * Starts the walk of the history in a background thread.
+   */
+  void start(final Collection<File> files) {
+    Thread thread = new Thread(new Runnable() {
+      public void run() {
+        try {
+          blame(files);
+        } catch (Exception e) {
+          if (!cancelled) {
+            LOG.warn("Fail to walk the git history, the remaining files are blamed one by one", e);
+          }
+        } finally {
+          results.add(END);
+        }
+      }
+    }, "scm-git-history");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /**
+   * Waits for the next blamed file.
+   *
+   * @return <code>null</code> when the walk is over or the timeout expired
+   */
+  @CheckForNull
+  Result next(long timeout, TimeUnit unit) throws InterruptedException {
+    Result result = results.poll(timeout, unit);
+    if (result == null) {
+      return null;
+    }
+    if (result == END) {
+      // Let other callers see the end too
+      results.add(END);
+      return null;
+    }
+    return result;
+  }
+
+  /**
+   * Stops the walk and kills the git process.
+   */
+  void cancel() {
+    cancelled = true;
+    Process running = process;
+    if (running != null) {
+      running.destroy();
+    }
+  }
+
+  @VisibleForTesting
+  void blame(Collection<File> files) throws IOException {
+    checkCancelled();
+    File root = new File(GitProcess.revParse(basedir, "--show-toplevel").get(0)).getCanonicalFile();
+
+    Set<String> modified = GitProcess.diffNames(basedir, "HEAD");
+    Map<String, Integer> lineCounts = lineCounts(GitProcess.output(run("diff", "--numstat", "-z", emptyTree(), "HEAD", "--", ".")));
+
+    Map<String, FileHistory> histories = Maps.newHashMap();
+    for (File file : files) {
+      String path = GitProcess.relativePath(root, file);
+      Integer lineCount = path == null ? null : lineCounts.get(path);
+      if (lineCount != null && !modified.contains(path)) {
+        histories.put(path, new FileHistory(file, lineCount));
+      }
+    }
+    for (String path : Lists.newArrayList(histories.keySet())) {
+      if (histories.get(path).isComplete()) {
+        report(histories.remove(path));
+      }
+    }
+    if (histories.isEmpty()) {
+      return;
+    }
+
+    Process log = run("-c", "core.quotepath=false", "log", "-p", "-m", "--first-parent", "-M", "-w", "-U0", "--no-color", "--no-ext-diff",
+        "--no-textconv", "--format=%x00%H%x00%ct%x00%ae%x00%ce", "HEAD");
+    process = log;
+    try {
+      new LogParser(histories).parse(new BufferedReader(new InputStreamReader(log.getInputStream(), Charsets.UTF_8)));
+    } finally {
+      log.destroy();
+      process = null;
+    }
+  }
+
+  /**
+   * Id of the empty tree, which depends on the object format of the repository (SHA-1 or SHA-256).
+   */
+  private String emptyTree() throws IOException {
+    // No input
+    return GitProcess.output(run("hash-object", "-t", "tree", "--stdin")).trim();
+  }
+
+  private void report(FileHistory history) {
+    results.add(new Result(history.file, new CompactBlameScmResult("git log", CompactBlame.of(Arrays.asList(history.blame)))));
+  }
+
+  private Process run(String... args) throws IOException {
+    checkCancelled();
+    return GitProcess.start(basedir, args);
+  }
+
+  private void checkCancelled() throws IOException {
+    if (cancelled) {
+      throw new IOException("Cancelled");
+    }
+  }
+
+  /**
+   * Parses the output of <code>git diff --numstat -z</code> against the empty tree, which gives the number of lines of each text file.
+   */
+  @VisibleForTesting
+  static Map<String, Integer> lineCounts(String numstat) {
+    Map<String, Integer> lineCounts = Maps.newHashMap();
+    for (String entry : GitProcess.split(numstat, '\0')) {
+      String[] fields = entry.split("\t", 3);
+      // Binary files are "-\t-\tpath"
+      if (fields.length == 3 && !"-".equals(fields[0])) {
+        lineCounts.put(fields[2], Integer.valueOf(fields[0]));
+      }
+    }
+    return lineCounts;
+  }
+
+  /**
+   * Paths containing quotes, backslashes or control characters are quoted and escaped like C strings.
+   */
+  @VisibleForTesting
+  static String unquote(String path) {
+    if (path.length() < 2 || path.charAt(0) != '"' || path.charAt(path.length() - 1) != '"') {
+      return path;
+    }
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    for (int i = 1; i < path.length() - 1; i++) {
+      char c = path.charAt(i);
+      if (c != '\\') {
+        byte[] encoded = String.valueOf(c).getBytes(Charsets.UTF_8);
+        bytes.write(encoded, 0, encoded.length);
+        continue;
+      }
+      char escaped = path.charAt(++i);
+      if (escaped >= '0' && escaped <= '7') {
+        bytes.write(Integer.parseInt(path.substring(i, i + 3), 8));
+        i += 2;
+      } else {
+        bytes.write(unescape(escaped));
+      }
+    }
+    return new String(bytes.toByteArray(), Charsets.UTF_8);
+  }
+
+  private static char unescape(char escaped) {
+    switch (escaped) {
+      case 'n':
+        return '\n';
+      case 't':
+        return '\t';
+      case 'r':
+        return '\r';
+      case 'a':
+        return 7;
+      case 'b':
+        return '\b';
+      case 'f':
+        return '\f';
+      case 'v':
+        return 11;
+      default:
+        return escaped;
+    }
+  }
+
+  static class Result {
+    private final File file;
+    private final BlameScmResult blame;
+
+    Result(File file, BlameScmResult blame) {
+      this.file = file;
+      this.blame = blame;
+    }
+
+    File getFile() {
+      return file;
+    }
+
+    BlameScmResult getBlame() {
+      return blame;
+    }
+  }
+
+  /**
+   * Lines of a file in the revision being walked, with the line of HEAD each one became, or -1 if it doesn't exist anymore in HEAD.
+   */
+  private static class FileHistory {
+    private final File file;
+    private final BlameLine[] blame;
+    private int[] lines;
+    private int size;
+    private int remaining;
+
+    FileHistory(File file, int lineCount) {
+      this.file = file;
+      this.blame = new BlameLine[lineCount];
+      this.lines = new int[lineCount];
+      for (int i = 0; i < lineCount; i++) {
+        lines[i] = i;
+      }
+      this.size = lineCount;
+      this.remaining = lineCount;
+    }
+
+    boolean isComplete() {
+      return remaining == 0;
+    }
+
+    /**
+     * Attributes the lines added by the hunk to the commit, then replaces them with the lines of the parent revision.
+     *
+     * @return <code>false</code> if the hunk doesn't match the lines of the file
+     */
+    boolean apply(int[] hunk, BlameLine commit) {
+      int oldCount = hunk[1];
+      int newCount = hunk[3];
+      int from = newCount == 0 ? hunk[2] : hunk[2] - 1;
+      if (from < 0 || from + newCount > size) {
+        return false;
+      }
+
+      for (int i = from; i < from + newCount; i++) {
+        attribute(i, commit);
+      }
+
+      int newSize = size - newCount + oldCount;
+      int[] newLines = newSize > lines.length ? new int[Math.max(newSize, lines.length * 2)] : lines;
+      System.arraycopy(lines, 0, newLines, 0, from);
+      System.arraycopy(lines, from + newCount, newLines, from + oldCount, size - from - newCount);
+      Arrays.fill(newLines, from, from + oldCount, -1);
+      lines = newLines;
+      size = newSize;
+      return true;
+    }
+
+    void attributeAll(BlameLine commit) {
+      for (int i = 0; i < size; i++) {
+        attribute(i, commit);
+      }
+    }
+
+    private void attribute(int line, BlameLine commit) {
+      int headLine = lines[line];
+      if (headLine >= 0) {
+        blame[headLine] = commit;
+        lines[line] = -1;
+        remaining--;
+      }
+    }
+  }
+
+  /**
+   * Applies the diffs of each commit to the histories of the files, newest commit first.
+   */
+  private class LogParser {
+    private final Map<String, FileHistory> histories;
+    private BlameLine commit;
+
+    // Diff of the current file
+    private String oldPath;
+    private String newPath;
+    private boolean created;
+    private boolean inHunks;
+    private final List<int[]> hunks = Lists.newArrayList();
+
+    LogParser(Map<String, FileHistory> histories) {
+      this.histories = histories;
+    }
+
+    void parse(BufferedReader reader) throws IOException {
+      String line;
+      while (!histories.isEmpty() && !cancelled && (line = reader.readLine()) != null) {
+        if (line.startsWith("\0")) {
+          endDiff();
+          String[] fields = line.substring(1).split("\0", -1);
+          commit = blameCommits.line(new Date(Long.parseLong(fields[1]) * 1000L), fields[0], fields[2], fields[3]);
+        } else if (line.startsWith("diff --git ")) {
+          endDiff();
+        } else if (line.startsWith("@@ ")) {
+          inHunks = true;
+          hunks.add(hunk(line));
+        } else if (!inHunks) {
+          header(line);
+        }
+      }
+      endDiff();
+    }
+
+    private void header(String line) {
+      if (line.startsWith("rename from ")) {
+        oldPath = unquote(line.substring("rename from ".length()));
+      } else if (line.startsWith("rename to ")) {
+        newPath = unquote(line.substring("rename to ".length()));
+      } else if (line.startsWith("--- ")) {
+        String path = path(line);
+        created = "/dev/null".equals(path);
+        if (!created) {
+          oldPath = path.substring("a/".length());
+        }
+      } else if (line.startsWith("+++ ")) {
+        String path = path(line);
+        newPath = "/dev/null".equals(path) ? null : path.substring("b/".length());
+      }
+    }
+
+    private void endDiff() {
+      FileHistory history = newPath == null ? null : histories.get(newPath);
+      if (history != null) {
+        if (applyHunks(history)) {
+          followRename(history);
+        } else {
+          LOG.debug("Unexpected diff of {} in commit {}, the file is blamed alone", newPath, commit.getRevision());
+          histories.remove(newPath);
+        }
+      }
+      oldPath = null;
+      newPath = null;
+      created = false;
+      inHunks = false;
+      hunks.clear();
+    }
+
+    private boolean applyHunks(FileHistory history) {
+      // From the bottom of the file, so that the line numbers of the next hunks are still valid
+      for (int i = hunks.size() - 1; i >= 0; i--) {
+        if (!history.apply(hunks.get(i), commit)) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    private void followRename(FileHistory history) {
+      boolean renamed = oldPath != null && !oldPath.equals(newPath);
+      if (created || (renamed && histories.containsKey(oldPath))) {
+        history.attributeAll(commit);
+      }
+
+      histories.remove(newPath);
+      if (history.isComplete()) {
+        report(history);
+      } else if (renamed) {
+        histories.put(oldPath, history);
+      } else {
+        histories.put(newPath, history);
+      }
+    }
+
+    private String path(String line) {
+      String path = line.substring(4);
+      // A tab is appended to the paths containing spaces
+      if (path.endsWith("\t")) {
+        path = path.substring(0, path.length() - 1);
+      }
+      return unquote(path);
+    }
+
+    private int[] hunk(String line) {
+      Matcher matcher = HUNK.matcher(line);
+      if (!matcher.matches()) {
+        throw new IllegalStateException("Unexpected hunk header: " + line);
+      }
+      return new int[] {
+        Integer.parseInt(matcher.group(1)), count(matcher.group(2)), Integer.parseInt(matcher.group(3)), count(matcher.group(4))
+      };
+    }
+
+    private int count(String count) {
+      return count == null ? 1 : Integer.parseInt(count);
+    }
+  }
+}
@@ -0,0 +1,168 @@
+/*
+ * Sonar SCM Activity Plugin
+ * Copyright (C) 2010 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+
+package org.sonar.plugins.scmactivity;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import org.apache.commons.io.IOUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+import javax.annotation.CheckForNull;
+
+/**
+ * Runs git commands in a working copy.
+ */
+final class GitProcess {
+  private GitProcess() {
+    // only static methods
+  }
+
+  /**
+   * Starts a git command. The error output is discarded.
+   */
+  static Process start(File directory, String... args) throws IOException {
+    List<String> command = Lists.newArrayList("git");
+    command.addAll(Arrays.asList(args));
+    Process started = new ProcessBuilder(command).directory(directory).start();
+    IOUtils.closeQuietly(started.getOutputStream());
+    discard(started.getErrorStream());
+    return started;
+  }
+
+  /**
+   * Runs a git command to completion.
+   *
+   * @return the standard output
+   * @throws IOException if the command fails
+   */
+  static String run(File directory, String... args) throws IOException {
+    return output(start(directory, args));
+  }
+
+  /**
+   * Waits for the end of a git command.
+   *
+   * @return the standard output
+   * @throws IOException if the command fails
+   */
+  static String output(Process process) throws IOException {
+    try {
+      String output = IOUtils.toString(process.getInputStream(), "UTF-8");
+      if (process.waitFor() != 0) {
+        throw new IOException("The git command failed with exit code " + process.exitValue());
+      }
+      return output;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted");
+    } finally {
+      process.destroy();
+    }
+  }
+
+  /**
+   * Runs <code>git rev-parse</code>, which gives one line of output per argument.
+   *
+   * @return the output lines, in the order of the arguments
+   * @throws IOException if the command fails, or if an argument can't be resolved
+   */
+  static List<String> revParse(File directory, String... args) throws IOException {
+    List<String> command = Lists.newArrayList("rev-parse");
+    command.addAll(Arrays.asList(args));
+    List<String> values = split(run(directory, command.toArray(new String[command.size()])), '\n');
+    if (values.size() != args.length) {
+      throw new IOException("Unexpected output of git rev-parse: " + values);
+    }
+    return values;
+  }
+
+  /**
+   * Runs <code>git diff --name-only</code> on the directory, without rename detection: both paths of a moved file are listed.
+   *
+   * @param revisions the compared commits, none to compare the working copy to the index
+   * @return the paths of the changed files, relative to the root of the working copy
+   */
+  static Set<String> diffNames(File directory, String... revisions) throws IOException {
+    List<String> command = Lists.newArrayList("diff", "--name-only", "--no-renames", "-z");
+    command.addAll(Arrays.asList(revisions));
+    command.add("--");
+    command.add(".");
+    return Sets.newHashSet(split(run(directory, command.toArray(new String[command.size()])), '\0'));
+  }
+
+  /**
+   * @return the path of the file relative to the root of the working copy, with forward slashes,
+   * or <code>null</code> if the file is outside of the working copy
+   */
+  @CheckForNull
+  static String relativePath(File root, File file) throws IOException {
+    String rootPath = root.getPath() + File.separator;
+    String path = file.getCanonicalPath();
+    if (!path.startsWith(rootPath)) {
+      return null;
+    }
+    return path.substring(rootPath.length()).replace(File.separatorChar, '/');
+  }
+
+  /**
+   * Splits the output of a command, ignoring empty values.
+   */
+  static List<String> split(String value, char separator) {
+    List<String> values = Lists.newArrayList();
+    int start = 0;
+    for (int i = 0; i < value.length(); i++) {
+      if (value.charAt(i) == separator) {
+        if (i > start) {
+          values.add(value.substring(start, i));
+        }
+        start = i + 1;
+      }
+    }
+    if (start < value.length()) {
+      values.add(value.substring(start));
+    }
+    return values;
+  }
+
+  private static void discard(final InputStream stream) {
+    Thread thread = new Thread(new Runnable() {
+      public void run() {
+        try {
+          while (stream.read() != -1) {
+            // Keep the process from blocking on a full buffer
+          }
+        } catch (IOException e) {
+          // Process destroyed
+        } finally {
+          IOUtils.closeQuietly(stream);
+        }
+      }
+    }, "scm-git-stderr");
+    thread.setDaemon(true);
+    thread.start();
+  }
+}
@@ -0,0 +1,102 @@
+/*
+ * Sonar SCM Activity Plugin
+ * Copyright (C) 2010 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+
+package org.sonar.plugins.scmactivity;
+
+import com.google.common.collect.Lists;
+import org.apache.maven.scm.command.blame.BlameLine;
+import org.sonar.api.measures.CoreMetrics;
+import org.sonar.api.measures.Measure;
+import org.sonar.plugins.scmactivity.maven.BlameSink;
+
+import java.util.List;
+
+/**
+ * Builds the measures of authors, dates and revisions by line while the lines of the blame are received.
+ * <p/>
+ * Each line is appended at once to the serialized data of the three measures by {@link LinePropertiesBuilder},
+ * so that nothing by line is kept but the final strings. The author, date and revision are formatted once by commit of the file,
+ * and the formatted values are shared by all the files of the batch through {@link CommitValues}.
+ */
+class LineMeasuresSink implements BlameSink {
+  // Typical lengths of an email, of a formatted date and of a git revision
+  private static final int AUTHOR_LENGTH = 20;
+  private static final int DATE_LENGTH = "2012-01-01T00:00:00+0000".length();
+  private static final int REVISION_LENGTH = 40;
+
+  private final CommitValues commitValues;
+  private final List<String> authors = Lists.newArrayList();
+  private final List<String> dates = Lists.newArrayList();
+  private final List<String> revisions = Lists.newArrayList();
+  private final LinePropertiesBuilder authorsData;
+  private final LinePropertiesBuilder datesData;
+  private final LinePropertiesBuilder revisionsData;
+  private int lastCommit = -1;
+
+  /**
+   * @param expectedLineCount number of lines used to size the buffers of the measures
+   */
+  LineMeasuresSink(int expectedLineCount, CommitValues commitValues) {
+    this.commitValues = commitValues;
+    authorsData = new LinePropertiesBuilder(CoreMetrics.SCM_AUTHORS_BY_LINE, expectedLineCount, AUTHOR_LENGTH);
+    datesData = new LinePropertiesBuilder(CoreMetrics.SCM_LAST_COMMIT_DATETIMES_BY_LINE, expectedLineCount, DATE_LENGTH);
+    revisionsData = new LinePropertiesBuilder(CoreMetrics.SCM_REVISIONS_BY_LINE, expectedLineCount, REVISION_LENGTH);
+  }
+
+  public int addCommit(BlameLine commit) {
+    authors.add(commitValues.author(commit));
+    dates.add(commitValues.date(commit));
+    revisions.add(commit.getRevision());
+    return authors.size() - 1;
+  }
+
+  public void addLine(int commit) {
+    authorsData.add(authors.get(commit));
+    datesData.add(dates.get(commit));
+    revisionsData.add(revisions.get(commit));
+    lastCommit = commit;
+  }
+
+  /**
+   * SONARPLUGINS-3097 For some SCM blame is missing on last empty line: it is attributed to the commit of the previous line.
+   */
+  void complete(int fileLineCount) {
+    int lineCount = getLineCount();
+    if (lineCount > 0 && fileLineCount == lineCount + 1) {
+      addLine(lastCommit);
+    }
+  }
+
+  int getLineCount() {
+    return authorsData.getLineCount();
+  }
+
+  Measure getAuthors() {
+    return authorsData.build();
+  }
+
+  Measure getDates() {
+    return datesData.build();
+  }
+
+  Measure getRevisions() {
+    return revisionsData.build();
+  }
+}
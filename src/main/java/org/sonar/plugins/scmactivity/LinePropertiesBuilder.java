@@ -0,0 +1,106 @@
+/*
+ * Sonar SCM Activity Plugin
+ * Copyright (C) 2010 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+
+package org.sonar.plugins.scmactivity;
+
+import org.sonar.api.measures.Measure;
+import org.sonar.api.measures.Metric;
+
+import java.util.Arrays;
+
+import javax.annotation.Nullable;
+
+/**
+ * Replacement of {@link org.sonar.api.measures.PropertiesBuilder} for values given for each line of a file, in the order of the lines.
+ * <p/>
+ * Line numbers are dense from 1 to N, so nothing needs to be sorted nor boxed: the <code>line=value</code> pairs are written
+ * in a single char buffer, sized from the expected number of lines. The data is the same as the one of PropertiesBuilder.
+ */
+class LinePropertiesBuilder {
+  private final Metric metric;
+  private char[] buffer;
+  private int length;
+  private int lineCount;
+
+  /**
+   * @param expectedLineCount   number of lines used to size the buffer
+   * @param expectedValueLength typical length of the values, used to size the buffer
+   */
+  LinePropertiesBuilder(Metric metric, int expectedLineCount, int expectedValueLength) {
+    this.metric = metric;
+    this.buffer = new char[Math.max(16, expectedLineCount * (digits(expectedLineCount) + expectedValueLength + 2))];
+  }
+
+  /**
+   * Adds the value of the next line. <code>null</code> is written as an empty value.
+   */
+  LinePropertiesBuilder add(@Nullable String value) {
+    lineCount++;
+    int valueLength = value == null ? 0 : value.length();
+    ensureCapacity(length + digits(lineCount) + valueLength + 2);
+
+    if (lineCount > 1) {
+      buffer[length++] = ';';
+    }
+    writeLineNumber();
+    buffer[length++] = '=';
+    if (value != null) {
+      value.getChars(0, valueLength, buffer, length);
+      length += valueLength;
+    }
+    return this;
+  }
+
+  int getLineCount() {
+    return lineCount;
+  }
+
+  String buildData() {
+    return new String(buffer, 0, length);
+  }
+
+  Measure build() {
+    return new Measure(metric, buildData());
+  }
+
+  private void writeLineNumber() {
+    int end = length + digits(lineCount);
+    int remaining = lineCount;
+    for (int i = end - 1; i >= length; i--) {
+      buffer[i] = (char) ('0' + remaining % 10);
+      remaining /= 10;
+    }
+    length = end;
+  }
+
+  private void ensureCapacity(int capacity) {
+    if (capacity > buffer.length) {
+      buffer = Arrays.copyOf(buffer, Math.max(capacity, 2 * buffer.length));
+    }
+  }
+
+  private static int digits(int value) {
+    int digits = 1;
+    for (int remaining = value; remaining >= 10; remaining /= 10) {
+      digits++;
+    }
+    return digits;
+  }
+}
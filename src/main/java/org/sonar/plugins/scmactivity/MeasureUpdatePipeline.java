@@ -0,0 +1,317 @@
+/*
+ * Sonar SCM Activity Plugin
+ * Copyright (C) 2010 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+
+package org.sonar.plugins.scmactivity;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Ticker;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.apache.commons.lang.exception.ExceptionUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonar.api.batch.SensorContext;
+import org.sonar.api.batch.TimeMachine;
+import org.sonar.api.resources.Resource;
+import org.sonar.api.utils.SonarException;
+import org.sonar.plugins.scmactivity.BlameTimings.Phase;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounded producer/consumer pipeline between the blame threads and the main thread.
+ * <p/>
+ * At most {@link BlameThreadCount#maxInFlight()} tasks are submitted at any time. Results are drained in completion order
+ * and executed on the calling thread, so that measures are only read/written on the main thread
+ * and heap usage depends on the number of threads rather than on the number of files.
+ * Previous measures of unchanged files are copied by batches through {@link CarryForwardMeasures}.
+ * <p/>
+ * Tasks running for longer than the file timeout are cancelled, which interrupts the thread and destroys the SCM process.
+ * Once the total timeout is reached, the remaining tasks are cancelled and no new task is started.
+ * In both cases the previous measures of the file are kept.
+ */
+class MeasureUpdatePipeline {
+  private static final Logger LOG = LoggerFactory.getLogger(MeasureUpdatePipeline.class);
+  private static final long MAX_WAIT_NANOS = TimeUnit.SECONDS.toNanos(1);
+  private static final int MAX_LOGGED_TIMEOUTS = 20;
+
+  private final CompletionService<MeasureUpdate> completionService;
+  private final BlameThreadCount threadCount;
+  private final TimeMachine timeMachine;
+  private final SensorContext context;
+  private final CarryForwardMeasures carryForward;
+  private final BlameTimeouts timeouts;
+  private final BlameProgress progress;
+  private final BlameTimings timings;
+  private final Ticker ticker;
+  private final long start;
+  private final Map<Future<MeasureUpdate>, TrackedTask> inFlight = Maps.newLinkedHashMap();
+  private final List<Resource> timedOut = Lists.newArrayList();
+  private int skipped;
+  private int outdated;
+
+  MeasureUpdatePipeline(ExecutorService executor, BlameThreadCount threadCount, TimeMachine timeMachine, SensorContext context,
+      CarryForwardMeasures carryForward, BlameTimeouts timeouts, BlameProgress progress, BlameTimings timings) {
+    this(executor, threadCount, timeMachine, context, carryForward, timeouts, progress, timings, Ticker.systemTicker());
+  }
+
+  @VisibleForTesting
+  MeasureUpdatePipeline(ExecutorService executor, BlameThreadCount threadCount, TimeMachine timeMachine, SensorContext context,
+      CarryForwardMeasures carryForward, BlameTimeouts timeouts, BlameProgress progress, BlameTimings timings, Ticker ticker) {
+    this.completionService = new ExecutorCompletionService<MeasureUpdate>(executor);
+    this.threadCount = threadCount;
+    this.timeMachine = timeMachine;
+    this.context = context;
+    this.carryForward = carryForward;
+    this.timeouts = timeouts;
+    this.progress = progress;
+    this.timings = timings;
+    this.ticker = ticker;
+    this.start = ticker.read();
+  }
+
+  public void submit(Resource resource, Callable<MeasureUpdate> task) {
+    while (inFlight.size() >= threadCount.maxInFlight()) {
+      executeNext();
+    }
+
+    if (isTotalTimeoutReached()) {
+      skipped++;
+      progress.failed();
+      carryForward.add(resource);
+      return;
+    }
+
+    TrackedTask trackedTask = new TrackedTask(resource, task, ticker);
+    inFlight.put(completionService.submit(trackedTask), trackedTask);
+  }
+
+  public void drain() {
+    while (!inFlight.isEmpty()) {
+      executeNext();
+    }
+    carryForward.flush();
+    carryForward.logReport();
+    threadCount.logReport();
+    progress.logSummary();
+    logTimeouts();
+  }
+
+  /**
+   * Cancels the tasks still in flight, for example after a failure on the main thread.
+   */
+  public void cancel() {
+    for (Future<MeasureUpdate> update : inFlight.keySet()) {
+      update.cancel(true);
+    }
+    inFlight.clear();
+  }
+
+  private void executeNext() {
+    Future<MeasureUpdate> update = takeNext();
+    TrackedTask task = inFlight.remove(update);
+
+    if (update.isCancelled()) {
+      threadCount.taskCompleted();
+      timedOut.add(task.resource);
+      progress.failed();
+      carryForward.add(task.resource);
+    } else {
+      execute(update);
+    }
+    progress.report();
+  }
+
+  private void execute(Future<MeasureUpdate> update) {
+    try {
+      MeasureUpdate measureUpdate = getCounted(update);
+      if (measureUpdate instanceof CopyPreviousMeasures) {
+        CopyPreviousMeasures copy = (CopyPreviousMeasures) measureUpdate;
+        if (copy.isOutdated()) {
+          outdated++;
+        }
+        if (copy.isSkipped()) {
+          progress.skipped();
+        } else {
+          progress.unchanged();
+        }
+        carryForward.add(copy.getResource());
+      } else if (measureUpdate == MeasureUpdate.NONE) {
+        progress.failed();
+      } else {
+        progress.blamed();
+        long start = System.nanoTime();
+        measureUpdate.execute(timeMachine, context);
+        timings.record(Phase.SAVE, start);
+      }
+    } catch (Exception e) {
+      progress.failed();
+      LOG.error("Failure during SCM blame retrieval", ExceptionUtils.getRootCause(e));
+    }
+  }
+
+  /**
+   * Only the tasks that ran a blame are counted: unchanged and skipped files complete instantly and would
+   * make the throughput depend on their proportion rather than on the number of threads.
+   */
+  private MeasureUpdate getCounted(Future<MeasureUpdate> update) throws InterruptedException, ExecutionException {
+    MeasureUpdate measureUpdate;
+    try {
+      measureUpdate = update.get();
+    } catch (ExecutionException e) {
+      threadCount.taskCompleted();
+      throw e;
+    }
+    if (!isNotBlamed(measureUpdate)) {
+      threadCount.taskCompleted();
+    }
+    return measureUpdate;
+  }
+
+  private static boolean isNotBlamed(MeasureUpdate measureUpdate) {
+    if (!(measureUpdate instanceof CopyPreviousMeasures)) {
+      return false;
+    }
+    CopyPreviousMeasures copy = (CopyPreviousMeasures) measureUpdate;
+    return !copy.isOutdated() || copy.isSkipped();
+  }
+
+  private Future<MeasureUpdate> takeNext() {
+    try {
+      while (true) {
+        long start = System.nanoTime();
+        Future<MeasureUpdate> update = completionService.poll(nanosBeforeNextDeadline(), TimeUnit.NANOSECONDS);
+        timings.record(Phase.WAIT, start);
+        if (update != null) {
+          return update;
+        }
+        cancelOverdueTasks();
+        progress.report();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new SonarException("Interrupted while waiting for SCM blame retrieval", e);
+    }
+  }
+
+  private long nanosBeforeNextDeadline() {
+    long now = ticker.read();
+    long wait = Math.min(MAX_WAIT_NANOS, nanosBeforeTotalTimeout());
+
+    if (timeouts.hasFileTimeout()) {
+      for (TrackedTask task : inFlight.values()) {
+        if (task.isStarted() && !task.cancelled) {
+          wait = Math.min(wait, task.startedAt + timeouts.getFileTimeoutNanos() - now);
+        }
+      }
+    }
+
+    return Math.max(0, wait);
+  }
+
+  private void cancelOverdueTasks() {
+    boolean totalTimeoutReached = isTotalTimeoutReached();
+    long now = ticker.read();
+
+    for (Map.Entry<Future<MeasureUpdate>, TrackedTask> entry : inFlight.entrySet()) {
+      TrackedTask task = entry.getValue();
+      if (!task.cancelled && (totalTimeoutReached || isFileTimeoutReached(task, now))) {
+        task.cancelled = true;
+        entry.getKey().cancel(true);
+      }
+    }
+  }
+
+  private boolean isFileTimeoutReached(TrackedTask task, long now) {
+    return timeouts.hasFileTimeout() && task.isStarted() && now - task.startedAt >= timeouts.getFileTimeoutNanos();
+  }
+
+  boolean isTotalTimeoutReached() {
+    return timeouts.hasTotalTimeout() && ticker.read() - start >= timeouts.getTotalTimeoutNanos();
+  }
+
+  /**
+   * Time left before the total timeout, or {@link Long#MAX_VALUE} without total timeout.
+   */
+  long nanosBeforeTotalTimeout() {
+    if (!timeouts.hasTotalTimeout()) {
+      return Long.MAX_VALUE;
+    }
+    return Math.max(0, start + timeouts.getTotalTimeoutNanos() - ticker.read());
+  }
+
+  private void logTimeouts() {
+    if (!timedOut.isEmpty()) {
+      LOG.warn("SCM blame retrieval timed out for {} file(s), previous measures were kept: {}{}", new Object[] {
+        timedOut.size(), Iterables.limit(timedOut, MAX_LOGGED_TIMEOUTS), timedOut.size() > MAX_LOGGED_TIMEOUTS ? "..." : ""});
+    }
+    if (skipped > 0) {
+      LOG.warn("SCM blame retrieval total timeout reached, previous measures were kept for {} remaining file(s)", skipped);
+    }
+  }
+
+  /**
+   * Whether the measures of all the files match their current content: no timeout, and no previous measures kept
+   * after a blame failure. Failed files without measures don't count.
+   */
+  public boolean isComplete() {
+    return timedOut.isEmpty() && skipped == 0 && outdated == 0;
+  }
+
+  @VisibleForTesting
+  List<Resource> getTimedOut() {
+    return timedOut;
+  }
+
+  private static class TrackedTask implements Callable<MeasureUpdate> {
+    private final Resource resource;
+    private final Callable<MeasureUpdate> delegate;
+    private final Ticker ticker;
+    private volatile boolean started;
+    private volatile long startedAt;
+    // Only accessed from the main thread
+    private boolean cancelled;
+
+    TrackedTask(Resource resource, Callable<MeasureUpdate> delegate, Ticker ticker) {
+      this.resource = resource;
+      this.delegate = delegate;
+      this.ticker = ticker;
+    }
+
+    public MeasureUpdate call() throws Exception {
+      startedAt = ticker.read();
+      started = true;
+      return delegate.call();
+    }
+
+    boolean isStarted() {
+      return started;
+    }
+  }
+}
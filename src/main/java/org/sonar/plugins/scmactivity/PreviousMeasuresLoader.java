@@ -0,0 +1,129 @@
+/*
+ * Sonar SCM Activity Plugin
+ * Copyright (C) 2010 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+
+package org.sonar.plugins.scmactivity;
+
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.sonar.api.BatchExtension;
+import org.sonar.api.database.DatabaseSession;
+import org.sonar.api.database.model.MeasureModel;
+import org.sonar.api.database.model.Snapshot;
+import org.sonar.api.measures.Measure;
+import org.sonar.api.measures.Metric;
+import org.sonar.api.measures.MetricFinder;
+import org.sonar.api.resources.Resource;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Loads the measures of the last analysis for many resources at once, instead of running
+ * one {@link org.sonar.api.batch.TimeMachineQuery} per resource.
+ * <p/>
+ * Resources are queried by chunks of {@link #CHUNK_SIZE} to stay below the size limit of the SQL IN clause.
+ * Resources which are not yet persisted (no id) are ignored. Only the measures of processed snapshots are loaded,
+ * without the rule, severity, characteristic and developer variants, like {@link org.sonar.api.batch.TimeMachineQuery}.
+ */
+public class PreviousMeasuresLoader implements BatchExtension {
+  static final int CHUNK_SIZE = 500;
+
+  private static final String QUERY = "SELECT s.resourceId, m FROM Snapshot s, MeasureModel m LEFT JOIN FETCH m.measureData"
+    + " WHERE m.snapshotId = s.id AND s.last = true AND s.status = :status AND s.resourceId IN (:resourceIds) AND m.metricId IN (:metricIds)"
+    + " AND m.characteristic IS NULL AND m.ruleId IS NULL AND m.rulePriority IS NULL AND m.personId IS NULL";
+
+  private final DatabaseSession session;
+  private final MetricFinder metricFinder;
+  private int queryCount;
+
+  public PreviousMeasuresLoader(DatabaseSession session, MetricFinder metricFinder) {
+    this.session = session;
+    this.metricFinder = metricFinder;
+  }
+
+  public ListMultimap<Resource, Measure> load(Collection<Resource> resources, List<Metric> metrics) {
+    ListMultimap<Resource, Measure> measures = ArrayListMultimap.create();
+
+    Map<Integer, Metric> metricsById = metricsById(metrics);
+    if (metricsById.isEmpty()) {
+      return measures;
+    }
+
+    for (List<Resource> chunk : Iterables.partition(persisted(resources), CHUNK_SIZE)) {
+      Map<Integer, Resource> resourcesById = Maps.newHashMap();
+      for (Resource resource : chunk) {
+        resourcesById.put(resource.getId(), resource);
+      }
+
+      for (Object[] row : query(resourcesById.keySet(), metricsById.keySet())) {
+        Resource resource = resourcesById.get(row[0]);
+        MeasureModel model = (MeasureModel) row[1];
+        Metric metric = metricsById.get(model.getMetricId());
+
+        measures.put(resource, new Measure(metric, model.getData(metric)));
+      }
+    }
+
+    return measures;
+  }
+
+  /**
+   * Number of database queries run by this loader since its creation.
+   */
+  public int getQueryCount() {
+    return queryCount;
+  }
+
+  @SuppressWarnings("unchecked")
+  private List<Object[]> query(Collection<Integer> resourceIds, Collection<Integer> metricIds) {
+    queryCount++;
+
+    return session.createQuery(QUERY)
+        .setParameter("status", Snapshot.STATUS_PROCESSED)
+        .setParameter("resourceIds", resourceIds)
+        .setParameter("metricIds", metricIds)
+        .getResultList();
+  }
+
+  private Map<Integer, Metric> metricsById(List<Metric> metrics) {
+    Map<Integer, Metric> metricsById = Maps.newHashMap();
+    for (Metric metric : metrics) {
+      Metric persisted = metricFinder.findByKey(metric.getKey());
+      if (persisted != null && persisted.getId() != null) {
+        metricsById.put(persisted.getId(), metric);
+      }
+    }
+    return metricsById;
+  }
+
+  private static List<Resource> persisted(Collection<Resource> resources) {
+    List<Resource> persisted = Lists.newArrayList();
+    for (Resource resource : resources) {
+      if (resource.getId() != null) {
+        persisted.add(resource);
+      }
+    }
+    return persisted;
+  }
+}
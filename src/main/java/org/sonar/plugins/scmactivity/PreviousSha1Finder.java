@@ -20,24 +20,58 @@
 
 package org.sonar.plugins.scmactivity;
 
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Maps;
 import org.sonar.api.BatchExtension;
 import org.sonar.api.batch.TimeMachine;
 import org.sonar.api.batch.TimeMachineQuery;
 import org.sonar.api.measures.Measure;
+import org.sonar.api.measures.Metric;
 import org.sonar.api.resources.Resource;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 public class PreviousSha1Finder implements BatchExtension {
+  private static final List<Metric> METRICS = ImmutableList.of(ScmActivityMetrics.SCM_HASH);
+
   private final TimeMachine timeMachine;
+  private final PreviousMeasuresLoader previousMeasuresLoader;
+  private final Map<Resource, String> prefetched = Maps.newHashMap();
 
-  public PreviousSha1Finder(TimeMachine timeMachine) {
+  public PreviousSha1Finder(TimeMachine timeMachine, PreviousMeasuresLoader previousMeasuresLoader) {
     this.timeMachine = timeMachine;
+    this.previousMeasuresLoader = previousMeasuresLoader;
+  }
+
+  /**
+   * Loads the previous hashes of all the given resources with as few queries as possible.
+   * Later calls to {@link #find(Resource)} for those resources don't hit the database, however many they are.
+   */
+  public void prefetch(Collection<Resource> resources) {
+    prefetched.clear();
+
+    ListMultimap<Resource, Measure> measures = previousMeasuresLoader.load(resources, METRICS);
+    for (Resource resource : resources) {
+      if (resource.getId() != null) {
+        prefetched.put(resource, sha1(measures.get(resource)));
+      }
+    }
   }
 
   public String find(Resource resource) {
-    List<Measure> measures = timeMachine.getMeasures(queryPreviousHash(resource));
+    String sha1 = prefetched.get(resource);
+    if (sha1 != null) {
+      return sha1;
+    }
+
+    return sha1(timeMachine.getMeasures(queryPreviousHash(resource)));
+  }
+
+  private static String sha1(List<Measure> measures) {
     if (measures.isEmpty()) {
       return "";
     }
@@ -42,7 +42,24 @@ public final class ScmActivityMetrics implements Metrics {
           .setHidden(true)
           .create();
 
+  /**
+   * @since 1.7
+   */
+  public static final String SCM_REVISION_KEY = "scm.revision";
+
+  /**
+   * Git commit of the last analysis of a module, whose changes are used to find the changed files.
+   * Only saved when the measures of all the files match this commit.
+   *
+   * @since 1.7
+   */
+  public static final Metric SCM_REVISION = new Metric
+      .Builder(SCM_REVISION_KEY, "Revision", Metric.ValueType.STRING)
+          .setDomain(CoreMetrics.DOMAIN_SCM)
+          .setHidden(true)
+          .create();
+
   public List<Metric> getMetrics() {
-    return ImmutableList.of(SCM_HASH);
+    return ImmutableList.of(SCM_HASH, SCM_REVISION);
   }
 }
@@ -70,11 +70,100 @@ import java.util.List;
     key = ScmActivityPlugin.THREAD_COUNT,
     defaultValue = "4",
     name = "Thread count",
-    description = "Number of threads used to speed-up the retrieval of authors by line (aka blame information).",
+    description = "Number of threads used to speed-up the retrieval of authors by line (aka blame information). "
+      + "Set to <i>auto</i> to let the plugin tune the number of threads at runtime according to the measured throughput.",
     module = true,
     project = true,
     global = true
   ),
+  @Property(
+    key = ScmActivityPlugin.FILE_TIMEOUT,
+    defaultValue = "600",
+    name = "Timeout by file",
+    description = "Maximum time in seconds spent retrieving the blame information of a single file. "
+      + "The SCM command is then killed and the previous information is kept for this file. Use 0 for no timeout.",
+    module = true,
+    project = true,
+    global = true,
+    type = PropertyType.INTEGER
+  ),
+  @Property(
+    key = ScmActivityPlugin.TOTAL_TIMEOUT,
+    defaultValue = "0",
+    name = "Total timeout",
+    description = "Maximum time in seconds spent retrieving the blame information of all the files of a module. "
+      + "The previous information is kept for the remaining files. Use 0 for no timeout.",
+    module = true,
+    project = true,
+    global = true,
+    type = PropertyType.INTEGER
+  ),
+  @Property(
+    key = ScmActivityPlugin.CIRCUIT_BREAKER_FAILURES,
+    defaultValue = "10",
+    name = "Consecutive SCM failures suspending blame",
+    description = "Number of consecutive failures of the SCM backend (command can't be launched, authentication or network errors) "
+      + "after which blame is suspended and the previous information is kept. Files that can't be blamed don't count. Use 0 to never suspend blame.",
+    module = true,
+    project = true,
+    global = true,
+    type = PropertyType.INTEGER
+  ),
+  @Property(
+    key = ScmActivityPlugin.CIRCUIT_BREAKER_WINDOW,
+    defaultValue = "60",
+    name = "Period of consecutive SCM failures",
+    description = "Period in seconds within which the consecutive failures of the SCM backend must occur to suspend blame.",
+    module = true,
+    project = true,
+    global = true,
+    type = PropertyType.INTEGER
+  ),
+  @Property(
+    key = ScmActivityPlugin.CIRCUIT_BREAKER_OPEN_DURATION,
+    defaultValue = "30",
+    name = "Blame suspension",
+    description = "Time in seconds after which blame is tried again on a single file once suspended.",
+    module = true,
+    project = true,
+    global = true,
+    type = PropertyType.INTEGER
+  ),
+  @Property(
+    key = ScmActivityPlugin.JGIT,
+    defaultValue = "false",
+    name = "Blame git files with JGit",
+    description = "Retrieve the blame information of git files in-process with JGit, instead of running one <i>git blame</i> process by file. "
+      + "Same as using a <i>scm:jgit:</i> URL.",
+    module = true,
+    project = true,
+    global = true,
+    type = PropertyType.BOOLEAN
+  ),
+  @Property(
+    key = ScmActivityPlugin.GIT_INDEX_FINGERPRINT,
+    defaultValue = "false",
+    name = "Use git blob ids as fingerprints",
+    description = "Detect the changed files of git modules with the blob ids of the git index, instead of reading and hashing the content "
+      + "of every file. Only the files modified in the working copy or not tracked are read. "
+      + "All the files are blamed again on the first analysis after a change of this property.",
+    module = true,
+    project = true,
+    global = true,
+    type = PropertyType.BOOLEAN
+  ),
+  @Property(
+    key = ScmActivityPlugin.SINGLE_PASS_BLAME,
+    defaultValue = "false",
+    name = "Blame git files in a single pass",
+    description = "Retrieve the blame information of all the changed files of a module in a single walk of the git history, "
+      + "instead of running one <i>git blame</i> by file. Lines merged from another branch are attributed to the merge commit, "
+      + "including in the files which still need their own <i>git blame</i> (modified, untracked...).",
+    module = true,
+    project = true,
+    global = true,
+    type = PropertyType.BOOLEAN
+  ),
   @Property(
     key = ScmActivityPlugin.PERFORCE_CLIENTSPEC_NAME,
     defaultValue = "",
@@ -92,15 +181,29 @@ public final class ScmActivityPlugin extends SonarPlugin {
   public static final String USER = "sonar.scm.user.secured";
   public static final String PASSWORD = "sonar.scm.password.secured";
   public static final String THREAD_COUNT = "sonar.scm.threadCount";
+  public static final String AUTO_THREAD_COUNT = "auto";
+  public static final String FILE_TIMEOUT = "sonar.scm.fileTimeout";
+  public static final String TOTAL_TIMEOUT = "sonar.scm.totalTimeout";
+  public static final String CIRCUIT_BREAKER_FAILURES = "sonar.scm.circuitBreaker.failures";
+  public static final String CIRCUIT_BREAKER_WINDOW = "sonar.scm.circuitBreaker.window";
+  public static final String CIRCUIT_BREAKER_OPEN_DURATION = "sonar.scm.circuitBreaker.openDuration";
+  public static final String JGIT = "sonar.scm.git.jgit";
+  public static final String GIT_INDEX_FINGERPRINT = "sonar.scm.git.indexFingerprint";
+  public static final String SINGLE_PASS_BLAME = "sonar.scm.git.singlePassBlame";
   public static final String PERFORCE_CLIENTSPEC_NAME = "sonar.scm.perforce.clientspec.name";
 
   @SuppressWarnings("unchecked")
   public List<Class<? extends BatchExtension>> getExtensions() {
     return ImmutableList.of(
         Blame.class,
+        BlameCircuitBreaker.class,
+        BlameCostModel.class,
+        BlameService.class,
+        BlameTimings.class,
         BlameVersionSelector.class,
         FileToResource.class,
         MavenScmConfiguration.class,
+        PreviousMeasuresLoader.class,
         PreviousSha1Finder.class,
         ScmActivityMetrics.class,
         ScmActivitySensor.class,
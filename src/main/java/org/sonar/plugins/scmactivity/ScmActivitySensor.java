@@ -20,30 +20,45 @@
 
 package org.sonar.plugins.scmactivity;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
-import org.apache.commons.lang.exception.ExceptionUtils;
+import com.google.common.collect.Maps;
+import org.apache.commons.lang.StringUtils;
+import org.apache.maven.scm.command.blame.BlameScmResult;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.sonar.api.batch.DependedUpon;
 import org.sonar.api.batch.Sensor;
 import org.sonar.api.batch.SensorContext;
 import org.sonar.api.batch.TimeMachine;
+import org.sonar.api.batch.TimeMachineQuery;
 import org.sonar.api.measures.CoreMetrics;
+import org.sonar.api.measures.Measure;
 import org.sonar.api.measures.Metric;
 import org.sonar.api.resources.InputFile;
 import org.sonar.api.resources.Project;
 import org.sonar.api.resources.ProjectFileSystem;
 import org.sonar.api.resources.Resource;
+import org.sonar.api.utils.SonarException;
 import org.sonar.api.utils.TimeProfiler;
+import org.sonar.plugins.scmactivity.BlameTimings.Phase;
 
+import java.io.File;
+import java.io.IOException;
 import java.nio.charset.Charset;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
 
 public final class ScmActivitySensor implements Sensor {
   private static final Logger LOG = LoggerFactory.getLogger(ScmActivitySensor.class);
@@ -53,15 +68,24 @@ public final class ScmActivitySensor implements Sensor {
   private final UrlChecker urlChecker;
   private final FileToResource fileToResource;
   private final PreviousSha1Finder previousSha1Finder;
+  private final PreviousMeasuresLoader previousMeasuresLoader;
+  private final BlameCostModel costModel;
+  private final BlameService blameService;
+  private final BlameTimings timings;
   private final TimeMachine timeMachine;
 
   public ScmActivitySensor(ScmConfiguration configuration, BlameVersionSelector blameVersionSelector, UrlChecker urlChecker, FileToResource fileToResource,
-      PreviousSha1Finder previousSha1Finder, TimeMachine timeMachine) {
+      PreviousSha1Finder previousSha1Finder, PreviousMeasuresLoader previousMeasuresLoader, BlameCostModel costModel, BlameService blameService,
+      BlameTimings timings, TimeMachine timeMachine) {
     this.configuration = configuration;
     this.blameVersionSelector = blameVersionSelector;
     this.urlChecker = urlChecker;
     this.fileToResource = fileToResource;
     this.previousSha1Finder = previousSha1Finder;
+    this.previousMeasuresLoader = previousMeasuresLoader;
+    this.costModel = costModel;
+    this.blameService = blameService;
+    this.timings = timings;
     this.timeMachine = timeMachine;
   }
 
@@ -69,6 +93,7 @@ public final class ScmActivitySensor implements Sensor {
   public List<Metric> generatesMetrics() {
     return ImmutableList.of(
         ScmActivityMetrics.SCM_HASH,
+        ScmActivityMetrics.SCM_REVISION,
         CoreMetrics.SCM_AUTHORS_BY_LINE,
         CoreMetrics.SCM_LAST_COMMIT_DATETIMES_BY_LINE,
         CoreMetrics.SCM_REVISIONS_BY_LINE);
@@ -82,52 +107,319 @@ public final class ScmActivitySensor implements Sensor {
     urlChecker.check(configuration.getUrl());
 
     TimeProfiler profiler = new TimeProfiler().start("Retrieve SCM blame information with encoding " + Charset.defaultCharset());
+    long start = System.nanoTime();
+
+    Map<InputFile, Resource> resources = indexedResources(context, allFiles(project));
+    timings.record(Phase.INDEX, start);
+
+    GitChangedFiles gitChanges = gitChanges(project);
+    GitBlobIds blobIds = blobIds(project);
 
     // Use multiple threads for the change detection and the blame retrieval
     // However all measures read/write should be done on main thread
     //
-    ExecutorService executor = createExecutor();
+    ThreadPoolExecutor executor = blameService.getExecutor(configuration.getThreadCount());
+    CarryForwardMeasures carryForward = new CarryForwardMeasures(previousMeasuresLoader, timeMachine, context, timings);
+    MeasureUpdatePipeline pipeline = new MeasureUpdatePipeline(executor, threadCount(executor), timeMachine, context, carryForward,
+        configuration.getTimeouts(), new BlameProgress(resources.size(), blameService), timings);
+    try {
+      collect(pipeline, executor, context, resources, project.getFileSystem().getBasedir(), gitChanges, blobIds);
+      pipeline.drain();
+      costModel.save();
+      saveRevision(context, gitChanges, pipeline);
+    } finally {
+      // Threads are shared with the next modules
+      pipeline.cancel();
+    }
 
-    List<Future<MeasureUpdate>> updates = Lists.newArrayList();
-    collect(updates, context, allFiles(project), executor);
-    execute(updates, context);
+    timings.save(project.getKey(), resources.size(), System.nanoTime() - start);
+    profiler.stop();
+  }
 
-    executor.shutdown();
+  private void collect(MeasureUpdatePipeline pipeline, ExecutorService executor, final SensorContext context, Map<InputFile, Resource> allResources,
+      File basedir, @Nullable GitChangedFiles gitChanges, @Nullable GitBlobIds blobIds) {
+    long start = System.nanoTime();
+    previousSha1Finder.prefetch(allResources.values());
+    timings.record(Phase.PREFETCH, start);
 
-    profiler.stop();
+    Map<InputFile, Resource> resources = allResources;
+    if (gitChanges != null && gitChanges.isPreviousKnown()) {
+      resources = carryForwardUnchanged(pipeline, allResources, gitChanges);
+    }
+
+    if (configuration.isSinglePassBlame()) {
+      collectInSinglePass(pipeline, executor, context, resources, basedir, blobIds);
+      return;
+    }
+
+    // Start the most expensive files first so that they don't delay the end of the analysis
+    for (final InputFile inputFile : costModel.sortByDecreasingCost(resources.keySet())) {
+      final String previousSha1 = previousSha1(resources.get(inputFile));
+      final String fingerprint = fingerprint(blobIds, inputFile);
+
+      pipeline.submit(resources.get(inputFile), new Callable<MeasureUpdate>() {
+        public MeasureUpdate call() {
+          return blameVersionSelector.detect(inputFile, previousSha1, fingerprint, context);
+        }
+      });
+    }
   }
 
-  private void collect(List<Future<MeasureUpdate>> updates, final SensorContext context, Iterable<InputFile> allFiles, ExecutorService executor) {
-    for (final InputFile inputFile : allFiles) {
-      Resource resource = fileToResource.toResource(inputFile, context);
+  /**
+   * Finds the files changed since the commit of the previous analysis, without reading them.
+   *
+   * @return <code>null</code> if the module is not in a git working copy
+   */
+  @CheckForNull
+  private GitChangedFiles gitChanges(Project project) {
+    if (!configuration.isGit()) {
+      return null;
+    }
 
-      if (resource == null) {
-        LOG.debug("File not found in Sonar index: {}", inputFile.getFile());
+    long start = System.nanoTime();
+    String previousRevision = previousRevision(project);
+    try {
+      GitChangedFiles changes = GitChangedFiles.since(project.getFileSystem().getBasedir(), previousRevision);
+      if (changes.isPreviousKnown()) {
+        LOG.info("Looking for files changed since commit {}", previousRevision);
+      }
+      return changes;
+    } catch (IOException e) {
+      LOG.warn("Unable to find the files changed in git, the content of all the files is checked", e);
+      return null;
+    } finally {
+      timings.record(Phase.CHANGES, start);
+    }
+  }
+
+  /**
+   * Reads the blob ids of the git index, used as fingerprints instead of hashing the content of the files.
+   *
+   * @return <code>null</code> if the content of all the files must be hashed
+   */
+  @CheckForNull
+  private GitBlobIds blobIds(Project project) {
+    if (!configuration.isGitIndexFingerprint()) {
+      return null;
+    }
+
+    long start = System.nanoTime();
+    try {
+      GitBlobIds blobIds = GitBlobIds.load(project.getFileSystem().getBasedir());
+      LOG.info("{} file fingerprint(s) read from the git index", blobIds.size());
+      return blobIds;
+    } catch (IOException e) {
+      LOG.warn("Unable to read the git index, the content of all the files is hashed", e);
+      return null;
+    } finally {
+      timings.record(Phase.FINGERPRINTS, start);
+    }
+  }
+
+  @CheckForNull
+  private static String fingerprint(@Nullable GitBlobIds blobIds, InputFile inputFile) {
+    return blobIds == null ? null : blobIds.get(inputFile.getFile());
+  }
+
+  @CheckForNull
+  private String previousRevision(Project project) {
+    TimeMachineQuery query = new TimeMachineQuery(project).setMetrics(ScmActivityMetrics.SCM_REVISION).setOnlyLastAnalysis(true);
+    List<Measure> measures = timeMachine.getMeasures(query);
+    return measures.isEmpty() ? null : measures.get(0).getData();
+  }
+
+  /**
+   * Keeps the previous measures of the files which didn't change since the previous analysis, without opening them.
+   * Files without previous measures are considered changed.
+   *
+   * @return the changed files
+   */
+  private Map<InputFile, Resource> carryForwardUnchanged(MeasureUpdatePipeline pipeline, Map<InputFile, Resource> resources,
+      GitChangedFiles gitChanges) {
+    Map<InputFile, Resource> changed = Maps.newLinkedHashMap();
+    for (Map.Entry<InputFile, Resource> entry : resources.entrySet()) {
+      Resource resource = entry.getValue();
+      if (isChanged(gitChanges, entry.getKey().getFile()) || StringUtils.isEmpty(previousSha1(resource))) {
+        changed.put(entry.getKey(), resource);
       } else {
-        final String previousSha1 = previousSha1Finder.find(resource);
+        pipeline.submit(resource, done(new CopyPreviousMeasures(resource)));
+      }
+    }
+    LOG.info("{} file(s) changed since the previous analysis", changed.size());
+    return changed;
+  }
+
+  private static boolean isChanged(GitChangedFiles gitChanges, File file) {
+    try {
+      return gitChanges.isChanged(file);
+    } catch (IOException e) {
+      LOG.debug("Unable to resolve the path of " + file, e);
+      return true;
+    }
+  }
 
-        updates.add(executor.submit(new Callable<MeasureUpdate>() {
+  /**
+   * The commit is saved only if the measures of all the files match it, so that the next analysis can trust the changes since this commit.
+   */
+  private static void saveRevision(SensorContext context, @Nullable GitChangedFiles gitChanges, MeasureUpdatePipeline pipeline) {
+    if (gitChanges != null && gitChanges.isClean() && pipeline.isComplete()) {
+      context.saveMeasure(new Measure(ScmActivityMetrics.SCM_REVISION, gitChanges.getHead()));
+    }
+  }
+
+  /**
+   * Finds the changed files first, then blames them all in a single walk of the git history.
+   * The measures of each file are saved as soon as all its lines are attributed.
+   */
+  private void collectInSinglePass(MeasureUpdatePipeline pipeline, ExecutorService executor, SensorContext context,
+      Map<InputFile, Resource> resources, File basedir, @Nullable GitBlobIds blobIds) {
+    Map<InputFile, FileVersion> changed = readChangedVersions(pipeline, executor, context, resources, blobIds);
+    blameInSinglePass(pipeline, new GitHistoryBlame(basedir, blameService.getCommits()), changed);
+  }
+
+  /**
+   * The walk is cancelled once the total timeout is reached, then the pipeline keeps the previous measures of the files not blamed yet.
+   */
+  @VisibleForTesting
+  void blameInSinglePass(MeasureUpdatePipeline pipeline, GitHistoryBlame historyBlame, Map<InputFile, FileVersion> changed) {
+    Map<File, InputFile> notBlamed = Maps.newHashMap();
+    for (InputFile inputFile : changed.keySet()) {
+      notBlamed.put(changed.get(inputFile).getFile(), inputFile);
+    }
+
+    historyBlame.start(Lists.newArrayList(notBlamed.keySet()));
+    try {
+      for (GitHistoryBlame.Result result = next(pipeline, historyBlame); result != null; result = next(pipeline, historyBlame)) {
+        final FileVersion version = changed.get(notBlamed.remove(result.getFile()));
+        final BlameScmResult blame = result.getBlame();
+        pipeline.submit(version.getResource(), new Callable<MeasureUpdate>() {
           public MeasureUpdate call() {
-            return blameVersionSelector.detect(inputFile, previousSha1, context);
+            return blameVersionSelector.blame(version, blame);
           }
-        }));
+        });
       }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new SonarException("Interrupted while walking the git history", e);
+    } finally {
+      historyBlame.cancel();
+    }
+
+    if (pipeline.isTotalTimeoutReached()) {
+      LOG.warn("SCM blame total timeout reached while walking the git history");
+    }
+    LOG.info("SCM blame of {} file(s) retrieved in a single pass, {} file(s) to blame one by one", changed.size() - notBlamed.size(),
+        notBlamed.size());
+    for (InputFile inputFile : costModel.sortByDecreasingCost(notBlamed.values())) {
+      final FileVersion version = changed.get(inputFile);
+      pipeline.submit(version.getResource(), new Callable<MeasureUpdate>() {
+        public MeasureUpdate call() {
+          return blameVersionSelector.blame(version);
+        }
+      });
     }
   }
 
-  private void execute(List<Future<MeasureUpdate>> updates, SensorContext context) {
-    for (Future<MeasureUpdate> update : updates) {
-      try {
-        MeasureUpdate measureUpdate = update.get();
-        measureUpdate.execute(timeMachine, context);
-      } catch (Exception e) {
-        LOG.error("Failure during SCM blame retrieval", ExceptionUtils.getRootCause(e));
+  @CheckForNull
+  private GitHistoryBlame.Result next(MeasureUpdatePipeline pipeline, GitHistoryBlame historyBlame) throws InterruptedException {
+    long start = System.nanoTime();
+    GitHistoryBlame.Result result = historyBlame.next(pipeline.nanosBeforeTotalTimeout(), TimeUnit.NANOSECONDS);
+    timings.record(Phase.WAIT, start);
+    return result;
+  }
+
+  /**
+   * Reads all the files in parallel. The files which didn't change are submitted right away.
+   * The files not read before the total timeout keep their previous measures.
+   *
+   * @return the changed files
+   */
+  private Map<InputFile, FileVersion> readChangedVersions(MeasureUpdatePipeline pipeline, ExecutorService executor, final SensorContext context,
+      Map<InputFile, Resource> resources, @Nullable GitBlobIds blobIds) {
+    List<InputFile> inputFiles = Lists.newArrayList(resources.keySet());
+    List<String> previousSha1s = Lists.newArrayList();
+    List<Callable<FileVersion>> reads = Lists.newArrayList();
+    for (final InputFile inputFile : inputFiles) {
+      previousSha1s.add(previousSha1(resources.get(inputFile)));
+      final String fingerprint = fingerprint(blobIds, inputFile);
+      reads.add(new Callable<FileVersion>() {
+        public FileVersion call() {
+          return blameVersionSelector.read(inputFile, fingerprint, context);
+        }
+      });
+    }
+
+    Map<InputFile, FileVersion> changed = Maps.newLinkedHashMap();
+    try {
+      List<Future<FileVersion>> versions = executor.invokeAll(reads, pipeline.nanosBeforeTotalTimeout(), TimeUnit.NANOSECONDS);
+      for (int i = 0; i < inputFiles.size(); i++) {
+        Resource resource = resources.get(inputFiles.get(i));
+        Future<FileVersion> read = versions.get(i);
+        FileVersion version = read.isCancelled() ? null : get(read);
+        if (read.isCancelled()) {
+          // Not read before the total timeout, the version is unknown
+          pipeline.submit(resource, done(CopyPreviousMeasures.outdated(resource)));
+        } else if (version == null) {
+          pipeline.submit(resource, done(MeasureUpdate.NONE));
+        } else if (!version.isChangedSince(previousSha1s.get(i))) {
+          pipeline.submit(version.getResource(), done(blameVersionSelector.notChanged(version)));
+        } else {
+          changed.put(inputFiles.get(i), version);
+        }
       }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new SonarException("Interrupted while reading the source files", e);
     }
+    return changed;
+  }
+
+  private String previousSha1(Resource resource) {
+    long start = System.nanoTime();
+    String previousSha1 = previousSha1Finder.find(resource);
+    timings.record(Phase.PREVIOUS_SHA1, start);
+    return previousSha1;
   }
 
-  private ExecutorService createExecutor() {
-    return Executors.newFixedThreadPool(configuration.getThreadCount());
+  @CheckForNull
+  private static FileVersion get(Future<FileVersion> version) throws InterruptedException {
+    try {
+      return version.get();
+    } catch (ExecutionException e) {
+      LOG.error("Unable to read the source file", e.getCause());
+      return null;
+    }
+  }
+
+  private static Callable<MeasureUpdate> done(final MeasureUpdate update) {
+    return new Callable<MeasureUpdate>() {
+      public MeasureUpdate call() {
+        return update;
+      }
+    };
+  }
+
+  private Map<InputFile, Resource> indexedResources(SensorContext context, Iterable<InputFile> allFiles) {
+    Map<InputFile, Resource> resources = Maps.newLinkedHashMap();
+
+    for (InputFile inputFile : allFiles) {
+      Resource resource = fileToResource.toResource(inputFile, context);
+
+      if (resource == null) {
+        LOG.debug("File not found in Sonar index: {}", inputFile.getFile());
+      } else {
+        resources.put(inputFile, resource);
+      }
+    }
+
+    return resources;
+  }
+
+  private BlameThreadCount threadCount(ThreadPoolExecutor executor) {
+    if (configuration.isThreadCountAdaptive()) {
+      return BlameThreadCount.adaptive(executor);
+    }
+    return BlameThreadCount.fixed(executor.getCorePoolSize());
   }
 
   private static Iterable<InputFile> allFiles(Project project) {
@@ -29,6 +29,9 @@ import org.slf4j.LoggerFactory;
 import org.sonar.api.BatchExtension;
 import org.sonar.api.config.Settings;
 import org.sonar.api.utils.SonarException;
+import org.sonar.plugins.scmactivity.maven.SonarJGitScmProvider;
+
+import java.util.concurrent.TimeUnit;
 
 import javax.annotation.CheckForNull;
 import javax.annotation.Nullable;
@@ -71,7 +74,21 @@ public class ScmConfiguration implements BatchExtension {
     return settings.getString(ScmActivityPlugin.PASSWORD);
   }
 
+  /**
+   * Whether the number of blame threads should be tuned at runtime (<code>sonar.scm.threadCount=auto</code>).
+   */
+  public boolean isThreadCountAdaptive() {
+    return ScmActivityPlugin.AUTO_THREAD_COUNT.equalsIgnoreCase(StringUtils.trim(settings.getString(ScmActivityPlugin.THREAD_COUNT)));
+  }
+
+  /**
+   * @return the configured number of threads, or the initial number of threads in adaptive mode
+   */
   public int getThreadCount() {
+    if (isThreadCountAdaptive()) {
+      return Runtime.getRuntime().availableProcessors();
+    }
+
     int threadCount = settings.getInt(ScmActivityPlugin.THREAD_COUNT);
 
     if (threadCount < 1) {
@@ -84,6 +101,70 @@ public class ScmConfiguration implements BatchExtension {
     return threadCount;
   }
 
+  /**
+   * Whether the module is in a git working copy, blamed either by the git executable or by JGit.
+   */
+  public boolean isGit() {
+    String provider = getScmProvider();
+    return "git".equals(provider) || SonarJGitScmProvider.SCM_TYPE.equals(provider);
+  }
+
+  /**
+   * Whether the files of git modules should be fingerprinted with the blob ids of the git index.
+   */
+  public boolean isGitIndexFingerprint() {
+    return settings.getBoolean(ScmActivityPlugin.GIT_INDEX_FINGERPRINT) && isGit();
+  }
+
+  /**
+   * Whether the changed files of git modules should be blamed in a single walk of the history.
+   * All the files of the module are then blamed following the first parent of merge commits.
+   */
+  public boolean isSinglePassBlame() {
+    return settings.getBoolean(ScmActivityPlugin.SINGLE_PASS_BLAME) && "git".equals(getScmProvider());
+  }
+
+  public BlameTimeouts getTimeouts() {
+    return new BlameTimeouts(timeout(ScmActivityPlugin.FILE_TIMEOUT), timeout(ScmActivityPlugin.TOTAL_TIMEOUT), TimeUnit.SECONDS);
+  }
+
+  private long timeout(String key) {
+    long timeout = settings.getLong(key);
+    if (timeout < 0) {
+      throw new SonarException(String.format("SCM Activity Plugin is configured with a negative timeout [%s=%d]. Use 0 to disable it.", key, timeout));
+    }
+    return timeout;
+  }
+
+  /**
+   * Number of consecutive backend failures suspending blame, or 0 to never suspend it.
+   */
+  public int getCircuitBreakerFailures() {
+    return (int) positive(ScmActivityPlugin.CIRCUIT_BREAKER_FAILURES);
+  }
+
+  /**
+   * @return the period in seconds within which consecutive backend failures are counted
+   */
+  public long getCircuitBreakerWindow() {
+    return positive(ScmActivityPlugin.CIRCUIT_BREAKER_WINDOW);
+  }
+
+  /**
+   * @return the time in seconds before blame is tried again once suspended
+   */
+  public long getCircuitBreakerOpenDuration() {
+    return positive(ScmActivityPlugin.CIRCUIT_BREAKER_OPEN_DURATION);
+  }
+
+  private long positive(String key) {
+    long value = settings.getLong(key);
+    if (value < 0) {
+      throw new SonarException(String.format("SCM Activity Plugin is configured with a negative value [%s=%d].", key, value));
+    }
+    return value;
+  }
+
   @CheckForNull
   public String getPerforceClientspecName() {
     String clientspecName = settings.getString(ScmActivityPlugin.PERFORCE_CLIENTSPEC_NAME);
@@ -98,7 +179,18 @@ public class ScmConfiguration implements BatchExtension {
   }
 
   private class UrlSupplier implements Supplier<String> {
+    private static final String GIT_PREFIX = "scm:git:";
+    private static final String JGIT_PREFIX = "scm:jgit:";
+
     public String get() {
+      String url = url();
+      if (url != null && url.startsWith(GIT_PREFIX) && settings.getBoolean(ScmActivityPlugin.JGIT)) {
+        return JGIT_PREFIX + url.substring(GIT_PREFIX.length());
+      }
+      return url;
+    }
+
+    private String url() {
       // Default to true if not set
       String guessStr = settings.getString("sonar.scm.hidden.guess");
       if (StringUtils.isEmpty(guessStr) || Boolean.parseBoolean(guessStr)) {
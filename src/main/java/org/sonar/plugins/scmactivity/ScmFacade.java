@@ -24,6 +24,8 @@ import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Supplier;
 import com.google.common.base.Suppliers;
 import org.apache.commons.lang.StringUtils;
+import org.apache.maven.scm.CommandParameter;
+import org.apache.maven.scm.CommandParameters;
 import org.apache.maven.scm.ScmException;
 import org.apache.maven.scm.ScmFileSet;
 import org.apache.maven.scm.command.blame.BlameScmRequest;
@@ -34,18 +36,23 @@ import org.apache.maven.scm.repository.ScmRepository;
 import org.apache.maven.scm.repository.ScmRepositoryException;
 import org.sonar.api.BatchExtension;
 import org.sonar.api.utils.SonarException;
+import org.sonar.plugins.scmactivity.maven.SonarGitBlameCommand;
 
 import java.io.File;
+import java.util.Arrays;
+import java.util.List;
 
 public class ScmFacade implements BatchExtension {
   private final SonarScmManager scmManager;
   private final ScmConfiguration configuration;
+  private final BlameService blameService;
   private Supplier<ScmRepository> repository;
 
-  public ScmFacade(SonarScmManager scmManager, ScmConfiguration configuration) {
+  public ScmFacade(SonarScmManager scmManager, ScmConfiguration configuration, BlameService blameService) {
     this.scmManager = scmManager;
     this.configuration = configuration;
-    repository = Suppliers.memoize(new ScmRepositorySupplier());
+    this.blameService = blameService;
+    repository = Suppliers.memoize(new SharedScmRepositorySupplier());
   }
 
   public BlameScmResult blame(File file) throws ScmException {
@@ -56,6 +63,9 @@ public class ScmFacade implements BatchExtension {
         System.setProperty("maven.scm.perforce.clientspec.name", perforceClientSpecName);
       }
     }
+    if (configuration.isSinglePassBlame()) {
+      return blameFirstParent(file);
+    }
     BlameScmRequest blameRequest = new BlameScmRequest(getScmRepository(), new ScmFileSet(file.getParentFile()));
     blameRequest.setFilename(file.getName());
     // FIXME setIgnoreWhitespace is not taken into account see http://jira.codehaus.org/browse/SCM-681#comment-323446
@@ -63,11 +73,35 @@ public class ScmFacade implements BatchExtension {
     return scmManager.blame(blameRequest);
   }
 
+  /**
+   * Attributes the lines like the walk of the history of {@link GitHistoryBlame} does, whichever way the file is blamed.
+   * The blame request of maven-scm can't carry this option, hence the command is run directly.
+   */
+  private BlameScmResult blameFirstParent(File file) throws ScmException {
+    SonarGitBlameCommand command = new SonarGitBlameCommand(blameService.getCommits(), true);
+    command.setLogger(scmManager.getScmLogger());
+
+    CommandParameters parameters = new CommandParameters();
+    parameters.setString(CommandParameter.FILE, file.getName());
+    parameters.setString(CommandParameter.IGNORE_WHITESPACE, Boolean.TRUE.toString());
+    return (BlameScmResult) command.execute(getScmRepository().getProviderRepository(), new ScmFileSet(file.getParentFile()), parameters);
+  }
+
   @VisibleForTesting
   ScmRepository getScmRepository() {
     return repository.get();
   }
 
+  /**
+   * Modules sharing the same SCM URL and credentials share the same repository.
+   */
+  private class SharedScmRepositorySupplier implements Supplier<ScmRepository> {
+    public ScmRepository get() {
+      List<String> key = Arrays.asList(configuration.getUrl(), configuration.getScmProvider(), configuration.getUser(), configuration.getPassword());
+      return blameService.getRepository(key, new ScmRepositorySupplier());
+    }
+  }
+
   private class ScmRepositorySupplier implements Supplier<ScmRepository> {
     public ScmRepository get() {
       try {
@@ -27,18 +27,26 @@ import org.apache.maven.scm.provider.ScmProvider;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.sonar.api.BatchExtension;
+import org.sonar.api.batch.InstantiationStrategy;
+import org.sonar.plugins.scmactivity.maven.SonarGitExeScmProvider;
+import org.sonar.plugins.scmactivity.maven.SonarJGitScmProvider;
 
+@InstantiationStrategy(InstantiationStrategy.PER_BATCH)
 public class SonarScmManager extends AbstractScmManager implements BatchExtension {
-  public SonarScmManager() {
-    registerProviders();
+  public SonarScmManager(BlameService blameService) {
+    registerProviders(blameService);
   }
 
-  private void registerProviders() {
+  private void registerProviders(BlameService blameService) {
     for (SupportedScm supportedScm : SupportedScm.values()) {
       ScmProvider provider = supportedScm.getProvider();
 
       setScmProvider(provider.getScmType(), supportedScm.getProvider());
     }
+
+    // The git providers store the commits and repositories of the batch
+    setScmProvider(SupportedScm.GIT.getType(), new SonarGitExeScmProvider(blameService.getCommits()));
+    setScmProvider(SupportedScm.JGIT.getType(), new SonarJGitScmProvider(blameService.getJGitRepositories(), blameService.getCommits()));
   }
 
   @Override
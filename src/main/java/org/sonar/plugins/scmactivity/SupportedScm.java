@@ -32,11 +32,13 @@ import org.apache.maven.scm.provider.perforce.PerforceScmProvider;
 import org.apache.maven.scm.provider.svn.svnexe.SvnExeScmProvider;
 import org.apache.maven.scm.provider.tfs.TfsScmProvider;
 import org.sonar.plugins.scmactivity.maven.SonarGitExeScmProvider;
+import org.sonar.plugins.scmactivity.maven.SonarJGitScmProvider;
 
 public enum SupportedScm {
   SVN(new SvnExeScmProvider(), "scm:svn:svn://"),
   CVS(new CvsExeScmProvider(), null),
   GIT(new SonarGitExeScmProvider(), "scm:git:"),
+  JGIT(new SonarJGitScmProvider(), null),
   HG(new HgScmProvider(), "scm:hg:"),
   BAZAAR(new BazaarScmProvider(), "scm:bazaar:"),
   CLEAR_CASE(new ClearCaseScmProvider(), null),
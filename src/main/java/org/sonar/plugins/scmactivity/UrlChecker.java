@@ -20,11 +20,16 @@
 
 package org.sonar.plugins.scmactivity;
 
+import com.google.common.collect.Sets;
 import org.apache.commons.lang.StringUtils;
 import org.apache.maven.scm.provider.ScmUrlUtils;
 import org.sonar.api.BatchExtension;
+import org.sonar.api.batch.InstantiationStrategy;
 import org.sonar.api.utils.SonarException;
 
+import java.util.Set;
+
+@InstantiationStrategy(InstantiationStrategy.PER_BATCH)
 public class UrlChecker implements BatchExtension {
   private static final String PARAMETER_MESSAGE = String.format("Please review \"%s\" parameter (or the <scm> section of pom.xml if you are using Maven).",
       ScmActivityPlugin.URL);
@@ -32,7 +37,12 @@ public class UrlChecker implements BatchExtension {
   private static final String FAILURE_FORMAT = "URL does not respect the SCM URL format described in http://maven.apache.org/scm/scm-url-format.html: [%s]";
   private static final String FAILURE_NOT_SUPPORTED = "Unsupported SCM: [%s]. Check compatibility at http://docs.codehaus.org/display/SONAR/SCM+Activity+Plugin";
 
-  public void check(String url) {
+  private final Set<String> validUrls = Sets.newHashSet();
+
+  public synchronized void check(String url) {
+    if (validUrls.contains(url)) {
+      return;
+    }
     if (StringUtils.isBlank(url)) {
       throw failure(FAILURE_BLANK);
     }
@@ -42,6 +52,7 @@ public class UrlChecker implements BatchExtension {
     if (!isSupported(url)) {
       throw failure(FAILURE_NOT_SUPPORTED, ScmUrlUtils.getProvider(url));
     }
+    validUrls.add(url);
   }
 
   private static boolean isSupported(String url) {
@@ -0,0 +1,104 @@
+/*
+ * Sonar SCM Activity Plugin
+ * Copyright (C) 2010 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+
+package org.sonar.plugins.scmactivity.maven;
+
+import com.google.common.base.CharMatcher;
+import com.google.common.collect.Maps;
+import org.apache.maven.scm.command.blame.BlameLine;
+
+import java.util.Date;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+
+/**
+ * Metadata of the commits found by the blame commands, shared by all the files and threads of the analysis.
+ * <p/>
+ * Each commit is stored once, as the {@link BlameLine} referenced by all the lines attributed to it, whatever the file
+ * and the provider. Parsers look up the revision first, and only decode the author, committer and date of unknown commits.
+ * <p/>
+ * The revision, author and committer of new lines are interned in a {@link StringPool}.
+ * Lines not committed yet (revision made of zeros) are never shared, since their date depends on the file.
+ * Once {@link #MAX_COMMITS} commits are stored, new commits are no longer added.
+ *
+ * @since 1.7
+ */
+public class BlameCommits {
+  static final int MAX_COMMITS = 200000;
+
+  private final ConcurrentMap<String, BlameLine> commits = Maps.newConcurrentMap();
+  private final StringPool strings;
+
+  public BlameCommits() {
+    this(new StringPool());
+  }
+
+  public BlameCommits(StringPool strings) {
+    this.strings = strings;
+  }
+
+  @CheckForNull
+  public BlameLine get(@Nullable String revision) {
+    return revision == null ? null : commits.get(revision);
+  }
+
+  /**
+   * @return the line of the commit already stored, or a new line which is stored if the revision is shared
+   */
+  public BlameLine line(@Nullable Date date, @Nullable String revision, @Nullable String author, @Nullable String committer) {
+    if (!isShared(revision)) {
+      return newLine(date, revision, author, committer);
+    }
+
+    BlameLine line = commits.get(revision);
+    if (line == null) {
+      line = newLine(date, revision, author, committer);
+      if (commits.size() < MAX_COMMITS) {
+        BlameLine previous = commits.putIfAbsent(line.getRevision(), line);
+        if (previous != null) {
+          line = previous;
+        }
+      }
+    }
+    return line;
+  }
+
+  private BlameLine newLine(@Nullable Date date, @Nullable String revision, @Nullable String author, @Nullable String committer) {
+    return new BlameLine(date, strings.intern(revision), strings.intern(author), strings.intern(committer));
+  }
+
+  public StringPool getStrings() {
+    return strings;
+  }
+
+  public int size() {
+    return commits.size();
+  }
+
+  public void clear() {
+    commits.clear();
+  }
+
+  private static boolean isShared(@Nullable String revision) {
+    return revision != null && !CharMatcher.is('0').matchesAllOf(revision);
+  }
+}
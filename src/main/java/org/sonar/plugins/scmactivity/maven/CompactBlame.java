@@ -0,0 +1,169 @@
+/*
+ * Sonar SCM Activity Plugin
+ * Copyright (C) 2010 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+
+package org.sonar.plugins.scmactivity.maven;
+
+import com.google.common.collect.Maps;
+import org.apache.maven.scm.command.blame.BlameLine;
+import org.apache.maven.scm.command.blame.BlameScmResult;
+
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+/**
+ * Blame of a file stored by columns: the table of the distinct commits of the file, and for each line the index of its commit.
+ * <p/>
+ * Parsers fill it directly, so a line costs an <code>int</code> whatever the provider, and the measures can be built once by commit
+ * rather than once by line. {@link #asList()} gives the usual list of {@link BlameLine} without copying.
+ *
+ * @since 1.7
+ */
+public class CompactBlame implements BlameSink, Serializable {
+  private static final long serialVersionUID = 1L;
+  private static final int DEFAULT_LINE_CAPACITY = 256;
+  private static final int DEFAULT_COMMIT_CAPACITY = 16;
+
+  private BlameLine[] commits = new BlameLine[DEFAULT_COMMIT_CAPACITY];
+  private int commitCount;
+  private int[] lines;
+  private int lineCount;
+
+  public CompactBlame() {
+    this(DEFAULT_LINE_CAPACITY);
+  }
+
+  public CompactBlame(int expectedLineCount) {
+    lines = new int[Math.max(1, expectedLineCount)];
+  }
+
+  /**
+   * Blame of any provider. Lines are grouped by commit when the provider shares the same {@link BlameLine} between them.
+   */
+  public static CompactBlame of(BlameScmResult result) {
+    if (result instanceof CompactBlameScmResult) {
+      return ((CompactBlameScmResult) result).getBlame();
+    }
+    return of(result.getLines());
+  }
+
+  public static CompactBlame of(List<BlameLine> lines) {
+    CompactBlame blame = new CompactBlame(lines.size());
+    Map<BlameLine, Integer> indexes = Maps.newIdentityHashMap();
+    for (BlameLine line : lines) {
+      Integer index = indexes.get(line);
+      if (index == null) {
+        index = blame.addCommit(line);
+        indexes.put(line, index);
+      }
+      blame.addLine(index);
+    }
+    return blame;
+  }
+
+  /**
+   * @return the index of the commit in the table of the file
+   */
+  public int addCommit(BlameLine commit) {
+    if (commitCount == commits.length) {
+      commits = Arrays.copyOf(commits, 2 * commitCount);
+    }
+    commits[commitCount] = commit;
+    return commitCount++;
+  }
+
+  /**
+   * Appends a line attributed to a commit of the table.
+   */
+  public void addLine(int commitIndex) {
+    if (commitIndex < 0 || commitIndex >= commitCount) {
+      throw new IndexOutOfBoundsException("Unknown commit: " + commitIndex);
+    }
+    if (lineCount == lines.length) {
+      lines = Arrays.copyOf(lines, 2 * lineCount);
+    }
+    lines[lineCount++] = commitIndex;
+  }
+
+  public int getLineCount() {
+    return lineCount;
+  }
+
+  public int getCommitCount() {
+    return commitCount;
+  }
+
+  public BlameLine getCommit(int commitIndex) {
+    return commits[commitIndex];
+  }
+
+  /**
+   * @param line index of the line, starting at 0
+   */
+  public int getCommitIndex(int line) {
+    if (line >= lineCount) {
+      throw new IndexOutOfBoundsException("Line: " + line + ", line count: " + lineCount);
+    }
+    return lines[line];
+  }
+
+  /**
+   * Replays the blame into another sink.
+   */
+  public void copyTo(BlameSink sink) {
+    int[] ids = new int[commitCount];
+    for (int i = 0; i < commitCount; i++) {
+      ids[i] = sink.addCommit(commits[i]);
+    }
+    for (int i = 0; i < lineCount; i++) {
+      sink.addLine(ids[lines[i]]);
+    }
+  }
+
+  /**
+   * Read-only view of the lines.
+   */
+  public List<BlameLine> asList() {
+    return new LineList(this);
+  }
+
+  private static class LineList extends AbstractList<BlameLine> implements RandomAccess, Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final CompactBlame blame;
+
+    LineList(CompactBlame blame) {
+      this.blame = blame;
+    }
+
+    @Override
+    public BlameLine get(int index) {
+      return blame.getCommit(blame.getCommitIndex(index));
+    }
+
+    @Override
+    public int size() {
+      return blame.getLineCount();
+    }
+  }
+}
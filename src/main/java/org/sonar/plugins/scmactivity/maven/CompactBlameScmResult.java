@@ -0,0 +1,43 @@
+/*
+ * Sonar SCM Activity Plugin
+ * Copyright (C) 2010 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+
+package org.sonar.plugins.scmactivity.maven;
+
+import org.apache.maven.scm.command.blame.BlameScmResult;
+
+/**
+ * Blame result stored as a {@link CompactBlame}. {@link #getLines()} is a view of it.
+ *
+ * @since 1.7
+ */
+public class CompactBlameScmResult extends BlameScmResult {
+  private static final long serialVersionUID = 1L;
+
+  private final CompactBlame blame;
+
+  public CompactBlameScmResult(String commandLine, CompactBlame blame) {
+    super(commandLine, blame.asList());
+    this.blame = blame;
+  }
+
+  public CompactBlame getBlame() {
+    return blame;
+  }
+}
@@ -0,0 +1,345 @@
+/*
+ * Sonar SCM Activity Plugin
+ * Copyright (C) 2010 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+
+package org.sonar.plugins.scmactivity.maven;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Charsets;
+import org.apache.maven.scm.command.blame.BlameLine;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Streaming parser of the output of <code>git blame --porcelain</code>, working on the bytes of the process output.
+ * <p/>
+ * Header keys are recognized in the byte buffer without decoding the lines. The revision, the emails and the date
+ * are only decoded the first time a commit appears in the analysis: all the lines of a commit share the same {@link BlameLine},
+ * stored in {@link BlameCommits}. Each line is pushed to a {@link BlameSink} as soon as it is parsed, by default a {@link CompactBlame}.
+ * Content lines are skipped without being buffered, whatever their length.
+ *
+ * @since 1.7
+ */
+public class GitBlamePorcelainParser {
+  private static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+  /**
+   * SHA-1 repositories, SHA-256 ones have 64 characters.
+   */
+  private static final int MIN_REVISION_LENGTH = 40;
+  private static final byte[] AUTHOR_MAIL = ascii("author-mail ");
+  private static final byte[] COMMITTER_MAIL = ascii("committer-mail ");
+  private static final byte[] COMMITTER_TIME = ascii("committer-time ");
+
+  private final BlameCommits blameCommits;
+  private final BlameSink sink;
+  private final CompactBlame blame;
+  private byte[] buffer;
+  private Commit[] commits = new Commit[64];
+  private int commitCount;
+  private Commit commit;
+  private boolean expectRevisionLine = true;
+  private boolean skipping;
+  private long parseNanos;
+
+  public GitBlamePorcelainParser(BlameCommits blameCommits) {
+    this(blameCommits, new CompactBlame());
+  }
+
+  public GitBlamePorcelainParser(BlameCommits blameCommits, BlameSink sink) {
+    this(DEFAULT_BUFFER_SIZE, blameCommits, sink);
+  }
+
+  @VisibleForTesting
+  GitBlamePorcelainParser(int bufferSize, BlameCommits blameCommits, BlameSink sink) {
+    this.buffer = new byte[bufferSize];
+    this.blameCommits = blameCommits;
+    this.sink = sink;
+    this.blame = sink instanceof CompactBlame ? (CompactBlame) sink : null;
+  }
+
+  /**
+   * Reads the output until the end of the stream.
+   */
+  public void parse(InputStream output) throws IOException {
+    int length = 0;
+    int read;
+    while ((read = output.read(buffer, length, buffer.length - length)) >= 0) {
+      long start = System.nanoTime();
+      length += read;
+      int consumed = consume(length);
+      length -= consumed;
+      if (consumed > 0) {
+        System.arraycopy(buffer, consumed, buffer, 0, length);
+      } else if (length == buffer.length) {
+        // Header line longer than the buffer
+        buffer = Arrays.copyOf(buffer, 2 * buffer.length);
+      }
+      parseNanos += System.nanoTime() - start;
+    }
+
+    if (length > 0 && !skipping) {
+      // Last line without line feed
+      header(0, length);
+    }
+  }
+
+  public List<BlameLine> getLines() {
+    return getBlame().asList();
+  }
+
+  /**
+   * @throws IllegalStateException if the lines are pushed to another sink
+   */
+  public CompactBlame getBlame() {
+    if (blame == null) {
+      throw new IllegalStateException("The lines are not kept by the parser");
+    }
+    return blame;
+  }
+
+  /**
+   * Time spent parsing, without the time spent waiting for the output.
+   */
+  public long getParseNanos() {
+    return parseNanos;
+  }
+
+  /**
+   * @return the number of bytes consumed, the remaining bytes are the beginning of an incomplete line
+   */
+  private int consume(int length) throws IOException {
+    int position = 0;
+    while (position < length) {
+      if (skipping) {
+        int end = indexOfLineFeed(position, length);
+        if (end < 0) {
+          return length;
+        }
+        skipping = false;
+        position = end + 1;
+      } else if (buffer[position] == '\t') {
+        content();
+        skipping = true;
+        position++;
+      } else {
+        int end = indexOfLineFeed(position, length);
+        if (end < 0) {
+          return position;
+        }
+        header(position, end);
+        position = end + 1;
+      }
+    }
+    return position;
+  }
+
+  private int indexOfLineFeed(int from, int to) {
+    for (int i = from; i < to; i++) {
+      if (buffer[i] == '\n') {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private void header(int from, int end) throws IOException {
+    // CRLF line breaks
+    int to = end > from && buffer[end - 1] == '\r' ? end - 1 : end;
+    if (expectRevisionLine) {
+      revision(from, to);
+    } else if (commit.line != null) {
+      // Metadata of a commit already known
+      return;
+    } else if (startsWith(from, to, AUTHOR_MAIL)) {
+      commit.author = email(from + AUTHOR_MAIL.length, to);
+    } else if (startsWith(from, to, COMMITTER_MAIL)) {
+      commit.committer = email(from + COMMITTER_MAIL.length, to);
+    } else if (startsWith(from, to, COMMITTER_TIME)) {
+      commit.time = new Date(parseLong(from + COMMITTER_TIME.length, to) * 1000L);
+    }
+  }
+
+  /**
+   * The revision is followed by the line numbers: <code>&lt;revision&gt; &lt;original line&gt; &lt;final line&gt; [&lt;line count&gt;]</code>.
+   */
+  private void revision(int from, int to) throws IOException {
+    expectRevisionLine = false;
+    int length = revisionLength(from, to);
+    if (length < 0) {
+      throw new IOException("Invalid revision line in git blame output: " + new String(buffer, from, to - from, Charsets.UTF_8));
+    }
+
+    int slot = slot(from, length);
+    commit = commits[slot];
+    if (commit == null) {
+      commit = new Commit(Arrays.copyOfRange(buffer, from, from + length));
+      commit.line = blameCommits.get(commit.revision);
+      commits[slot] = commit;
+      commitCount++;
+      if (2 * commitCount > commits.length) {
+        rehash();
+      }
+    }
+  }
+
+  /**
+   * @return the number of hexadecimal digits before the first space, or -1 if the line doesn't start with a revision
+   */
+  private int revisionLength(int from, int to) {
+    int i = from;
+    while (i < to && isHexDigit(buffer[i])) {
+      i++;
+    }
+    int length = i - from;
+    return i < to && buffer[i] == ' ' && length >= MIN_REVISION_LENGTH ? length : -1;
+  }
+
+  private static boolean isHexDigit(byte b) {
+    return (b >= '0' && b <= '9') || (b >= 'a' && b <= 'f');
+  }
+
+  private void content() throws IOException {
+    if (expectRevisionLine) {
+      throw new IOException("Line without revision in git blame output");
+    }
+    if (commit.line == null) {
+      commit.line = blameCommits.line(commit.time, commit.revision, commit.author, commit.committer);
+    }
+    if (commit.index < 0) {
+      commit.index = sink.addCommit(commit.line);
+    }
+    sink.addLine(commit.index);
+    expectRevisionLine = true;
+  }
+
+  /**
+   * Open addressing on the revision bytes.
+   */
+  private int slot(int from, int length) {
+    int mask = commits.length - 1;
+    int slot = hash(buffer, from, length) & mask;
+    while (commits[slot] != null && !commits[slot].is(buffer, from, length)) {
+      slot = (slot + 1) & mask;
+    }
+    return slot;
+  }
+
+  private void rehash() {
+    Commit[] previous = commits;
+    commits = new Commit[2 * previous.length];
+    int mask = commits.length - 1;
+    for (Commit existing : previous) {
+      if (existing != null) {
+        int slot = hash(existing.id, 0, existing.id.length) & mask;
+        while (commits[slot] != null) {
+          slot = (slot + 1) & mask;
+        }
+        commits[slot] = existing;
+      }
+    }
+  }
+
+  private static int hash(byte[] bytes, int from, int length) {
+    int hash = 0;
+    for (int i = from; i < from + length; i++) {
+      hash = 31 * hash + bytes[i];
+    }
+    return hash ^ (hash >>> 16);
+  }
+
+  private boolean startsWith(int from, int to, byte[] prefix) {
+    if (to - from < prefix.length) {
+      return false;
+    }
+    for (int i = 0; i < prefix.length; i++) {
+      if (buffer[from + i] != prefix[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * The text between the first '&lt;' and the first '&gt;'.
+   */
+  private String email(int from, int to) {
+    int start = -1;
+    int end = -1;
+    for (int i = from; i < to && end < 0; i++) {
+      if (buffer[i] == '<' && start < 0) {
+        start = i;
+      } else if (buffer[i] == '>') {
+        end = i;
+      }
+    }
+    if (start < 0 || end < 0 || end <= start) {
+      return null;
+    }
+
+    // Interned by BlameCommits
+    return new String(buffer, start + 1, end - start - 1, Charsets.UTF_8);
+  }
+
+  private long parseLong(int from, int to) {
+    long value = 0;
+    for (int i = from; i < to; i++) {
+      int digit = buffer[i] - '0';
+      if (digit < 0 || digit > 9) {
+        throw new NumberFormatException("Invalid time: " + new String(buffer, from, to - from, Charsets.UTF_8));
+      }
+      value = 10 * value + digit;
+    }
+    return value;
+  }
+
+  private static byte[] ascii(String value) {
+    return value.getBytes(Charsets.US_ASCII);
+  }
+
+  private static class Commit {
+    private final byte[] id;
+    private final String revision;
+    private String author;
+    private String committer;
+    private Date time;
+    private BlameLine line;
+    private int index = -1;
+
+    Commit(byte[] id) {
+      this.id = id;
+      this.revision = new String(id, Charsets.US_ASCII);
+    }
+
+    boolean is(byte[] bytes, int from, int length) {
+      if (id.length != length) {
+        return false;
+      }
+      for (int i = 0; i < length; i++) {
+        if (id[i] != bytes[from + i]) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+}
@@ -0,0 +1,91 @@
+/*
+ * Sonar SCM Activity Plugin
+ * Copyright (C) 2010 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+
+package org.sonar.plugins.scmactivity.maven;
+
+import com.google.common.collect.Maps;
+import org.apache.maven.scm.ScmException;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.lib.RepositoryBuilder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Git repositories opened by JGit, shared by all the blame threads.
+ * <p/>
+ * JGit repositories are thread-safe, and the pack files read by a thread are cached for the other ones.
+ * The repositories keep their pack files open until {@link #close()}, called at the end of the batch.
+ * <p/>
+ * The JGit cache of pack files is left to its defaults, since its configuration is global to the JVM
+ * and shared with the other users of JGit, like other Maven plugins.
+ *
+ * @since 1.7
+ */
+public class JGitRepositories {
+  private final ConcurrentMap<File, Repository> repositories = Maps.newConcurrentMap();
+
+  /**
+   * @param directory a directory of the working tree
+   */
+  public Repository get(File directory) throws ScmException {
+    RepositoryBuilder builder = new RepositoryBuilder().findGitDir(directory);
+    File gitDir = builder.getGitDir();
+    if (gitDir == null) {
+      throw new ScmException("Not in a git working tree: " + directory);
+    }
+
+    Repository repository = repositories.get(gitDir);
+    if (repository == null) {
+      repository = open(builder);
+      Repository previous = repositories.putIfAbsent(gitDir, repository);
+      if (previous != null) {
+        repository.close();
+        repository = previous;
+      }
+    }
+    return repository;
+  }
+
+  private static Repository open(RepositoryBuilder builder) throws ScmException {
+    try {
+      return builder.setMustExist(true).build();
+    } catch (IOException e) {
+      throw new ScmException("Unable to open the git repository " + builder.getGitDir(), e);
+    }
+  }
+
+  public int size() {
+    return repositories.size();
+  }
+
+  /**
+   * Closes the repositories and releases their pack files.
+   */
+  public void close() {
+    for (Iterator<Repository> it = repositories.values().iterator(); it.hasNext();) {
+      Repository repository = it.next();
+      it.remove();
+      repository.close();
+    }
+  }
+}
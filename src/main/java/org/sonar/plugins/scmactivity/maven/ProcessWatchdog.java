@@ -0,0 +1,97 @@
+/*
+ * Sonar SCM Activity Plugin
+ * Copyright (C) 2010 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+
+package org.sonar.plugins.scmactivity.maven;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.Maps;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Destroys the processes whose reading thread is interrupted, for example when the blame of a file times out.
+ * Reading the output of a process can't be interrupted otherwise.
+ * <p/>
+ * A single daemon thread checks the watched processes periodically, and only while there are some.
+ */
+final class ProcessWatchdog {
+  @VisibleForTesting
+  static final long PERIOD_MILLIS = 50;
+
+  private static final ConcurrentMap<Process, Thread> WATCHED = Maps.newConcurrentMap();
+  private static Thread watchdog;
+
+  private ProcessWatchdog() {
+    // only static methods
+  }
+
+  /**
+   * Destroys the process if the current thread is interrupted before {@link #unwatch(Process)}.
+   */
+  static void watch(Process process) {
+    WATCHED.put(process, Thread.currentThread());
+    start();
+  }
+
+  static void unwatch(Process process) {
+    WATCHED.remove(process);
+  }
+
+  private static synchronized void start() {
+    if (watchdog != null) {
+      return;
+    }
+    watchdog = new Thread(new Runnable() {
+      public void run() {
+        try {
+          while (check()) {
+            Thread.sleep(PERIOD_MILLIS);
+          }
+        } catch (InterruptedException e) {
+          // Stop watching
+          Thread.currentThread().interrupt();
+        }
+      }
+    }, "scm-process-watchdog");
+    watchdog.setDaemon(true);
+    watchdog.start();
+  }
+
+  /**
+   * @return whether the watchdog should keep running
+   */
+  private static boolean check() {
+    for (Map.Entry<Process, Thread> entry : WATCHED.entrySet()) {
+      if (entry.getValue().isInterrupted()) {
+        entry.getKey().destroy();
+        WATCHED.remove(entry.getKey());
+      }
+    }
+
+    synchronized (ProcessWatchdog.class) {
+      if (WATCHED.isEmpty()) {
+        watchdog = null;
+        return false;
+      }
+      return true;
+    }
+  }
+}
@@ -23,13 +23,17 @@ package org.sonar.plugins.scmactivity.maven;
 import org.apache.maven.scm.*;
 import org.apache.maven.scm.command.blame.BlameScmResult;
 import org.apache.maven.scm.provider.ScmProviderRepository;
-import org.apache.maven.scm.provider.git.gitexe.command.GitCommandLineUtils;
 import org.apache.maven.scm.provider.git.gitexe.command.blame.GitBlameCommand;
+import org.codehaus.plexus.util.IOUtil;
+import org.codehaus.plexus.util.cli.CommandLineException;
 import org.codehaus.plexus.util.cli.CommandLineUtils;
 import org.codehaus.plexus.util.cli.Commandline;
+import org.codehaus.plexus.util.cli.StreamPumper;
+
+import java.io.IOException;
 
 /**
- * Overriding the default git blame command in order to use the SonarGitBlameConsumer to process the output
+ * Overriding the default git blame command in order to parse the output with {@link GitBlamePorcelainParser}
  * Also used to force ignoreWhitespace option as it is badly implemented see
  * http://jira.codehaus.org/browse/SCM-681#comment-323446
  *
@@ -41,6 +45,21 @@ import org.codehaus.plexus.util.cli.Commandline;
  * @since 1.5.1
  */
 public class SonarGitBlameCommand extends GitBlameCommand {
+  private final BlameCommits blameCommits;
+  private final boolean firstParent;
+
+  public SonarGitBlameCommand(BlameCommits blameCommits) {
+    this(blameCommits, false);
+  }
+
+  /**
+   * @param firstParent whether to follow only the first parent of merge commits, so that lines merged from another branch
+   *                    are attributed to the merge commit
+   */
+  public SonarGitBlameCommand(BlameCommits blameCommits, boolean firstParent) {
+    this.blameCommits = blameCommits;
+    this.firstParent = firstParent;
+  }
 
   @Override
   protected ScmResult executeCommand(ScmProviderRepository repository, ScmFileSet workingDirectory,
@@ -49,13 +68,49 @@ public class SonarGitBlameCommand extends GitBlameCommand {
     String filename = parameters.getString(CommandParameter.FILE);
     Commandline cl = createCommandLine(workingDirectory.getBasedir(), filename,
       true);
-    SonarGitBlameConsumer consumer = new SonarGitBlameConsumer(getLogger());
+    if (firstParent) {
+      cl.createArg().setValue("--first-parent");
+    }
+    if (getLogger().isDebugEnabled()) {
+      getLogger().debug("Executing: " + cl);
+      getLogger().debug("Working directory: " + cl.getWorkingDirectory().getAbsolutePath());
+    }
+
+    Process process;
+    try {
+      process = cl.execute();
+    } catch (CommandLineException e) {
+      throw new ScmException("Unable to run " + cl, e);
+    }
+
     CommandLineUtils.StringStreamConsumer stderr = new CommandLineUtils.StringStreamConsumer();
+    StreamPumper errorPumper = new StreamPumper(process.getErrorStream(), stderr);
+    errorPumper.start();
+    ProcessWatchdog.watch(process);
+    try {
+      IOUtil.close(process.getOutputStream());
+      GitBlamePorcelainParser parser = new GitBlamePorcelainParser(blameCommits);
+      parser.parse(process.getInputStream());
+      int exitCode = process.waitFor();
+      errorPumper.waitUntilDone();
+      if (Thread.currentThread().isInterrupted()) {
+        throw new InterruptedException();
+      }
 
-    int exitCode = GitCommandLineUtils.execute(cl, consumer, stderr, getLogger());
-    if (exitCode != 0) {
-      return new BlameScmResult(cl.toString(), "The git blame command failed.", stderr.getOutput(), false);
+      if (exitCode != 0) {
+        return new BlameScmResult(cl.toString(), "The git blame command failed.", stderr.getOutput(), false);
+      }
+      return new TimedBlameScmResult(cl.toString(), parser.getBlame(), parser.getParseNanos());
+    } catch (IOException e) {
+      throw new ScmException("Unable to read the output of " + cl, e);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new ScmException("Interrupted while running " + cl, e);
+    } finally {
+      ProcessWatchdog.unwatch(process);
+      process.destroy();
+      IOUtil.close(process.getInputStream());
+      IOUtil.close(process.getErrorStream());
     }
-    return new BlameScmResult(cl.toString(), consumer.getLines());
   }
 }
@@ -34,9 +34,21 @@ import org.apache.maven.scm.provider.git.gitexe.GitExeScmProvider;
  * @since 1.5.1
  */
 public class SonarGitExeScmProvider extends GitExeScmProvider {
+  private final BlameCommits blameCommits;
+
+  public SonarGitExeScmProvider() {
+    this(new BlameCommits());
+  }
+
+  /**
+   * @param blameCommits the commits of the current batch
+   */
+  public SonarGitExeScmProvider(BlameCommits blameCommits) {
+    this.blameCommits = blameCommits;
+  }
 
   @Override
   protected GitCommand getBlameCommand() {
-    return new SonarGitBlameCommand();
+    return new SonarGitBlameCommand(blameCommits);
   }
 }
@@ -0,0 +1,122 @@
+/*
+ * Sonar SCM Activity Plugin
+ * Copyright (C) 2010 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+
+package org.sonar.plugins.scmactivity.maven;
+
+import com.google.common.collect.Maps;
+import org.apache.maven.scm.ScmException;
+import org.apache.maven.scm.ScmFileSet;
+import org.apache.maven.scm.command.blame.AbstractBlameCommand;
+import org.apache.maven.scm.command.blame.BlameLine;
+import org.apache.maven.scm.command.blame.BlameScmResult;
+import org.apache.maven.scm.provider.ScmProviderRepository;
+import org.apache.maven.scm.provider.git.command.GitCommand;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.blame.BlameResult;
+import org.eclipse.jgit.diff.RawTextComparator;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Date;
+import java.util.Map;
+
+/**
+ * Blame computed in-process by JGit, without forking a git process.
+ * Gives the same information as {@link SonarGitBlameCommand}: author email, committer email, committer time and revision.
+ * The lines of a commit share the {@link BlameLine} stored in {@link BlameCommits}.
+ *
+ * @since 1.7
+ */
+public class SonarJGitBlameCommand extends AbstractBlameCommand implements GitCommand {
+  static final String NOT_COMMITTED_REVISION = "0000000000000000000000000000000000000000";
+  static final String NOT_COMMITTED_AUTHOR = "not.committed.yet";
+
+  private final JGitRepositories repositories;
+  private final BlameCommits blameCommits;
+
+  public SonarJGitBlameCommand(JGitRepositories repositories, BlameCommits blameCommits) {
+    this.repositories = repositories;
+    this.blameCommits = blameCommits;
+  }
+
+  @Override
+  public BlameScmResult executeBlameCommand(ScmProviderRepository repo, ScmFileSet workingDirectory, String filename) throws ScmException {
+    Repository repository = repositories.get(workingDirectory.getBasedir());
+    String path = relativePath(repository, new File(workingDirectory.getBasedir(), filename));
+    String commandLine = "jgit blame -w " + path;
+
+    BlameResult result;
+    try {
+      result = new Git(repository).blame()
+          .setFilePath(path)
+          // Same as git blame -w
+          .setTextComparator(RawTextComparator.WS_IGNORE_ALL)
+          .call();
+      if (result == null) {
+        return new BlameScmResult(commandLine, "The file is not committed in the git repository.", "", false);
+      }
+      result.computeAll();
+    } catch (GitAPIException e) {
+      throw new ScmException("Unable to blame " + path, e);
+    } catch (IOException e) {
+      throw new ScmException("Unable to blame " + path, e);
+    }
+
+    return new CompactBlameScmResult(commandLine, blame(result));
+  }
+
+  private CompactBlame blame(BlameResult result) {
+    int lineCount = result.getResultContents().size();
+    CompactBlame blame = new CompactBlame(lineCount);
+    Map<RevCommit, Integer> commitIndexes = Maps.newHashMap();
+    for (int i = 0; i < lineCount; i++) {
+      RevCommit commit = result.getSourceCommit(i);
+      Integer commitIndex = commitIndexes.get(commit);
+      if (commitIndex == null) {
+        BlameLine line = commit == null ? notCommitted() : blameCommits.line(new Date(commit.getCommitTime() * 1000L), commit.getName(),
+            result.getSourceAuthor(i).getEmailAddress(), result.getSourceCommitter(i).getEmailAddress());
+        commitIndex = blame.addCommit(line);
+        commitIndexes.put(commit, commitIndex);
+      }
+      blame.addLine(commitIndex);
+    }
+    return blame;
+  }
+
+  private static BlameLine notCommitted() {
+    return new BlameLine(new Date(), NOT_COMMITTED_REVISION, NOT_COMMITTED_AUTHOR, NOT_COMMITTED_AUTHOR);
+  }
+
+  private static String relativePath(Repository repository, File file) throws ScmException {
+    try {
+      String workTree = repository.getWorkTree().getCanonicalPath() + File.separator;
+      String path = file.getCanonicalPath();
+      if (!path.startsWith(workTree)) {
+        throw new ScmException("File not in the git working tree " + workTree + ": " + file);
+      }
+      return path.substring(workTree.length()).replace(File.separatorChar, '/');
+    } catch (IOException e) {
+      throw new ScmException("Unable to resolve the path of " + file, e);
+    }
+  }
+}
@@ -0,0 +1,62 @@
+/*
+ * Sonar SCM Activity Plugin
+ * Copyright (C) 2010 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+
+package org.sonar.plugins.scmactivity.maven;
+
+import org.apache.maven.scm.provider.git.command.GitCommand;
+
+/**
+ * Git provider which blames files in-process with JGit, instead of forking a git process by file.
+ * The other commands still use the git executable, but are not used by the plugin.
+ * <p/>
+ * Selected with <code>scm:jgit:</code> URLs.
+ *
+ * @since 1.7
+ */
+public class SonarJGitScmProvider extends SonarGitExeScmProvider {
+  public static final String SCM_TYPE = "jgit";
+
+  private final JGitRepositories repositories;
+  private final BlameCommits blameCommits;
+
+  public SonarJGitScmProvider() {
+    this(new JGitRepositories(), new BlameCommits());
+  }
+
+  /**
+   * @param repositories the repositories opened during the current batch
+   * @param blameCommits the commits of the current batch
+   */
+  public SonarJGitScmProvider(JGitRepositories repositories, BlameCommits blameCommits) {
+    super(blameCommits);
+    this.repositories = repositories;
+    this.blameCommits = blameCommits;
+  }
+
+  @Override
+  public String getScmType() {
+    return SCM_TYPE;
+  }
+
+  @Override
+  protected GitCommand getBlameCommand() {
+    return new SonarJGitBlameCommand(repositories, blameCommits);
+  }
+}
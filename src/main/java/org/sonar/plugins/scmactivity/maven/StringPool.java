@@ -0,0 +1,100 @@
+/*
+ * Sonar SCM Activity Plugin
+ * Copyright (C) 2010 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+
+package org.sonar.plugins.scmactivity.maven;
+
+import com.google.common.collect.Maps;
+import org.apache.maven.scm.command.blame.BlameLine;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+
+/**
+ * Canonical instances of the authors, committers and revisions found by the blame commands, shared by all the threads of the batch.
+ * <p/>
+ * The same few hundred emails and few thousand revisions are found again in the blame of each file. Only the first instance of
+ * each value is kept, the other ones can be garbage collected as soon as the file is parsed.
+ * Once {@link #MAX_STRINGS} values are stored, new values are returned as is.
+ *
+ * @since 1.7
+ */
+public class StringPool {
+  static final int MAX_STRINGS = 500000;
+
+  private final ConcurrentMap<String, String> strings = Maps.newConcurrentMap();
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+
+  @CheckForNull
+  public String intern(@Nullable String value) {
+    if (value == null) {
+      return null;
+    }
+
+    String interned = strings.get(value);
+    if (interned != null) {
+      hits.incrementAndGet();
+      return interned;
+    }
+
+    misses.incrementAndGet();
+    if (strings.size() >= MAX_STRINGS) {
+      return value;
+    }
+    interned = strings.putIfAbsent(value, value);
+    return interned == null ? value : interned;
+  }
+
+  /**
+   * Replaces the author, committer and revision of lines given by other providers with their canonical instances.
+   */
+  public void internAll(List<BlameLine> lines) {
+    for (BlameLine line : lines) {
+      line.setAuthor(intern(line.getAuthor()));
+      line.setCommitter(intern(line.getCommitter()));
+      line.setRevision(intern(line.getRevision()));
+    }
+  }
+
+  public int size() {
+    return strings.size();
+  }
+
+  /**
+   * Number of values found already in the pool since the last {@link #clear()}.
+   */
+  public long getHits() {
+    return hits.get();
+  }
+
+  public long getMisses() {
+    return misses.get();
+  }
+
+  public void clear() {
+    strings.clear();
+    hits.set(0);
+    misses.set(0);
+  }
+}
@@ -0,0 +1,117 @@
+/*
+ * Sonar SCM Activity Plugin
+ * Copyright (C) 2010 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+
+package org.sonar.plugins.scmactivity;
+
+import org.apache.maven.scm.command.blame.BlameLine;
+import org.apache.maven.scm.command.blame.BlameScmResult;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.sonar.api.resources.Resource;
+import org.sonar.plugins.scmactivity.test.AllocationMeter;
+
+import java.io.File;
+import java.util.Date;
+import java.util.List;
+
+import static com.google.common.collect.Lists.newArrayList;
+import static org.fest.assertions.Assertions.assertThat;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Fails when a change increases the allocations per blamed line of {@link Blame#save(File, Resource, String, int)}.
+ * Lower the budget when allocations are reduced.
+ */
+public class BlameAllocationTest {
+  static final int LINES = 1000;
+  static final long MAX_BYTES_PER_LINE = 500;
+
+  static final String[] AUTHORS = {"godin", "simon.brandhof@gmail.com", "Frédéric Lamotte", "Jérôme Müller-Öhlund"};
+
+  final File file = new File("src/Foo.java");
+  final Resource resource = new org.sonar.api.resources.File("Foo.java");
+  BlameService notCached = new BlameService() {
+    @Override
+    public synchronized BlameScmResult getBlame(File file, String sha1) {
+      return null;
+    }
+
+    @Override
+    public synchronized void putBlame(File file, String sha1, BlameScmResult result) {
+      // Not cached
+    }
+  };
+  Blame blame;
+
+  @Before
+  public void setUp() {
+    assumeTrue(AllocationMeter.isSupported());
+
+    final BlameScmResult result = new BlameScmResult("git blame", blameLines(LINES, 50));
+    ScmFacade scmFacade = new ScmFacade(null, null, null) {
+      @Override
+      public BlameScmResult blame(File file) {
+        return result;
+      }
+    };
+    BlameCostModel costModel = new BlameCostModel(null) {
+      @Override
+      public void record(File file, long durationNanos) {
+        // Not measured
+      }
+    };
+    blame = new Blame(scmFacade, new BlameCircuitBreaker(), costModel, notCached, new BlameTimings(null));
+  }
+
+  @After
+  public void tearDown() {
+    notCached.stop();
+  }
+
+  @Test
+  public void should_not_regress_allocations_per_line() {
+    long bytes = AllocationMeter.bytesPerRun(new Runnable() {
+      public void run() {
+        blame.save(file, resource, "SHA1", LINES);
+      }
+    });
+
+    assertThat(bytes / LINES).as("bytes allocated per line").isLessThanOrEqualTo(MAX_BYTES_PER_LINE);
+  }
+
+  /**
+   * Lines of a file modified by the given number of commits, in blocks of consecutive lines.
+   * Like the git providers, all the lines of a commit share the same {@link BlameLine}.
+   */
+  static List<BlameLine> blameLines(int lineCount, int commitCount) {
+    BlameLine[] commits = new BlameLine[commitCount];
+    for (int commit = 0; commit < commitCount; commit++) {
+      String author = AUTHORS[commit % AUTHORS.length];
+      commits[commit] = new BlameLine(new Date(1300000000000L + commit * 3600000L), String.format("%040x", commit * 2654435761L), author, author);
+    }
+
+    List<BlameLine> lines = newArrayList();
+    for (int i = 0; i < lineCount; i++) {
+      lines.add(commits[(i / 8 * 7) % commitCount]);
+    }
+    return lines;
+  }
+}
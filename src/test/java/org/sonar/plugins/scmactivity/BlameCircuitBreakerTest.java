@@ -0,0 +1,193 @@
+/*
+ * Sonar SCM Activity Plugin
+ * Copyright (C) 2010 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+
+package org.sonar.plugins.scmactivity;
+
+import org.apache.maven.scm.ScmException;
+import org.codehaus.plexus.util.cli.CommandLineException;
+import org.codehaus.plexus.util.cli.CommandLineTimeOutException;
+import org.junit.Before;
+import org.junit.Test;
+import org.sonar.plugins.scmactivity.BlameCircuitBreaker.State;
+import org.sonar.plugins.scmactivity.BlameThreadCountTest.FakeTicker;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeUnit;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class BlameCircuitBreakerTest {
+  static final int THRESHOLD = 5;
+  static final long WINDOW = 60;
+  static final long OPEN_DURATION = 30;
+
+  BlameCircuitBreaker circuitBreaker;
+
+  FakeTicker ticker = new FakeTicker();
+
+  @Before
+  public void setUp() {
+    circuitBreaker = new BlameCircuitBreaker(THRESHOLD, WINDOW, OPEN_DURATION, TimeUnit.SECONDS, ticker);
+  }
+
+  @Test
+  public void should_be_closed_by_default() {
+    assertThat(circuitBreaker.allowRequest()).isTrue();
+    assertThat(circuitBreaker.getState()).isEqualTo(State.CLOSED);
+  }
+
+  @Test
+  public void should_open_after_consecutive_failures() {
+    fail(THRESHOLD);
+
+    assertThat(circuitBreaker.getState()).isEqualTo(State.OPEN);
+    assertThat(circuitBreaker.allowRequest()).isFalse();
+  }
+
+  @Test
+  public void should_reset_failures_on_success() {
+    fail(THRESHOLD - 1);
+    circuitBreaker.recordSuccess();
+    fail(THRESHOLD - 1);
+
+    assertThat(circuitBreaker.getState()).isEqualTo(State.CLOSED);
+  }
+
+  @Test
+  public void should_forget_failures_outside_of_window() {
+    fail(THRESHOLD - 1);
+    ticker.advance(TimeUnit.SECONDS.toNanos(WINDOW) + 1);
+    fail(1);
+
+    assertThat(circuitBreaker.getState()).isEqualTo(State.CLOSED);
+  }
+
+  @Test
+  public void should_let_a_single_probe_through_after_open_duration() {
+    fail(THRESHOLD);
+    ticker.advance(TimeUnit.SECONDS.toNanos(OPEN_DURATION));
+
+    assertThat(circuitBreaker.allowRequest()).isTrue();
+    assertThat(circuitBreaker.getState()).isEqualTo(State.HALF_OPEN);
+    assertThat(circuitBreaker.allowRequest()).isFalse();
+  }
+
+  @Test
+  public void should_close_when_probe_succeeds() {
+    fail(THRESHOLD);
+    ticker.advance(TimeUnit.SECONDS.toNanos(OPEN_DURATION));
+    circuitBreaker.allowRequest();
+
+    circuitBreaker.recordSuccess();
+
+    assertThat(circuitBreaker.getState()).isEqualTo(State.CLOSED);
+    assertThat(circuitBreaker.allowRequest()).isTrue();
+  }
+
+  @Test
+  public void should_reopen_when_probe_fails() {
+    fail(THRESHOLD);
+    ticker.advance(TimeUnit.SECONDS.toNanos(OPEN_DURATION));
+    circuitBreaker.allowRequest();
+
+    circuitBreaker.recordFailure();
+
+    assertThat(circuitBreaker.getState()).isEqualTo(State.OPEN);
+    assertThat(circuitBreaker.allowRequest()).isFalse();
+  }
+
+  @Test
+  public void should_let_another_probe_through_when_probe_is_inconclusive() {
+    fail(THRESHOLD);
+    ticker.advance(TimeUnit.SECONDS.toNanos(OPEN_DURATION));
+    circuitBreaker.allowRequest();
+
+    circuitBreaker.recordInconclusive();
+
+    assertThat(circuitBreaker.getState()).isEqualTo(State.OPEN);
+    assertThat(circuitBreaker.allowRequest()).isTrue();
+    assertThat(circuitBreaker.getState()).isEqualTo(State.HALF_OPEN);
+  }
+
+  @Test
+  public void should_not_count_inconclusive_blames_as_successes() {
+    fail(THRESHOLD - 1);
+    circuitBreaker.recordInconclusive();
+    fail(1);
+
+    assertThat(circuitBreaker.getState()).isEqualTo(State.OPEN);
+  }
+
+  @Test
+  public void should_never_open_when_disabled() {
+    circuitBreaker = new BlameCircuitBreaker(0, WINDOW, OPEN_DURATION, TimeUnit.SECONDS, ticker);
+
+    fail(100);
+
+    assertThat(circuitBreaker.getState()).isEqualTo(State.CLOSED);
+  }
+
+  @Test
+  public void should_read_thresholds_from_configuration() {
+    ScmConfiguration configuration = mock(ScmConfiguration.class);
+    when(configuration.getCircuitBreakerFailures()).thenReturn(2);
+    when(configuration.getCircuitBreakerWindow()).thenReturn(WINDOW);
+    when(configuration.getCircuitBreakerOpenDuration()).thenReturn(OPEN_DURATION);
+    circuitBreaker = new BlameCircuitBreaker(configuration);
+
+    fail(2);
+
+    assertThat(circuitBreaker.getState()).isEqualTo(State.OPEN);
+  }
+
+  @Test
+  public void should_detect_backend_failures() {
+    assertThat(BlameCircuitBreaker.isBackendFailure(new ScmException("Unable to run git", new CommandLineException("No such file")), null))
+        .isTrue();
+    assertThat(BlameCircuitBreaker.isBackendFailure(null, "svn: E170001: Authentication failed")).isTrue();
+    assertThat(BlameCircuitBreaker.isBackendFailure(null, "svn: E170013: Unable to connect to a repository at URL")).isTrue();
+    assertThat(BlameCircuitBreaker.isBackendFailure(new ScmException("Error", new IOException("Connection refused")), null)).isTrue();
+  }
+
+  @Test
+  public void should_not_detect_failures_of_files_as_backend_failures() {
+    assertThat(BlameCircuitBreaker.isBackendFailure(new ScmException("ERROR"), null)).isFalse();
+    assertThat(BlameCircuitBreaker.isBackendFailure(null, "fatal: no such path 'Foo.java' in HEAD")).isFalse();
+    assertThat(BlameCircuitBreaker.isBackendFailure(null, "svn: E195002: 'Foo.java' is not under version control")).isFalse();
+  }
+
+  @Test
+  public void should_not_detect_timeouts_and_interruptions_as_backend_failures() {
+    assertThat(BlameCircuitBreaker.isBackendFailure(new ScmException("Error while executing command.",
+        new CommandLineTimeOutException("Error while executing external command, process killed.", new InterruptedException())), null)).isFalse();
+    assertThat(BlameCircuitBreaker.isBackendFailure(new ScmException("Error", new InterruptedException()), null)).isFalse();
+    assertThat(BlameCircuitBreaker.isBackendFailure(new ScmException("Error", new InterruptedIOException("Connection refused")), null)).isFalse();
+  }
+
+  void fail(int count) {
+    for (int i = 0; i < count; i++) {
+      circuitBreaker.allowRequest();
+      circuitBreaker.recordFailure();
+    }
+  }
+}
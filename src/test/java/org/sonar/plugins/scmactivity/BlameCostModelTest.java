@@ -0,0 +1,131 @@
+/*
+ * Sonar SCM Activity Plugin
+ * Copyright (C) 2010 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+
+package org.sonar.plugins.scmactivity;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang.StringUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sonar.api.resources.InputFile;
+import org.sonar.api.resources.ProjectFileSystem;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class BlameCostModelTest {
+  BlameCostModel costModel;
+
+  ProjectFileSystem projectFileSystem = mock(ProjectFileSystem.class);
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  @Before
+  public void setUp() {
+    when(projectFileSystem.getBasedir()).thenReturn(temp.getRoot());
+    when(projectFileSystem.getSonarWorkingDirectory()).thenReturn(new File(temp.getRoot(), "target/sonar"));
+
+    costModel = new BlameCostModel(projectFileSystem);
+  }
+
+  @Test
+  public void should_sort_by_decreasing_size_without_recorded_durations() throws IOException {
+    InputFile small = file("Small.java", 10);
+    InputFile big = file("Big.java", 1000);
+    InputFile medium = file("Medium.java", 100);
+
+    assertThat(costModel.sortByDecreasingCost(Arrays.asList(small, big, medium))).containsExactly(big, medium, small);
+  }
+
+  @Test
+  public void should_use_durations_of_previous_analysis() throws IOException {
+    InputFile small = file("Small.java", 10);
+    InputFile big = file("Big.java", 1000);
+    costModel.record(small.getFile(), TimeUnit.SECONDS.toNanos(10));
+    costModel.record(big.getFile(), TimeUnit.SECONDS.toNanos(1));
+    costModel.save();
+
+    BlameCostModel nextAnalysis = new BlameCostModel(projectFileSystem);
+
+    assertThat(nextAnalysis.sortByDecreasingCost(Arrays.asList(big, small))).containsExactly(small, big);
+  }
+
+  @Test
+  public void should_estimate_new_files_from_recorded_durations() throws IOException {
+    InputFile slow = file("Slow.java", 100);
+    costModel.record(slow.getFile(), TimeUnit.SECONDS.toNanos(10));
+    costModel.save();
+    InputFile bigger = file("Bigger.java", 200);
+    InputFile smaller = file("Smaller.java", 50);
+
+    BlameCostModel nextAnalysis = new BlameCostModel(projectFileSystem);
+
+    assertThat(nextAnalysis.sortByDecreasingCost(Arrays.asList(smaller, slow, bigger))).containsExactly(bigger, slow, smaller);
+  }
+
+  @Test
+  public void should_keep_durations_of_files_not_blamed_again() throws IOException {
+    InputFile first = file("First.java", 10);
+    InputFile second = file("Second.java", 10);
+    costModel.record(first.getFile(), TimeUnit.SECONDS.toNanos(5));
+    costModel.save();
+
+    BlameCostModel nextAnalysis = new BlameCostModel(projectFileSystem);
+    nextAnalysis.sortByDecreasingCost(Arrays.asList(first, second));
+    nextAnalysis.record(second.getFile(), TimeUnit.SECONDS.toNanos(3));
+    nextAnalysis.save();
+
+    assertThat(FileUtils.readFileToString(costModel.durationsFile())).contains("First.java=5000").contains("Second.java=3000");
+  }
+
+  @Test
+  public void should_not_write_file_without_recorded_durations() {
+    costModel.save();
+
+    assertThat(costModel.durationsFile()).doesNotExist();
+  }
+
+  @Test
+  public void should_ignore_corrupted_file() throws IOException {
+    FileUtils.writeStringToFile(costModel.durationsFile(), "Big.java=NaN");
+    InputFile small = file("Small.java", 10);
+    InputFile big = file("Big.java", 1000);
+
+    assertThat(costModel.sortByDecreasingCost(Arrays.asList(small, big))).containsExactly(big, small);
+  }
+
+  InputFile file(String name, int size) throws IOException {
+    File file = new File(temp.getRoot(), "src/" + name);
+    FileUtils.writeStringToFile(file, StringUtils.repeat("x", size));
+
+    InputFile inputFile = mock(InputFile.class);
+    when(inputFile.getFile()).thenReturn(file);
+    return inputFile;
+  }
+}
@@ -0,0 +1,73 @@
+/*
+ * Sonar SCM Activity Plugin
+ * Copyright (C) 2010 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+
+package org.sonar.plugins.scmactivity;
+
+import org.junit.Test;
+import org.sonar.plugins.scmactivity.BlameThreadCountTest.FakeTicker;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class BlameProgressTest {
+  FakeTicker ticker = new FakeTicker();
+  BlameService blameService = new BlameService();
+
+  @Test
+  public void should_give_unknown_eta_before_first_file() {
+    BlameProgress progress = new BlameProgress(10, blameService, ticker);
+
+    assertThat(progress.status()).isEqualTo("0/10 file(s) done (0 unchanged, 0 skipped, 0 already blamed by another module), 0.0 file(s)/s, ETA unknown");
+  }
+
+  @Test
+  public void should_compute_throughput_and_eta() {
+    BlameProgress progress = new BlameProgress(10, blameService, ticker);
+
+    progress.blamed();
+    progress.unchanged();
+    progress.skipped();
+    progress.failed();
+    ticker.advance(TimeUnit.SECONDS.toNanos(2));
+
+    assertThat(progress.status()).isEqualTo("4/10 file(s) done (1 unchanged, 1 skipped, 0 already blamed by another module), 2.0 file(s)/s, ETA 3s");
+  }
+
+  @Test
+  public void should_count_files_blamed_by_other_modules() {
+    blameService.putBlame(new File("Foo.java"), "SHA1", BlameServiceTest.result(1));
+    blameService.getBlame(new File("Foo.java"), "SHA1");
+    BlameProgress progress = new BlameProgress(10, blameService, ticker);
+
+    blameService.getBlame(new File("Foo.java"), "SHA1");
+    progress.blamed();
+
+    assertThat(progress.status()).contains("1 already blamed by another module");
+  }
+
+  @Test
+  public void should_format_duration() {
+    assertThat(BlameProgress.duration(TimeUnit.SECONDS.toNanos(42))).isEqualTo("42s");
+    assertThat(BlameProgress.duration(TimeUnit.SECONDS.toNanos(125))).isEqualTo("2m05s");
+    assertThat(BlameProgress.duration(TimeUnit.MINUTES.toNanos(185))).isEqualTo("3h05m");
+  }
+}
@@ -0,0 +1,162 @@
+/*
+ * Sonar SCM Activity Plugin
+ * Copyright (C) 2010 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+
+package org.sonar.plugins.scmactivity;
+
+import com.google.common.base.Supplier;
+import com.google.common.collect.Lists;
+import org.apache.maven.scm.command.blame.BlameLine;
+import org.apache.maven.scm.command.blame.BlameScmResult;
+import org.apache.maven.scm.repository.ScmRepository;
+import org.eclipse.jgit.api.Git;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+public class BlameServiceTest {
+  BlameService blameService = new BlameService();
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  @After
+  public void tearDown() {
+    blameService.stop();
+  }
+
+  @Test
+  public void should_reuse_pool_between_modules() {
+    ExecutorService first = blameService.getExecutor(2);
+    ExecutorService second = blameService.getExecutor(4);
+
+    assertThat(second).isSameAs(first);
+    assertThat(((ThreadPoolExecutor) second).getCorePoolSize()).isEqualTo(4);
+    assertThat(((ThreadPoolExecutor) second).getMaximumPoolSize()).isEqualTo(4);
+  }
+
+  @Test
+  public void should_shutdown_pool_on_stop() {
+    ExecutorService executor = blameService.getExecutor(1);
+
+    blameService.stop();
+
+    assertThat(executor.isShutdown()).isTrue();
+    assertThat(blameService.getExecutor(1)).isNotSameAs(executor);
+  }
+
+  @Test
+  public void should_forget_commits_on_stop() {
+    blameService.getCommits().line(new Date(), "1111111111111111111111111111111111111111", "dev@company.net", "dev@company.net");
+
+    blameService.stop();
+
+    assertThat(blameService.getCommits().size()).isZero();
+  }
+
+  @Test
+  public void should_not_share_commits_between_batches() {
+    BlameService otherBatch = new BlameService();
+    otherBatch.getCommits().line(new Date(), "1111111111111111111111111111111111111111", "dev@company.net", "dev@company.net");
+
+    blameService.stop();
+
+    assertThat(blameService.getCommits().size()).isZero();
+    assertThat(otherBatch.getCommits().size()).isEqualTo(1);
+    assertThat(otherBatch.getStrings().size()).isEqualTo(2);
+    otherBatch.stop();
+  }
+
+  @Test
+  public void should_close_jgit_repositories_on_stop() throws Exception {
+    File gitDir = temp.newFolder("repository");
+    Git.init().setDirectory(gitDir).call();
+    blameService.getJGitRepositories().get(gitDir);
+
+    blameService.stop();
+
+    assertThat(blameService.getJGitRepositories().size()).isZero();
+  }
+
+  @Test
+  public void should_create_repository_once_by_key() {
+    final ScmRepository repository = mock(ScmRepository.class);
+    final AtomicInteger calls = new AtomicInteger();
+    Supplier<ScmRepository> factory = new Supplier<ScmRepository>() {
+      public ScmRepository get() {
+        calls.incrementAndGet();
+        return repository;
+      }
+    };
+
+    assertThat(blameService.getRepository("url", factory)).isSameAs(repository);
+    assertThat(blameService.getRepository("url", factory)).isSameAs(repository);
+
+    assertThat(calls.get()).isEqualTo(1);
+  }
+
+  @Test
+  public void should_cache_blame_by_file_and_sha1() {
+    BlameScmResult result = result(10);
+
+    blameService.putBlame(new File("src/Foo.java"), "SHA1", result);
+
+    assertThat(blameService.getBlame(new File("src/../src/Foo.java"), "SHA1")).isSameAs(result);
+    assertThat(blameService.getBlame(new File("src/Foo.java"), "OTHER")).isNull();
+    assertThat(blameService.getBlame(new File("src/Bar.java"), "SHA1")).isNull();
+  }
+
+  @Test
+  public void should_evict_oldest_blame_results() {
+    int lines = BlameService.MAX_CACHED_LINES / 2;
+    blameService.putBlame(new File("First.java"), "SHA1", result(lines));
+    blameService.putBlame(new File("Second.java"), "SHA1", result(lines));
+    blameService.putBlame(new File("Third.java"), "SHA1", result(lines));
+
+    assertThat(blameService.getBlame(new File("First.java"), "SHA1")).isNull();
+    assertThat(blameService.getBlame(new File("Second.java"), "SHA1")).isNotNull();
+    assertThat(blameService.getBlame(new File("Third.java"), "SHA1")).isNotNull();
+  }
+
+  @Test
+  public void should_not_cache_huge_blame_results() {
+    blameService.putBlame(new File("Huge.java"), "SHA1", result(BlameService.MAX_CACHED_LINES + 1));
+
+    assertThat(blameService.getBlame(new File("Huge.java"), "SHA1")).isNull();
+  }
+
+  static BlameScmResult result(int lineCount) {
+    List<BlameLine> lines = Lists.newArrayList();
+    for (int i = 0; i < lineCount; i++) {
+      lines.add(new BlameLine(new Date(i), "rev", "godin"));
+    }
+    return new BlameScmResult("fake", lines);
+  }
+}
@@ -23,18 +23,28 @@ package org.sonar.plugins.scmactivity;
 import org.apache.maven.scm.ScmException;
 import org.apache.maven.scm.command.blame.BlameLine;
 import org.apache.maven.scm.command.blame.BlameScmResult;
+import org.codehaus.plexus.util.cli.CommandLineTimeOutException;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.sonar.api.measures.CoreMetrics;
 import org.sonar.api.measures.Measure;
 import org.sonar.api.resources.Resource;
+import org.sonar.plugins.scmactivity.BlameCircuitBreaker.State;
+import org.sonar.plugins.scmactivity.BlameThreadCountTest.FakeTicker;
 
 import java.io.File;
 import java.util.Arrays;
 import java.util.Date;
+import java.util.concurrent.TimeUnit;
 
 import static org.fest.assertions.Assertions.assertThat;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.sonar.plugins.scmactivity.test.MoreConditions.reflectionEqualTo;
 
@@ -45,10 +55,20 @@ public class BlameTest {
   Blame blame;
 
   ScmFacade scmFacade = mock(ScmFacade.class);
+  BlameCircuitBreaker circuitBreaker = new BlameCircuitBreaker();
+  BlameCostModel costModel = mock(BlameCostModel.class);
+  BlameService blameService = new BlameService();
+  BlameTimings timings = mock(BlameTimings.class);
+  FakeTicker ticker = new FakeTicker();
 
   @Before
   public void setUp() {
-    blame = new Blame(scmFacade);
+    blame = new Blame(scmFacade, circuitBreaker, costModel, blameService, timings);
+  }
+
+  @After
+  public void tearDown() {
+    blameService.stop();
   }
 
   @Test
@@ -62,6 +82,7 @@ public class BlameTest {
     assertThat(((SaveNewMeasures) update).getAuthors()).is(reflectionEqualTo(new Measure(CoreMetrics.SCM_AUTHORS_BY_LINE, "1=godin;2=godin")));
     assertThat(((SaveNewMeasures) update).getRevisions()).is(reflectionEqualTo(new Measure(CoreMetrics.SCM_REVISIONS_BY_LINE, "1=20;2=21")));
     assertThat(((SaveNewMeasures) update).getSha1()).is(reflectionEqualTo(new Measure(ScmActivityMetrics.SCM_HASH, "SHA1")));
+    verify(costModel).record(eq(file(FILENAME)), anyLong());
   }
 
   // SONARPLUGINS-3097
@@ -89,6 +110,7 @@ public class BlameTest {
     MeasureUpdate update = blame.save(file(UNKNOWN), resource(UNKNOWN), "SHA1", 0);
 
     assertThat(update).isInstanceOf(CopyPreviousMeasures.class);
+    assertThat(((CopyPreviousMeasures) update).isOutdated()).isTrue();
   }
 
   @Test
@@ -127,6 +149,99 @@ public class BlameTest {
     assertThat(((SaveNewMeasures) update).getAuthors().getData()).isEqualTo("1=aaaregr zepp;2=aaoo");
   }
 
+  @Test
+  public void should_normalize_ascii_and_non_ascii_authors() {
+    assertThat(Blame.normalizeString("Simon.Brandhof@Gmail.COM")).isEqualTo("simon.brandhof@gmail.com");
+    assertThat(Blame.normalizeString("")).isEqualTo("");
+    // Lower case of a non-accented upper case letter with an accent
+    assertThat(Blame.normalizeString("\u0130lker")).isEqualTo("ilker");
+    assertThat(Blame.normalizeString("J\u00e9r\u00f4me \u4e2d")).isEqualTo("jerome _");
+  }
+
+  @Test
+  public void should_not_launch_blame_when_circuit_is_open() throws ScmException {
+    when(scmFacade.blame(file(UNKNOWN))).thenThrow(new ScmException("Connection refused"));
+    for (int i = 0; i < BlameCircuitBreaker.DEFAULT_FAILURE_THRESHOLD; i++) {
+      blame.save(file(UNKNOWN), resource(UNKNOWN), "SHA1", 0);
+    }
+
+    MeasureUpdate update = blame.save(file(FILENAME), resource(FILENAME), "SHA1", 0);
+
+    assertThat(update).isInstanceOf(CopyPreviousMeasures.class);
+    assertThat(((CopyPreviousMeasures) update).isSkipped()).isTrue();
+    verify(scmFacade, never()).blame(file(FILENAME));
+  }
+
+  @Test
+  public void should_not_open_circuit_on_timeouts() throws ScmException {
+    when(scmFacade.blame(file(UNKNOWN))).thenThrow(new ScmException("Error while executing command.",
+        new CommandLineTimeOutException("Error while executing external command, process killed.", new InterruptedException())));
+    for (int i = 0; i < BlameCircuitBreaker.DEFAULT_FAILURE_THRESHOLD; i++) {
+      blame.save(file(UNKNOWN), resource(UNKNOWN), "SHA1", 0);
+    }
+
+    assertThat(circuitBreaker.getState()).isEqualTo(State.CLOSED);
+  }
+
+  @Test
+  public void should_not_close_circuit_when_probe_fails_unexpectedly() throws ScmException {
+    circuitBreaker = new BlameCircuitBreaker(1, 60, 30, TimeUnit.SECONDS, ticker);
+    blame = new Blame(scmFacade, circuitBreaker, costModel, blameService, timings);
+    when(scmFacade.blame(file(UNKNOWN))).thenThrow(new ScmException("Connection refused"));
+    when(scmFacade.blame(file(FILENAME))).thenThrow(new IllegalStateException());
+    blame.save(file(UNKNOWN), resource(UNKNOWN), "SHA1", 0);
+    ticker.advance(TimeUnit.SECONDS.toNanos(30));
+
+    try {
+      blame.save(file(FILENAME), resource(FILENAME), "SHA1", 0);
+    } catch (IllegalStateException e) {
+      // expected
+    }
+
+    assertThat(circuitBreaker.getState()).isEqualTo(State.OPEN);
+    assertThat(circuitBreaker.allowRequest()).isTrue();
+  }
+
+  @Test
+  public void should_keep_blaming_after_failures_of_files() throws ScmException {
+    when(scmFacade.blame(file(UNKNOWN))).thenReturn(new BlameScmResult("git blame", "The git blame command failed.",
+        "fatal: no such path 'UNKNOWN' in HEAD", false));
+    when(scmFacade.blame(file("Generated.java"))).thenThrow(new ScmException("ERROR"));
+    when(scmFacade.blame(file(FILENAME))).thenReturn(new BlameScmResult("fake", Arrays.asList(new BlameLine(new Date(13), "20", "godin"))));
+    for (int i = 0; i < BlameCircuitBreaker.DEFAULT_FAILURE_THRESHOLD; i++) {
+      blame.save(file(UNKNOWN), resource(UNKNOWN), "SHA1", 0);
+      blame.save(file("Generated.java"), resource("Generated.java"), "SHA1", 0);
+    }
+
+    MeasureUpdate update = blame.save(file(FILENAME), resource(FILENAME), "SHA1", 1);
+
+    assertThat(update).isInstanceOf(SaveNewMeasures.class);
+  }
+
+  @Test
+  public void should_blame_files_shared_by_modules_only_once() throws Exception {
+    when(scmFacade.blame(file(FILENAME))).thenReturn(new BlameScmResult("fake", Arrays.asList(new BlameLine(new Date(13), "20", "godin"))));
+    blame.save(file(FILENAME), resource(FILENAME), "SHA1", 1);
+
+    Blame otherModule = new Blame(scmFacade, circuitBreaker, costModel, blameService, timings);
+    MeasureUpdate update = otherModule.save(file(FILENAME), resource(FILENAME), "SHA1", 1);
+
+    assertThat(((SaveNewMeasures) update).getAuthors().getData()).isEqualTo("1=godin");
+    verify(scmFacade, times(1)).blame(file(FILENAME));
+  }
+
+  @Test
+  public void should_intern_values_of_other_providers() throws Exception {
+    BlameLine line = new BlameLine(new Date(13), new String("20"), new String("godin"), new String("godin"));
+    when(scmFacade.blame(file(FILENAME))).thenReturn(new BlameScmResult("svn blame", Arrays.asList(line)));
+
+    blame.save(file(FILENAME), resource(FILENAME), "SHA1", 1);
+
+    assertThat(line.getAuthor()).isSameAs(blameService.getStrings().intern("godin"));
+    assertThat(line.getCommitter()).isSameAs(line.getAuthor());
+    assertThat(line.getRevision()).isSameAs(blameService.getStrings().intern("20"));
+  }
+
   static File file(String name) {
     return new File("src", name);
   }
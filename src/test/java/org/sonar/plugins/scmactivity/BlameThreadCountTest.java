@@ -0,0 +1,135 @@
+/*
+ * Sonar SCM Activity Plugin
+ * Copyright (C) 2010 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+
+package org.sonar.plugins.scmactivity;
+
+import com.google.common.base.Ticker;
+import org.junit.After;
+import org.junit.Test;
+
+import java.lang.management.OperatingSystemMXBean;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class BlameThreadCountTest {
+  ThreadPoolExecutor executor = new ThreadPoolExecutor(2, 2, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>());
+  FakeTicker ticker = new FakeTicker();
+  OperatingSystemMXBean os = mock(OperatingSystemMXBean.class);
+
+  @After
+  public void tearDown() {
+    executor.shutdown();
+  }
+
+  @Test
+  public void should_not_change_fixed_thread_count() {
+    BlameThreadCount threadCount = BlameThreadCount.fixed(4);
+    threadCount.taskCompleted();
+
+    assertThat(threadCount.get()).isEqualTo(4);
+  }
+
+  @Test
+  public void should_keep_two_tasks_in_flight_per_pooled_thread() {
+    assertThat(BlameThreadCount.fixed(4).maxInFlight()).isEqualTo(8);
+  }
+
+  @Test
+  public void should_add_threads_while_throughput_improves() {
+    BlameThreadCount.Adaptive threadCount = new BlameThreadCount.Adaptive(executor, 2, 8, ticker, os);
+
+    sample(threadCount, 10);
+    sample(threadCount, 20);
+
+    assertThat(threadCount.get()).isEqualTo(4);
+    assertThat(executor.getCorePoolSize()).isEqualTo(4);
+    assertThat(executor.getMaximumPoolSize()).isEqualTo(4);
+    assertThat(threadCount.getBestThreadCount()).isEqualTo(3);
+  }
+
+  @Test
+  public void should_remove_threads_when_throughput_drops() {
+    BlameThreadCount.Adaptive threadCount = new BlameThreadCount.Adaptive(executor, 2, 8, ticker, os);
+
+    sample(threadCount, 20);
+    sample(threadCount, 10);
+
+    assertThat(threadCount.get()).isEqualTo(2);
+    assertThat(threadCount.getBestThreadCount()).isEqualTo(2);
+  }
+
+  @Test
+  public void should_remove_threads_when_system_is_overloaded() {
+    when(os.getAvailableProcessors()).thenReturn(2);
+    when(os.getSystemLoadAverage()).thenReturn(10.0);
+    BlameThreadCount.Adaptive threadCount = new BlameThreadCount.Adaptive(executor, 2, 8, ticker, os);
+
+    sample(threadCount, 10);
+
+    assertThat(threadCount.get()).isEqualTo(1);
+    assertThat(executor.getCorePoolSize()).isEqualTo(1);
+  }
+
+  @Test
+  public void should_stay_within_bounds() {
+    BlameThreadCount.Adaptive threadCount = new BlameThreadCount.Adaptive(executor, 2, 3, ticker, os);
+
+    sample(threadCount, 10);
+    assertThat(threadCount.get()).isEqualTo(3);
+
+    sample(threadCount, 20);
+    assertThat(threadCount.get()).isEqualTo(2);
+  }
+
+  @Test
+  public void should_wait_for_a_full_sample_period() {
+    BlameThreadCount.Adaptive threadCount = new BlameThreadCount.Adaptive(executor, 2, 8, ticker, os);
+
+    threadCount.taskCompleted();
+
+    assertThat(threadCount.get()).isEqualTo(2);
+  }
+
+  private void sample(BlameThreadCount threadCount, int tasks) {
+    for (int i = 0; i < tasks; i++) {
+      threadCount.taskCompleted();
+    }
+    ticker.advance(BlameThreadCount.Adaptive.SAMPLE_PERIOD_NANOS);
+    threadCount.taskCompleted();
+  }
+
+  static class FakeTicker extends Ticker {
+    private long nanos;
+
+    @Override
+    public long read() {
+      return nanos;
+    }
+
+    void advance(long delta) {
+      nanos += delta;
+    }
+  }
+}
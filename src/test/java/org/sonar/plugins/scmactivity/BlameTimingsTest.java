@@ -0,0 +1,99 @@
+/*
+ * Sonar SCM Activity Plugin
+ * Copyright (C) 2010 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+
+package org.sonar.plugins.scmactivity;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sonar.api.resources.ProjectFileSystem;
+import org.sonar.plugins.scmactivity.BlameTimings.Durations;
+import org.sonar.plugins.scmactivity.BlameTimings.Phase;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class BlameTimingsTest {
+  ProjectFileSystem projectFileSystem = mock(ProjectFileSystem.class);
+  BlameTimings timings = new BlameTimings(projectFileSystem);
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  @Test
+  public void should_compute_total_and_percentiles() {
+    for (int i = 1; i <= 100; i++) {
+      timings.recordDuration(Phase.BLAME, i);
+    }
+
+    Durations durations = timings.get(Phase.BLAME);
+    assertThat(durations.count()).isEqualTo(100);
+    assertThat(durations.total()).isEqualTo(5050);
+    assertThat(durations.percentile(50)).isEqualTo(50);
+    assertThat(durations.percentile(90)).isEqualTo(90);
+    assertThat(durations.percentile(99)).isEqualTo(99);
+    assertThat(durations.percentile(100)).isEqualTo(100);
+  }
+
+  @Test
+  public void should_bound_samples() {
+    for (int i = 0; i < 3 * BlameTimings.MAX_SAMPLES; i++) {
+      timings.recordDuration(Phase.READ, 10);
+    }
+
+    Durations durations = timings.get(Phase.READ);
+    assertThat(durations.count()).isEqualTo(3 * BlameTimings.MAX_SAMPLES);
+    assertThat(durations.total()).isEqualTo(30L * BlameTimings.MAX_SAMPLES);
+    assertThat(durations.percentile(50)).isEqualTo(10);
+  }
+
+  @Test
+  public void should_have_zero_percentiles_without_durations() {
+    assertThat(timings.get(Phase.SAVE).percentile(50)).isEqualTo(0);
+  }
+
+  @Test
+  public void should_write_json() {
+    timings.recordDuration(Phase.SHA1, TimeUnit.MILLISECONDS.toNanos(3));
+
+    String json = timings.toJson("org.codehaus:\"module\"", 12, TimeUnit.SECONDS.toNanos(2));
+
+    assertThat(json).contains("\"module\": \"org.codehaus:\\\"module\\\"\"");
+    assertThat(json).contains("\"files\": 12");
+    assertThat(json).contains("\"wallTimeMs\": 2000.000");
+    assertThat(json).contains("\"sha1\": {\"count\": 1, \"totalMs\": 3.000, \"p50Ms\": 3.000, \"p90Ms\": 3.000, \"p99Ms\": 3.000, \"maxMs\": 3.000}");
+    assertThat(json).contains("\"wait\": {\"count\": 0, \"totalMs\": 0.000");
+  }
+
+  @Test
+  public void should_save_in_working_directory() throws IOException {
+    when(projectFileSystem.getSonarWorkingDirectory()).thenReturn(temp.getRoot());
+
+    timings.save("module", 1, 1);
+
+    assertThat(FileUtils.readFileToString(new File(temp.getRoot(), BlameTimings.FILENAME))).contains("\"module\": \"module\"");
+  }
+}
@@ -36,6 +36,7 @@ import java.nio.charset.Charset;
 import static org.fest.assertions.Assertions.assertThat;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
 
 public class BlameVersionSelectorTest {
@@ -56,7 +57,8 @@ public class BlameVersionSelectorTest {
   public void setUp() {
     ProjectFileSystem projectFileSystem = mock(ProjectFileSystem.class);
     when(projectFileSystem.getSourceCharset()).thenReturn(Charset.forName("UTF-8"));
-    blameVersionSelector = new BlameVersionSelector(blameSensor, sha1Generator, fileToResource, projectFileSystem);
+    blameVersionSelector = new BlameVersionSelector(blameSensor, sha1Generator, fileToResource, projectFileSystem,
+        mock(BlameTimings.class));
   }
 
   @Test
@@ -98,6 +100,30 @@ public class BlameVersionSelectorTest {
     assertThat(update).isInstanceOf(CopyPreviousMeasures.class);
   }
 
+  @Test
+  public void should_not_read_file_with_same_fingerprint() throws IOException {
+    InputFile inputFile = inputFile(new File("missing.java"));
+    when(fileToResource.toResource(inputFile, context)).thenReturn(resource);
+
+    MeasureUpdate update = blameVersionSelector.detect(inputFile, "BLOB", "BLOB", context);
+
+    assertThat(update).isInstanceOf(CopyPreviousMeasures.class);
+    verifyZeroInteractions(sha1Generator);
+  }
+
+  @Test
+  public void should_save_fingerprint_and_count_lines_of_changed_file() throws IOException {
+    File file = file("source.java", "foo\nbar\n");
+    InputFile inputFile = inputFile(file);
+    when(fileToResource.toResource(inputFile, context)).thenReturn(resource);
+    when(blameSensor.save(file, resource, "BLOB", 3)).thenReturn(saveBlame);
+
+    MeasureUpdate update = blameVersionSelector.detect(inputFile, "OLD BLOB", "BLOB", context);
+
+    assertThat(update).isSameAs(saveBlame);
+    verifyZeroInteractions(sha1Generator);
+  }
+
   @Test
   public void should_ignore_error() throws IOException {
     File file = file("source.java", "foo");
@@ -0,0 +1,115 @@
+/*
+ * Sonar SCM Activity Plugin
+ * Copyright (C) 2010 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+
+package org.sonar.plugins.scmactivity;
+
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ListMultimap;
+import org.junit.Before;
+import org.junit.Test;
+import org.sonar.api.batch.SensorContext;
+import org.sonar.api.batch.TimeMachine;
+import org.sonar.api.batch.TimeMachineQuery;
+import org.sonar.api.measures.CoreMetrics;
+import org.sonar.api.measures.Measure;
+import org.sonar.api.measures.Metric;
+import org.sonar.api.measures.PersistenceMode;
+import org.sonar.api.resources.File;
+import org.sonar.api.resources.Resource;
+
+import java.util.Arrays;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyCollectionOf;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.refEq;
+import static org.mockito.Matchers.same;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class CarryForwardMeasuresTest {
+  CarryForwardMeasures carryForward;
+
+  PreviousMeasuresLoader previousMeasuresLoader = mock(PreviousMeasuresLoader.class);
+  TimeMachine timeMachine = mock(TimeMachine.class);
+  SensorContext context = mock(SensorContext.class);
+  ListMultimap<Resource, Measure> previousMeasures = ArrayListMultimap.create();
+
+  @Before
+  public void setUp() {
+    when(previousMeasuresLoader.load(anyCollectionOf(Resource.class), anyListOf(Metric.class))).thenReturn(previousMeasures);
+
+    carryForward = new CarryForwardMeasures(previousMeasuresLoader, timeMachine, context, mock(BlameTimings.class));
+  }
+
+  @Test
+  public void should_copy_previous_measures_of_all_files_on_flush() {
+    Resource first = resource("first", 1);
+    Resource second = resource("second", 2);
+    previousMeasures.put(first, new Measure(CoreMetrics.SCM_AUTHORS_BY_LINE, "1=godin"));
+    previousMeasures.put(second, new Measure(ScmActivityMetrics.SCM_HASH, "sha1"));
+
+    carryForward.add(first);
+    carryForward.add(second);
+
+    verify(context, never()).saveMeasure(any(Resource.class), any(Measure.class));
+
+    carryForward.flush();
+
+    verify(previousMeasuresLoader).load(Arrays.asList(first, second), CopyPreviousMeasures.METRICS);
+    verify(context).saveMeasure(same(first), refEq(new Measure(CoreMetrics.SCM_AUTHORS_BY_LINE, "1=godin").setPersistenceMode(PersistenceMode.DATABASE)));
+    verify(context).saveMeasure(same(second), refEq(new Measure(ScmActivityMetrics.SCM_HASH, "sha1").setPersistenceMode(PersistenceMode.DATABASE)));
+  }
+
+  @Test
+  public void should_flush_full_batches() {
+    for (int i = 0; i < PreviousMeasuresLoader.CHUNK_SIZE; i++) {
+      carryForward.add(resource("file" + i, i));
+    }
+
+    verify(previousMeasuresLoader).load(anyCollectionOf(Resource.class), anyListOf(Metric.class));
+  }
+
+  @Test
+  public void should_not_load_anything_without_files() {
+    carryForward.flush();
+
+    verify(previousMeasuresLoader, never()).load(anyCollectionOf(Resource.class), anyListOf(Metric.class));
+  }
+
+  @Test
+  public void should_fallback_to_time_machine_for_resource_not_persisted() {
+    Resource resource = new File("unknown");
+
+    carryForward.add(resource);
+    carryForward.flush();
+
+    verify(timeMachine, times(1)).getMeasures(any(TimeMachineQuery.class));
+  }
+
+  static Resource resource(String key, int id) {
+    Resource resource = new File(key);
+    resource.setId(id);
+    return resource;
+  }
+}
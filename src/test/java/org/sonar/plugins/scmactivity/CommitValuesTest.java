@@ -0,0 +1,82 @@
+/*
+ * Sonar SCM Activity Plugin
+ * Copyright (C) 2010 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+
+package org.sonar.plugins.scmactivity;
+
+import org.apache.maven.scm.command.blame.BlameLine;
+import org.junit.Test;
+import org.sonar.api.utils.DateUtils;
+import org.sonar.plugins.scmactivity.maven.StringPool;
+
+import java.util.Date;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class CommitValuesTest {
+  static final String REVISION = "1111111111111111111111111111111111111111";
+
+  StringPool strings = new StringPool();
+  CommitValues commitValues = new CommitValues(strings);
+
+  @Test
+  public void should_format_date_once_by_revision() {
+    String first = commitValues.date(new BlameLine(new Date(1300000000000L), REVISION, "dev@company.net"));
+    String second = commitValues.date(new BlameLine(new Date(1300000000000L), REVISION, "other@company.net"));
+
+    assertThat(first).isEqualTo(DateUtils.formatDateTime(new Date(1300000000000L)));
+    assertThat(second).isSameAs(first);
+  }
+
+  @Test
+  public void should_format_again_when_same_revision_has_another_date() {
+    commitValues.date(new BlameLine(new Date(1300000000000L), "12", "dev"));
+
+    assertThat(commitValues.date(new BlameLine(new Date(1300003600000L), "12", "dev")))
+        .isEqualTo(DateUtils.formatDateTime(new Date(1300003600000L)));
+  }
+
+  @Test
+  public void should_format_lines_without_revision() {
+    assertThat(commitValues.date(new BlameLine(new Date(1300000000000L), null, "dev")))
+        .isEqualTo(DateUtils.formatDateTime(new Date(1300000000000L)));
+  }
+
+  @Test
+  public void should_normalize_author_once() {
+    String first = commitValues.author(new BlameLine(new Date(), "1", "Jérôme"));
+    String second = commitValues.author(new BlameLine(new Date(), "2", "Jérôme"));
+
+    assertThat(first).isEqualTo("jerome");
+    assertThat(second).isSameAs(first);
+    assertThat(commitValues.author(new BlameLine(new Date(), "3", "JEROME"))).isSameAs(first);
+    assertThat(commitValues.author(new BlameLine(new Date(), "3", null))).isEqualTo("");
+  }
+
+  @Test
+  public void should_forget_values_on_clear() {
+    commitValues.author(new BlameLine(new Date(), "1", "Jérôme"));
+
+    commitValues.clear();
+
+    assertThat(commitValues.author(new BlameLine(new Date(), "1", "Jérôme"))).isEqualTo("jerome");
+    // Normalized again
+    assertThat(strings.getHits()).isEqualTo(1);
+  }
+}
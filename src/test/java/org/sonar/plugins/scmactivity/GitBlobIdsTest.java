@@ -0,0 +1,95 @@
+/*
+ * Sonar SCM Activity Plugin
+ * Copyright (C) 2010 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+
+package org.sonar.plugins.scmactivity;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.junit.Assume.assumeTrue;
+import static org.sonar.plugins.scmactivity.test.GitCommands.git;
+import static org.sonar.plugins.scmactivity.test.GitCommands.isGitInstalled;
+
+public class GitBlobIdsTest {
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  File repository;
+
+  @Before
+  public void setUp() throws IOException {
+    repository = temp.newFolder("repository");
+  }
+
+  @Test
+  public void should_read_blob_ids_of_unmodified_files() throws Exception {
+    assumeTrue(isGitInstalled());
+    File committed = write("src/Committed.java", "committed");
+    File modified = write("src/Modified.java", "modified");
+    git(repository, "init", "-q");
+    ScmActivitySensorTest.commit(repository);
+    File staged = write("src/Staged.java", "staged");
+    git(repository, "add", "src/Staged.java");
+    write("src/Modified.java", "changed");
+    File untracked = write("src/Untracked.java", "untracked");
+
+    GitBlobIds blobIds = GitBlobIds.load(new File(repository, "src"));
+
+    assertThat(blobIds.get(committed)).isEqualTo(hashObject(committed));
+    assertThat(blobIds.get(staged)).isEqualTo(hashObject(staged));
+    assertThat(blobIds.get(modified)).isNull();
+    assertThat(blobIds.get(untracked)).isNull();
+    assertThat(blobIds.get(new File(temp.getRoot(), "Outside.java"))).isNull();
+  }
+
+  @Test
+  public void should_ignore_conflicts_links_and_submodules() {
+    Map<String, String> ids = GitBlobIds.parse("100644 aaaa 0\tFoo.java\0"
+      + "100755 bbbb 0\tscript.sh\0"
+      + "120000 cccc 0\tlink\0"
+      + "160000 dddd 0\tsubmodule\0"
+      + "100644 eeee 1\tConflict.java\0"
+      + "100644 ffff 2\tConflict.java\0"
+      + "100644 gggg 0\tWith\ttab.java\0");
+
+    assertThat(ids).hasSize(3);
+    assertThat(ids.get("Foo.java")).isEqualTo("aaaa");
+    assertThat(ids.get("script.sh")).isEqualTo("bbbb");
+    assertThat(ids.get("With\ttab.java")).isEqualTo("gggg");
+  }
+
+  private File write(String path, String content) throws IOException {
+    File file = new File(repository, path);
+    FileUtils.writeStringToFile(file, content);
+    return file;
+  }
+
+  private String hashObject(File file) throws IOException {
+    return git(repository, "hash-object", file.getAbsolutePath()).trim();
+  }
+}
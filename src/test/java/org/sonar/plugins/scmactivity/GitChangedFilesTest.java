@@ -0,0 +1,132 @@
+/*
+ * Sonar SCM Activity Plugin
+ * Copyright (C) 2010 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+
+package org.sonar.plugins.scmactivity;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.junit.Assume.assumeTrue;
+import static org.sonar.plugins.scmactivity.test.GitCommands.git;
+import static org.sonar.plugins.scmactivity.test.GitCommands.isGitInstalled;
+
+public class GitChangedFilesTest {
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  File repository;
+
+  @Before
+  public void setUp() throws IOException {
+    assumeTrue(isGitInstalled());
+
+    repository = temp.newFolder("repository");
+    git(repository, "init", "-q");
+    git(repository, "config", "commit.gpgsign", "false");
+    git(repository, "config", "user.name", "developer");
+    git(repository, "config", "user.email", "developer@company.net");
+  }
+
+  @Test
+  public void should_find_changes_since_previous_commit() throws Exception {
+    File unchanged = write("src/Unchanged.java");
+    File committed = write("src/Committed.java");
+    File modified = write("src/Modified.java");
+    String previous = commit();
+    write("src/Committed.java", "changed");
+    String head = commit();
+    write("src/Modified.java", "changed");
+    File untracked = write("src/Untracked.java");
+
+    GitChangedFiles changes = GitChangedFiles.since(repository, previous);
+
+    assertThat(changes.getHead()).isEqualTo(head);
+    assertThat(changes.isPreviousKnown()).isTrue();
+    assertThat(changes.isClean()).isFalse();
+    assertThat(changes.isChanged(unchanged)).isFalse();
+    assertThat(changes.isChanged(committed)).isTrue();
+    assertThat(changes.isChanged(modified)).isTrue();
+    assertThat(changes.isChanged(untracked)).isTrue();
+  }
+
+  @Test
+  public void should_find_changes_of_sub_directory() throws Exception {
+    File unchanged = write("module/src/Unchanged.java");
+    write("module/src/Committed.java");
+    String previous = commit();
+    File committed = write("module/src/Committed.java", "changed");
+    write("Other.java", "not committed");
+    commit();
+
+    GitChangedFiles changes = GitChangedFiles.since(new File(repository, "module"), previous);
+
+    assertThat(changes.isClean()).isTrue();
+    assertThat(changes.isChanged(unchanged)).isFalse();
+    assertThat(changes.isChanged(committed)).isTrue();
+  }
+
+  @Test
+  public void should_consider_all_files_changed_without_previous_commit() throws Exception {
+    File file = write("Foo.java");
+    commit();
+
+    GitChangedFiles changes = GitChangedFiles.since(repository, null);
+
+    assertThat(changes.isPreviousKnown()).isFalse();
+    assertThat(changes.isClean()).isTrue();
+    assertThat(changes.isChanged(file)).isTrue();
+  }
+
+  @Test
+  public void should_consider_all_files_changed_if_previous_commit_is_unknown() throws Exception {
+    File file = write("Foo.java");
+    commit();
+
+    GitChangedFiles changes = GitChangedFiles.since(repository, "0123456789012345678901234567890123456789");
+
+    assertThat(changes.isPreviousKnown()).isFalse();
+    assertThat(changes.isChanged(file)).isTrue();
+  }
+
+  @Test(expected = IOException.class)
+  public void should_fail_without_commit() throws Exception {
+    GitChangedFiles.since(repository, null);
+  }
+
+  private File write(String path, String... lines) throws IOException {
+    File file = new File(repository, path);
+    FileUtils.writeLines(file, "UTF-8", Arrays.asList(lines), "\n");
+    return file;
+  }
+
+  private String commit() throws IOException {
+    git(repository, "add", "-A");
+    git(repository, "commit", "-q", "-m", "Commit");
+    return git(repository, "rev-parse", "HEAD").trim();
+  }
+}
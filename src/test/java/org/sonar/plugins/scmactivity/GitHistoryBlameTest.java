@@ -0,0 +1,225 @@
+/*
+ * Sonar SCM Activity Plugin
+ * Copyright (C) 2010 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+
+package org.sonar.plugins.scmactivity;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.scm.command.blame.BlameLine;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sonar.plugins.scmactivity.maven.BlameCommits;
+import org.sonar.plugins.scmactivity.maven.GitBlamePorcelainParser;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.junit.Assume.assumeNoException;
+import static org.junit.Assume.assumeTrue;
+import static org.sonar.plugins.scmactivity.test.GitCommands.git;
+import static org.sonar.plugins.scmactivity.test.GitCommands.isGitInstalled;
+
+public class GitHistoryBlameTest {
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  File repository;
+  int commitCount;
+
+  @Before
+  public void setUp() throws IOException {
+    assumeTrue(isGitInstalled());
+
+    repository = temp.newFolder("repository");
+    git(repository, "init", "-q");
+    git(repository, "config", "commit.gpgsign", "false");
+    git(repository, "config", "user.name", "merger");
+    git(repository, "config", "user.email", "merger@company.net");
+  }
+
+  @Test
+  public void should_attribute_lines_like_git_blame() throws Exception {
+    File foo = write("src/Foo.java", "a", "b", "c", "d");
+    File bar = write("src/Bar.java", "1", "2");
+    commit("first@company.net");
+    write("src/Foo.java", "a", "B", "c", "d", "e");
+    commit("second@company.net");
+    write("src/Foo.java", "x", "a", "c", "d", "e", "f");
+    write("src/Bar.java", "1", "2", "3");
+    commit("third@company.net");
+
+    Map<File, List<BlameLine>> blames = historyBlame(foo, bar);
+
+    assertSameAsGitBlame(blames, foo);
+    assertSameAsGitBlame(blames, bar);
+  }
+
+  @Test
+  public void should_follow_renames() throws Exception {
+    write("src/Old.java", "a", "b", "c", "d", "e", "f", "g", "h");
+    commit("first@company.net");
+    FileUtils.moveFile(new File(repository, "src/Old.java"), new File(repository, "src/New.java"));
+    File renamed = write("src/New.java", "a", "b", "c", "d", "e", "f", "g", "h", "i");
+    commit("second@company.net");
+
+    Map<File, List<BlameLine>> blames = historyBlame(renamed);
+
+    assertSameAsGitBlame(blames, renamed);
+    assertThat(blames.get(renamed).get(0).getAuthor()).isEqualTo("first@company.net");
+  }
+
+  @Test
+  public void should_follow_files_moved_into_the_module() throws Exception {
+    write("other/Old.java", "a", "b", "c", "d", "e", "f", "g", "h");
+    commit("first@company.net");
+    FileUtils.moveFile(new File(repository, "other/Old.java"), new File(repository, "module/New.java"));
+    File moved = write("module/New.java", "a", "b", "c", "d", "e", "f", "g", "h", "i");
+    commit("second@company.net");
+
+    Map<File, List<BlameLine>> blames = historyBlameOfModule(new File(repository, "module"), moved);
+
+    assertSameAsGitBlame(blames, moved);
+    assertThat(blames.get(moved).get(0).getAuthor()).isEqualTo("first@company.net");
+  }
+
+  @Test
+  public void should_blame_sha256_repositories() throws Exception {
+    repository = temp.newFolder("sha256");
+    try {
+      git(repository, "init", "-q", "--object-format=sha256");
+    } catch (AssertionError e) {
+      assumeNoException(e);
+    }
+    File foo = write("Foo.java", "a", "b");
+    commit("first@company.net");
+    write("Foo.java", "a", "b", "c");
+    commit("second@company.net");
+
+    Map<File, List<BlameLine>> blames = historyBlame(foo);
+
+    assertSameAsGitBlame(blames, foo);
+    assertThat(blames.get(foo).get(2).getRevision()).hasSize(64);
+  }
+
+  @Test
+  public void should_attribute_merged_lines_to_merge_commit() throws Exception {
+    File foo = write("Foo.java", "a", "b", "c");
+    commit("first@company.net");
+    git(repository, "checkout", "-q", "-b", "feature");
+    write("Foo.java", "a", "b", "c", "feature");
+    commit("feature@company.net");
+    git(repository, "checkout", "-q", "-");
+    write("Other.java", "other");
+    commit("second@company.net");
+    git(repository, "merge", "-q", "--no-ff", "-m", "Merge", "feature");
+
+    Map<File, List<BlameLine>> blames = historyBlame(foo);
+
+    assertSameAsGitBlame(blames, foo);
+    assertThat(blames.get(foo).get(3).getRevision()).isEqualTo(git(repository, "rev-parse", "HEAD").trim());
+  }
+
+  @Test
+  public void should_not_blame_modified_untracked_or_binary_files() throws Exception {
+    File modified = write("Modified.java", "a");
+    File binary = new File(repository, "Binary.class");
+    FileUtils.writeByteArrayToFile(binary, new byte[] {0, 1, 2, 0});
+    File committed = write("Committed.java", "a");
+    commit("first@company.net");
+    write("Modified.java", "a", "b");
+    File untracked = write("Untracked.java", "a");
+
+    Map<File, List<BlameLine>> blames = historyBlame(modified, binary, committed, untracked);
+
+    assertThat(blames.keySet()).containsOnly(committed);
+  }
+
+  @Test
+  public void should_unquote_paths() {
+    assertThat(GitHistoryBlame.unquote("a/Foo.java")).isEqualTo("a/Foo.java");
+    assertThat(GitHistoryBlame.unquote("\"a/Foo\\\"\\tBar.java\"")).isEqualTo("a/Foo\"\tBar.java");
+    assertThat(GitHistoryBlame.unquote("\"a/\\303\\251t\\303\\251.java\"")).isEqualTo("a/\u00e9t\u00e9.java");
+  }
+
+  @Test
+  public void should_parse_line_counts() {
+    Map<String, Integer> lineCounts = GitHistoryBlame.lineCounts("12\t0\tsrc/Foo.java\0-\t-\tBinary.class\0003\t0\tsrc/With\ttab.java\0");
+
+    assertThat(lineCounts).hasSize(2);
+    assertThat(lineCounts.get("src/Foo.java")).isEqualTo(12);
+    assertThat(lineCounts.get("src/With\ttab.java")).isEqualTo(3);
+  }
+
+  private Map<File, List<BlameLine>> historyBlame(File... files) throws Exception {
+    return historyBlameOfModule(repository, files);
+  }
+
+  private Map<File, List<BlameLine>> historyBlameOfModule(File basedir, File... files) throws Exception {
+    GitHistoryBlame historyBlame = new GitHistoryBlame(basedir, new BlameCommits());
+    historyBlame.start(Arrays.asList(files));
+
+    Map<File, List<BlameLine>> blames = Maps.newHashMap();
+    GitHistoryBlame.Result result;
+    while ((result = historyBlame.next(1, TimeUnit.MINUTES)) != null) {
+      blames.put(result.getFile(), result.getBlame().getLines());
+    }
+    return blames;
+  }
+
+  private void assertSameAsGitBlame(Map<File, List<BlameLine>> blames, File file) throws IOException {
+    String output = git(repository, "blame", "--porcelain", "-w", "--first-parent", repository.toURI().relativize(file.toURI()).getPath());
+    GitBlamePorcelainParser parser = new GitBlamePorcelainParser(new BlameCommits());
+    parser.parse(new ByteArrayInputStream(output.getBytes(Charsets.UTF_8)));
+
+    assertThat(blames.get(file)).as(file.getName()).isNotNull();
+    assertThat(describe(blames.get(file))).isEqualTo(describe(parser.getLines()));
+  }
+
+  private static List<String> describe(List<BlameLine> lines) {
+    List<String> descriptions = Lists.newArrayList();
+    for (BlameLine line : lines) {
+      descriptions.add(line.getRevision() + " " + line.getAuthor() + " " + line.getCommitter() + " " + line.getDate().getTime());
+    }
+    return descriptions;
+  }
+
+  private File write(String path, String... lines) throws IOException {
+    File file = new File(repository, path);
+    FileUtils.writeLines(file, "UTF-8", Arrays.asList(lines), "\n");
+    return file;
+  }
+
+  private void commit(String email) throws IOException {
+    commitCount++;
+    git(repository, "add", "-A");
+    git(repository, "-c", "user.name=" + email, "-c", "user.email=" + email, "commit", "-q", "-m", "Commit " + commitCount,
+        "--date", (1300000000 + commitCount * 3600) + " +0000");
+  }
+}
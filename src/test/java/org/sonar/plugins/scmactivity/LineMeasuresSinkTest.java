@@ -0,0 +1,101 @@
+/*
+ * Sonar SCM Activity Plugin
+ * Copyright (C) 2010 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+
+package org.sonar.plugins.scmactivity;
+
+import org.apache.maven.scm.command.blame.BlameLine;
+import org.junit.Test;
+import org.sonar.api.measures.CoreMetrics;
+import org.sonar.api.measures.PropertiesBuilder;
+import org.sonar.api.utils.DateUtils;
+import org.sonar.plugins.scmactivity.maven.CompactBlame;
+import org.sonar.plugins.scmactivity.maven.StringPool;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class LineMeasuresSinkTest {
+  static final BlameLine FIRST = new BlameLine(new Date(1300000000000L), "1111111111111111111111111111111111111111", "Édouard@Company.net");
+  static final BlameLine SECOND = new BlameLine(new Date(1300003600000L), null, null);
+
+  LineMeasuresSink sink = new LineMeasuresSink(10, new CommitValues(new StringPool()));
+
+  @Test
+  public void should_serialize_like_properties_builder() {
+    List<BlameLine> lines = Arrays.asList(FIRST, FIRST, SECOND, FIRST, SECOND, SECOND, FIRST, FIRST, FIRST, FIRST, SECOND);
+
+    CompactBlame.of(lines).copyTo(sink);
+    sink.complete(lines.size());
+
+    assertThat(sink.getLineCount()).isEqualTo(11);
+    assertThat(sink.getAuthors().getData()).isEqualTo(propertiesBuilderData(lines, Field.AUTHOR));
+    assertThat(sink.getDates().getData()).isEqualTo(propertiesBuilderData(lines, Field.DATE));
+    assertThat(sink.getRevisions().getData()).isEqualTo(propertiesBuilderData(lines, Field.REVISION));
+    assertThat(sink.getAuthors().getData()).startsWith("1=edouard@company.net;2=edouard@company.net;3=;");
+    assertThat(sink.getRevisions().getMetric()).isEqualTo(CoreMetrics.SCM_REVISIONS_BY_LINE);
+  }
+
+  @Test
+  public void should_attribute_missing_last_line_to_previous_line() {
+    CompactBlame.of(Arrays.asList(SECOND, FIRST)).copyTo(sink);
+    sink.complete(3);
+
+    assertThat(sink.getLineCount()).isEqualTo(3);
+    assertThat(sink.getRevisions().getData()).isEqualTo("1=;2=1111111111111111111111111111111111111111;3=1111111111111111111111111111111111111111");
+  }
+
+  @Test
+  public void should_not_add_lines_when_more_lines_are_missing() {
+    CompactBlame.of(Arrays.asList(FIRST)).copyTo(sink);
+    sink.complete(3);
+
+    assertThat(sink.getLineCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void should_serialize_empty_blame_like_properties_builder() {
+    sink.complete(1);
+
+    assertThat(sink.getDates().getData()).isEqualTo(new PropertiesBuilder<Integer, String>(CoreMetrics.SCM_LAST_COMMIT_DATETIMES_BY_LINE).build().getData());
+  }
+
+  enum Field {
+    AUTHOR, DATE, REVISION
+  }
+
+  static String propertiesBuilderData(List<BlameLine> lines, Field field) {
+    PropertiesBuilder<Integer, String> builder = new PropertiesBuilder<Integer, String>(CoreMetrics.SCM_AUTHORS_BY_LINE);
+    int lineNumber = 1;
+    for (BlameLine line : lines) {
+      if (field == Field.AUTHOR) {
+        builder.add(lineNumber, Blame.normalizeString(line.getAuthor() == null ? "" : line.getAuthor()));
+      } else if (field == Field.DATE) {
+        builder.add(lineNumber, DateUtils.formatDateTime(line.getDate()));
+      } else {
+        builder.add(lineNumber, line.getRevision());
+      }
+      lineNumber++;
+    }
+    return builder.buildData();
+  }
+}
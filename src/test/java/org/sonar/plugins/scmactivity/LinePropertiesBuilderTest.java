@@ -0,0 +1,71 @@
+/*
+ * Sonar SCM Activity Plugin
+ * Copyright (C) 2010 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+
+package org.sonar.plugins.scmactivity;
+
+import org.junit.Test;
+import org.sonar.api.measures.CoreMetrics;
+import org.sonar.api.measures.Measure;
+import org.sonar.api.measures.PropertiesBuilder;
+
+import java.util.Random;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class LinePropertiesBuilderTest {
+
+  @Test
+  public void should_build_same_data_as_properties_builder() {
+    Random random = new Random(42);
+    String[] values = {"simon.brandhof@gmail.com", "", null, "2012-01-01T00:00:00+0100", "jérôme", "a=b;c"};
+
+    for (int lineCount : new int[] {0, 1, 9, 10, 99, 100, 1234}) {
+      // Too small, so that the buffer grows
+      LinePropertiesBuilder builder = new LinePropertiesBuilder(CoreMetrics.SCM_AUTHORS_BY_LINE, 1, 1);
+      PropertiesBuilder<Integer, String> expected = new PropertiesBuilder<Integer, String>(CoreMetrics.SCM_AUTHORS_BY_LINE);
+      for (int line = 1; line <= lineCount; line++) {
+        String value = values[random.nextInt(values.length)];
+        builder.add(value);
+        expected.add(line, value);
+      }
+
+      assertThat(builder.getLineCount()).isEqualTo(lineCount);
+      assertThat(builder.buildData()).as("lines: " + lineCount).isEqualTo(expected.buildData());
+    }
+  }
+
+  @Test
+  public void should_write_line_numbers() {
+    LinePropertiesBuilder builder = new LinePropertiesBuilder(CoreMetrics.SCM_REVISIONS_BY_LINE, 12, 2);
+    for (int line = 1; line <= 11; line++) {
+      builder.add("r");
+    }
+
+    assertThat(builder.buildData()).isEqualTo("1=r;2=r;3=r;4=r;5=r;6=r;7=r;8=r;9=r;10=r;11=r");
+  }
+
+  @Test
+  public void should_build_measure() {
+    Measure measure = new LinePropertiesBuilder(CoreMetrics.SCM_REVISIONS_BY_LINE, 2, 3).add("abc").add(null).build();
+
+    assertThat(measure.getMetric()).isEqualTo(CoreMetrics.SCM_REVISIONS_BY_LINE);
+    assertThat(measure.getData()).isEqualTo("1=abc;2=");
+  }
+}
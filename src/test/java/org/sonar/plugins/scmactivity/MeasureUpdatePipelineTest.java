@@ -0,0 +1,254 @@
+/*
+ * Sonar SCM Activity Plugin
+ * Copyright (C) 2010 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+
+package org.sonar.plugins.scmactivity;
+
+import com.google.common.util.concurrent.MoreExecutors;
+import org.junit.Before;
+import org.junit.Test;
+import org.sonar.api.batch.SensorContext;
+import org.sonar.api.batch.TimeMachine;
+import org.sonar.api.resources.File;
+import org.sonar.api.resources.Resource;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+
+public class MeasureUpdatePipelineTest {
+  static final Resource RESOURCE = new File("Foo.java");
+
+  MeasureUpdatePipeline pipeline;
+
+  TimeMachine timeMachine = mock(TimeMachine.class);
+  SensorContext context = mock(SensorContext.class);
+  CarryForwardMeasures carryForward = mock(CarryForwardMeasures.class);
+  BlameProgress progress = mock(BlameProgress.class);
+  BlameTimings timings = mock(BlameTimings.class);
+  MeasureUpdate first = mock(MeasureUpdate.class);
+  MeasureUpdate second = mock(MeasureUpdate.class);
+  MeasureUpdate third = mock(MeasureUpdate.class);
+
+  @Before
+  public void setUp() {
+    pipeline = new MeasureUpdatePipeline(MoreExecutors.sameThreadExecutor(), BlameThreadCount.fixed(1), timeMachine, context, carryForward,
+        BlameTimeouts.none(), progress, timings);
+  }
+
+  @Test
+  public void should_execute_updates_only_when_too_many_in_flight() {
+    pipeline.submit(RESOURCE, task(first));
+    pipeline.submit(RESOURCE, task(second));
+
+    verify(first, never()).execute(timeMachine, context);
+
+    pipeline.submit(RESOURCE, task(third));
+
+    verify(first).execute(timeMachine, context);
+    verify(second, never()).execute(timeMachine, context);
+  }
+
+  @Test
+  public void should_execute_remaining_updates_on_drain() {
+    pipeline.submit(RESOURCE, task(first));
+    pipeline.submit(RESOURCE, task(second));
+    pipeline.drain();
+
+    verify(first).execute(timeMachine, context);
+    verify(second).execute(timeMachine, context);
+    verify(carryForward).flush();
+  }
+
+  @Test
+  public void should_carry_forward_previous_measures_by_batch() {
+    Resource resource = new File("source.java");
+
+    pipeline.submit(RESOURCE, task(new CopyPreviousMeasures(resource)));
+    pipeline.drain();
+
+    verify(carryForward).add(resource);
+    verifyZeroInteractions(timeMachine);
+  }
+
+  @Test
+  public void should_report_progress() {
+    pipeline.submit(RESOURCE, task(first));
+    pipeline.submit(RESOURCE, task(new CopyPreviousMeasures(RESOURCE)));
+    pipeline.submit(RESOURCE, task(CopyPreviousMeasures.skipped(RESOURCE)));
+    pipeline.submit(RESOURCE, task(MeasureUpdate.NONE));
+    pipeline.drain();
+
+    verify(progress).blamed();
+    verify(progress).unchanged();
+    verify(progress).skipped();
+    verify(progress).failed();
+    verify(progress, times(4)).report();
+    verify(progress).logSummary();
+  }
+
+  @Test
+  public void should_only_count_blamed_files_in_throughput() {
+    BlameThreadCount threadCount = spy(BlameThreadCount.fixed(1));
+    pipeline = new MeasureUpdatePipeline(MoreExecutors.sameThreadExecutor(), threadCount, timeMachine, context, carryForward,
+        BlameTimeouts.none(), progress, timings);
+
+    pipeline.submit(RESOURCE, task(new CopyPreviousMeasures(RESOURCE)));
+    pipeline.submit(RESOURCE, task(new CopyPreviousMeasures(RESOURCE)));
+    pipeline.submit(RESOURCE, task(CopyPreviousMeasures.outdated(RESOURCE)));
+    pipeline.submit(RESOURCE, task(CopyPreviousMeasures.skipped(RESOURCE)));
+    pipeline.submit(RESOURCE, task(MeasureUpdate.NONE));
+    pipeline.submit(RESOURCE, task(first));
+    pipeline.drain();
+
+    verify(threadCount, times(3)).taskCompleted();
+  }
+
+  @Test
+  public void should_carry_on_after_error() {
+    pipeline.submit(RESOURCE, new Callable<MeasureUpdate>() {
+      public MeasureUpdate call() {
+        throw new IllegalStateException("BUG");
+      }
+    });
+    pipeline.submit(RESOURCE, task(first));
+    pipeline.drain();
+
+    verify(first).execute(timeMachine, context);
+  }
+
+  @Test(timeout = 10000)
+  public void should_cancel_blame_after_file_timeout() throws InterruptedException {
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      pipeline = new MeasureUpdatePipeline(executor, BlameThreadCount.fixed(1), timeMachine, context, carryForward,
+          new BlameTimeouts(100, 0, TimeUnit.MILLISECONDS), progress, timings);
+      BlockingTask blocking = new BlockingTask();
+
+      pipeline.submit(RESOURCE, blocking);
+      pipeline.submit(new File("Bar.java"), task(first));
+      pipeline.drain();
+
+      assertThat(blocking.interrupted.await(5, TimeUnit.SECONDS)).isTrue();
+      assertThat(pipeline.getTimedOut()).containsOnly(RESOURCE);
+      verify(carryForward).add(RESOURCE);
+      verify(first).execute(timeMachine, context);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test(timeout = 10000)
+  public void should_keep_previous_measures_of_remaining_files_after_total_timeout() throws InterruptedException {
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      pipeline = new MeasureUpdatePipeline(executor, BlameThreadCount.fixed(1), timeMachine, context, carryForward,
+          new BlameTimeouts(0, 100, TimeUnit.MILLISECONDS), progress, timings);
+      Resource bar = new File("Bar.java");
+      Resource baz = new File("Baz.java");
+
+      pipeline.submit(RESOURCE, new BlockingTask());
+      pipeline.submit(bar, new BlockingTask());
+      pipeline.submit(baz, task(first));
+      pipeline.drain();
+
+      assertThat(pipeline.getTimedOut()).containsOnly(RESOURCE, bar);
+      assertThat(pipeline.isComplete()).isFalse();
+      verify(carryForward).add(RESOURCE);
+      verify(carryForward).add(bar);
+      verify(carryForward).add(baz);
+      verify(first, never()).execute(timeMachine, context);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void should_not_cancel_tasks_without_timeout() {
+    pipeline.submit(RESOURCE, task(first));
+    pipeline.drain();
+
+    assertThat(pipeline.getTimedOut()).isEmpty();
+    assertThat(pipeline.isComplete()).isTrue();
+  }
+
+  @Test
+  public void should_not_be_complete_with_outdated_measures() {
+    pipeline.submit(RESOURCE, task(new CopyPreviousMeasures(RESOURCE)));
+    pipeline.submit(RESOURCE, task(MeasureUpdate.NONE));
+    pipeline.drain();
+
+    assertThat(pipeline.isComplete()).isTrue();
+
+    pipeline.submit(RESOURCE, task(CopyPreviousMeasures.outdated(RESOURCE)));
+    pipeline.drain();
+
+    assertThat(pipeline.isComplete()).isFalse();
+  }
+
+  @Test(timeout = 10000)
+  public void should_cancel_tasks_in_flight() throws InterruptedException {
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      pipeline = new MeasureUpdatePipeline(executor, BlameThreadCount.fixed(1), timeMachine, context, carryForward, BlameTimeouts.none(), progress, timings);
+      BlockingTask blocking = new BlockingTask();
+      pipeline.submit(RESOURCE, blocking);
+      blocking.started.await();
+
+      pipeline.cancel();
+
+      assertThat(blocking.interrupted.await(5, TimeUnit.SECONDS)).isTrue();
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  static class BlockingTask implements Callable<MeasureUpdate> {
+    final CountDownLatch started = new CountDownLatch(1);
+    final CountDownLatch interrupted = new CountDownLatch(1);
+
+    public MeasureUpdate call() {
+      started.countDown();
+      try {
+        new CountDownLatch(1).await();
+      } catch (InterruptedException e) {
+        interrupted.countDown();
+      }
+      return mock(MeasureUpdate.class);
+    }
+  }
+
+  static Callable<MeasureUpdate> task(final MeasureUpdate update) {
+    return new Callable<MeasureUpdate>() {
+      public MeasureUpdate call() {
+        return update;
+      }
+    };
+  }
+}
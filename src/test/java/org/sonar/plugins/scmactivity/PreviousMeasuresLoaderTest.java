@@ -0,0 +1,158 @@
+/*
+ * Sonar SCM Activity Plugin
+ * Copyright (C) 2010 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+
+package org.sonar.plugins.scmactivity;
+
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Lists;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.sonar.api.database.DatabaseSession;
+import org.sonar.api.database.model.MeasureModel;
+import org.sonar.api.database.model.Snapshot;
+import org.sonar.api.measures.Measure;
+import org.sonar.api.measures.Metric;
+import org.sonar.api.measures.MetricFinder;
+import org.sonar.api.resources.File;
+import org.sonar.api.resources.Resource;
+
+import javax.persistence.Query;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+
+public class PreviousMeasuresLoaderTest {
+  PreviousMeasuresLoader loader;
+
+  DatabaseSession session = mock(DatabaseSession.class);
+  MetricFinder metricFinder = mock(MetricFinder.class);
+  Query query = mock(Query.class);
+
+  @Before
+  public void setUp() {
+    when(session.createQuery(anyString())).thenReturn(query);
+    when(query.setParameter(anyString(), any())).thenReturn(query);
+    when(metricFinder.findByKey(ScmActivityMetrics.SCM_HASH_KEY)).thenReturn(persistedMetric(42));
+
+    loader = new PreviousMeasuresLoader(session, metricFinder);
+  }
+
+  @Test
+  public void should_load_measures_of_all_resources_with_one_query() {
+    Resource first = resource("first", 1);
+    Resource second = resource("second", 2);
+    when(query.getResultList()).thenReturn(Arrays.asList(
+        row(1, hash(42, "sha1")),
+        row(2, hash(42, "sha2"))));
+
+    ListMultimap<Resource, Measure> measures = loader.load(Arrays.asList(first, second), metrics());
+
+    assertThat(measures.get(first)).hasSize(1);
+    assertThat(measures.get(first).get(0).getMetric()).isEqualTo(ScmActivityMetrics.SCM_HASH);
+    assertThat(measures.get(first).get(0).getData()).isEqualTo("sha1");
+    assertThat(measures.get(second).get(0).getData()).isEqualTo("sha2");
+    assertThat(loader.getQueryCount()).isEqualTo(1);
+    ArgumentCaptor<Object> metricIds = ArgumentCaptor.forClass(Object.class);
+    verify(query).setParameter(eq("metricIds"), metricIds.capture());
+    assertThat((Collection<?>) metricIds.getValue()).containsOnly(42);
+  }
+
+  @Test
+  public void should_only_load_measures_of_processed_snapshots_without_severity() {
+    when(query.getResultList()).thenReturn(Collections.<Object[]>emptyList());
+
+    loader.load(Arrays.asList(resource("first", 1)), metrics());
+
+    ArgumentCaptor<String> hql = ArgumentCaptor.forClass(String.class);
+    verify(session).createQuery(hql.capture());
+    assertThat(hql.getValue()).contains("s.status = :status").contains("m.rulePriority IS NULL");
+    verify(query).setParameter("status", Snapshot.STATUS_PROCESSED);
+  }
+
+  @Test
+  public void should_query_by_chunks() {
+    List<Resource> resources = Lists.newArrayList();
+    for (int i = 0; i < PreviousMeasuresLoader.CHUNK_SIZE + 1; i++) {
+      resources.add(resource("file" + i, i));
+    }
+    when(query.getResultList()).thenReturn(Collections.<Object[]>emptyList());
+
+    loader.load(resources, metrics());
+
+    assertThat(loader.getQueryCount()).isEqualTo(2);
+    verify(query, times(2)).setParameter(eq("resourceIds"), any(Collection.class));
+  }
+
+  @Test
+  public void should_ignore_resources_not_persisted() {
+    ListMultimap<Resource, Measure> measures = loader.load(Arrays.<Resource>asList(new File("unknown")), metrics());
+
+    assertThat(measures.isEmpty()).isTrue();
+    verifyZeroInteractions(session);
+  }
+
+  @Test
+  public void should_not_query_unknown_metrics() {
+    when(metricFinder.findByKey(ScmActivityMetrics.SCM_HASH_KEY)).thenReturn(null);
+
+    ListMultimap<Resource, Measure> measures = loader.load(Arrays.asList(resource("first", 1)), metrics());
+
+    assertThat(measures.isEmpty()).isTrue();
+    verifyZeroInteractions(session);
+  }
+
+  static List<Metric> metrics() {
+    return Arrays.<Metric>asList(ScmActivityMetrics.SCM_HASH);
+  }
+
+  static Resource resource(String key, int id) {
+    Resource resource = new File(key);
+    resource.setId(id);
+    return resource;
+  }
+
+  static Metric persistedMetric(int id) {
+    Metric metric = new Metric.Builder(ScmActivityMetrics.SCM_HASH_KEY, "Hash", Metric.ValueType.STRING).create();
+    metric.setId(id);
+    return metric;
+  }
+
+  static MeasureModel hash(int metricId, String sha1) {
+    MeasureModel model = new MeasureModel(metricId, sha1);
+    return model;
+  }
+
+  static Object[] row(int resourceId, MeasureModel model) {
+    return new Object[] {resourceId, model};
+  }
+}
@@ -20,30 +20,37 @@
 
 package org.sonar.plugins.scmactivity;
 
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ListMultimap;
 import org.junit.Before;
 import org.junit.Test;
 import org.sonar.api.batch.TimeMachine;
 import org.sonar.api.batch.TimeMachineQuery;
 import org.sonar.api.measures.Measure;
 import org.sonar.api.measures.Metric;
+import org.sonar.api.resources.File;
 import org.sonar.api.resources.Resource;
 
 import java.util.Arrays;
 
 import static org.fest.assertions.Assertions.assertThat;
+import static org.mockito.Matchers.anyCollectionOf;
+import static org.mockito.Matchers.anyListOf;
 import static org.mockito.Matchers.refEq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
 
 public class PreviousSha1FinderTest {
   PreviousSha1Finder previousSha1Finder;
 
   TimeMachine timeMachine = mock(TimeMachine.class);
+  PreviousMeasuresLoader previousMeasuresLoader = mock(PreviousMeasuresLoader.class);
   Resource resource = mock(Resource.class);
 
   @Before
   public void setUp() {
-    previousSha1Finder = new PreviousSha1Finder(timeMachine);
+    previousSha1Finder = new PreviousSha1Finder(timeMachine, previousMeasuresLoader);
   }
 
   @Test
@@ -63,6 +70,51 @@ public class PreviousSha1FinderTest {
     assertThat(sha1).isEmpty();
   }
 
+  @Test
+  public void should_find_prefetched_sha1_without_time_machine() {
+    Resource persisted = persistedResource();
+    ListMultimap<Resource, Measure> measures = ArrayListMultimap.create();
+    measures.put(persisted, sha1Measure("abcdef"));
+    when(previousMeasuresLoader.load(Arrays.asList(persisted), Arrays.<Metric>asList(ScmActivityMetrics.SCM_HASH))).thenReturn(measures);
+
+    previousSha1Finder.prefetch(Arrays.asList(persisted));
+    String sha1 = previousSha1Finder.find(persisted);
+
+    assertThat(sha1).isEqualTo("abcdef");
+    verifyZeroInteractions(timeMachine);
+  }
+
+  @Test
+  public void shouldnt_find_missing_prefetched_sha1() {
+    Resource persisted = persistedResource();
+    when(previousMeasuresLoader.load(anyCollectionOf(Resource.class), anyListOf(Metric.class))).thenReturn(ArrayListMultimap.<Resource, Measure>create());
+
+    previousSha1Finder.prefetch(Arrays.asList(persisted));
+    String sha1 = previousSha1Finder.find(persisted);
+
+    assertThat(sha1).isEmpty();
+    assertThat(previousSha1Finder.find(persisted)).isEmpty();
+    verifyZeroInteractions(timeMachine);
+  }
+
+  @Test
+  public void should_fallback_to_time_machine_for_resource_not_persisted() {
+    when(previousMeasuresLoader.load(anyCollectionOf(Resource.class), anyListOf(Metric.class))).thenReturn(ArrayListMultimap.<Resource, Measure>create());
+    when(timeMachine.getMeasures(timeMachineQuery(resource, ScmActivityMetrics.SCM_HASH)))
+        .thenReturn(Arrays.asList(sha1Measure("abcdef")));
+
+    previousSha1Finder.prefetch(Arrays.asList(resource));
+    String sha1 = previousSha1Finder.find(resource);
+
+    assertThat(sha1).isEqualTo("abcdef");
+  }
+
+  static Resource persistedResource() {
+    Resource resource = new File("source.java");
+    resource.setId(1);
+    return resource;
+  }
+
   static TimeMachineQuery timeMachineQuery(Resource resource, Metric metric) {
     return refEq(new TimeMachineQuery(resource).setMetrics(metric).setOnlyLastAnalysis(true));
   }
@@ -20,7 +20,6 @@
 
 package org.sonar.plugins.scmactivity;
 
-import com.google.common.collect.Iterables;
 import org.junit.Test;
 import org.sonar.api.measures.Metric;
 
@@ -30,15 +29,21 @@ import static org.fest.assertions.Assertions.assertThat;
 
 public class ScmActivityMetricsTest {
   @Test
-  public void should_provide_metric() {
+  public void should_provide_metrics() {
     List<Metric> metrics = new ScmActivityMetrics().getMetrics();
 
-    Metric metric = Iterables.getOnlyElement(metrics);
+    assertThat(metrics).hasSize(2);
+    Metric metric = metrics.get(0);
 
     assertThat(metric.getDomain()).isEqualTo("SCM");
     assertThat(metric.getKey()).isEqualTo("scm.hash");
     assertThat(metric.getName()).isEqualTo("Hash");
     assertThat(metric.getType()).isEqualTo(Metric.ValueType.STRING);
     assertThat(metric.isHidden()).isTrue();
+
+    Metric revision = metrics.get(1);
+    assertThat(revision.getKey()).isEqualTo("scm.revision");
+    assertThat(revision.getType()).isEqualTo(Metric.ValueType.STRING);
+    assertThat(revision.isHidden()).isTrue();
   }
 }
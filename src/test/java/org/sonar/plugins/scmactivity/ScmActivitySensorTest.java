@@ -20,10 +20,22 @@
 
 package org.sonar.plugins.scmactivity;
 
+import com.google.common.collect.ImmutableMap;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.MockitoAnnotations;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 import org.sonar.api.batch.SensorContext;
 import org.sonar.api.batch.TimeMachine;
+import org.sonar.api.batch.TimeMachineQuery;
+import org.sonar.api.measures.Measure;
 import org.sonar.api.measures.Metric;
 import org.sonar.api.resources.InputFile;
 import org.sonar.api.resources.Project;
@@ -31,11 +43,25 @@ import org.sonar.api.resources.ProjectFileSystem;
 import org.sonar.api.resources.Resource;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static org.fest.assertions.Assertions.assertThat;
+import static org.junit.Assume.assumeTrue;
+import static org.sonar.plugins.scmactivity.test.GitCommands.git;
+import static org.sonar.plugins.scmactivity.test.GitCommands.isGitInstalled;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -50,13 +76,34 @@ public class ScmActivitySensorTest {
   SensorContext context = mock(SensorContext.class);
   FileToResource fileToResource = mock(FileToResource.class);
   PreviousSha1Finder previousSha1Finder = mock(PreviousSha1Finder.class);
+  PreviousMeasuresLoader previousMeasuresLoader = mock(PreviousMeasuresLoader.class);
   TimeMachine timeMachine = mock(TimeMachine.class);
   Resource resource = mock(Resource.class);
   MeasureUpdate measureUpdate = mock(MeasureUpdate.class);
+  BlameService blameService = new BlameService();
+  BlameTimings timings;
+
+  @Captor
+  ArgumentCaptor<Collection<Resource>> prefetched;
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
 
   @Before
   public void setUp() {
-    scmActivitySensor = new ScmActivitySensor(conf, blameVersionSelector, urlChecker, fileToResource, previousSha1Finder, timeMachine);
+    MockitoAnnotations.initMocks(this);
+    when(projectFileSystem.getBasedir()).thenReturn(temp.getRoot());
+    when(projectFileSystem.getSonarWorkingDirectory()).thenReturn(new File(temp.getRoot(), "target/sonar"));
+    BlameCostModel costModel = new BlameCostModel(projectFileSystem);
+    timings = new BlameTimings(projectFileSystem);
+
+    scmActivitySensor = new ScmActivitySensor(conf, blameVersionSelector, urlChecker, fileToResource, previousSha1Finder, previousMeasuresLoader,
+        costModel, blameService, timings, timeMachine);
+  }
+
+  @After
+  public void tearDown() {
+    blameService.stop();
   }
 
   @Test
@@ -93,12 +140,13 @@ public class ScmActivitySensorTest {
   public void should_generate_metrics() {
     List<Metric> metrics = scmActivitySensor.generatesMetrics();
 
-    assertThat(metrics).hasSize(4);
+    assertThat(metrics).hasSize(5);
   }
 
   @Test(timeout = 2000)
   public void should_check_url() {
     when(conf.getThreadCount()).thenReturn(1);
+    when(conf.getTimeouts()).thenReturn(BlameTimeouts.none());
     when(project.getLanguageKey()).thenReturn("java");
     when(project.getFileSystem()).thenReturn(projectFileSystem);
     when(conf.getUrl()).thenReturn("scm:url");
@@ -113,17 +161,21 @@ public class ScmActivitySensorTest {
     InputFile source = file("source.java");
     InputFile test = file("UNKNOWN.java");
     when(conf.getThreadCount()).thenReturn(1);
+    when(conf.getTimeouts()).thenReturn(BlameTimeouts.none());
     when(project.getLanguageKey()).thenReturn("java");
     when(project.getFileSystem()).thenReturn(projectFileSystem);
     when(projectFileSystem.mainFiles("java")).thenReturn(Arrays.asList(source));
     when(projectFileSystem.testFiles("java")).thenReturn(Arrays.asList(test));
     when(fileToResource.toResource(source, context)).thenReturn(resource);
     when(previousSha1Finder.find(resource)).thenReturn("SHA1");
-    when(blameVersionSelector.detect(source, "SHA1", context)).thenReturn(measureUpdate);
+    when(blameVersionSelector.detect(source, "SHA1", null, context)).thenReturn(measureUpdate);
 
     scmActivitySensor.analyse(project, context);
 
+    verify(previousSha1Finder).prefetch(prefetched.capture());
+    assertThat(prefetched.getValue()).containsOnly(resource);
     verify(measureUpdate).execute(timeMachine, context);
+    assertThat(new File(temp.getRoot(), "target/sonar/" + BlameTimings.FILENAME)).exists();
   }
 
   @Test
@@ -131,18 +183,142 @@ public class ScmActivitySensorTest {
     InputFile first = file("source.java");
     InputFile second = file("UNKNOWN.java");
     when(conf.getThreadCount()).thenReturn(1);
+    when(conf.getTimeouts()).thenReturn(BlameTimeouts.none());
     when(project.getLanguageKey()).thenReturn("java");
     when(project.getFileSystem()).thenReturn(projectFileSystem);
     when(projectFileSystem.mainFiles("java")).thenReturn(Arrays.asList(first, second));
     when(fileToResource.toResource(first, context)).thenReturn(resource);
     when(fileToResource.toResource(second, context)).thenReturn(resource);
     when(previousSha1Finder.find(resource)).thenReturn("SHA1");
-    when(blameVersionSelector.detect(first, "SHA1", context)).thenThrow(new RuntimeException("BUG"));
-    when(blameVersionSelector.detect(second, "SHA1", context)).thenReturn(measureUpdate);
+    when(blameVersionSelector.detect(first, "SHA1", null, context)).thenThrow(new RuntimeException("BUG"));
+    when(blameVersionSelector.detect(second, "SHA1", null, context)).thenReturn(measureUpdate);
+
+    scmActivitySensor.analyse(project, context);
+
+    verify(measureUpdate).execute(timeMachine, context);
+  }
+
+  @Test
+  public void should_blame_changed_files_one_by_one_when_single_pass_fails() {
+    InputFile unchanged = file("Unchanged.java");
+    InputFile changed = file("Changed.java");
+    FileVersion unchangedVersion = new FileVersion(unchanged.getFile(), resource, "SHA1", 10);
+    FileVersion changedVersion = new FileVersion(changed.getFile(), resource, "NEW", 10);
+    MeasureUpdate copy = mock(MeasureUpdate.class);
+    when(conf.getThreadCount()).thenReturn(1);
+    when(conf.getTimeouts()).thenReturn(BlameTimeouts.none());
+    when(conf.isSinglePassBlame()).thenReturn(true);
+    when(project.getLanguageKey()).thenReturn("java");
+    when(project.getFileSystem()).thenReturn(projectFileSystem);
+    when(projectFileSystem.mainFiles("java")).thenReturn(Arrays.asList(unchanged, changed));
+    when(fileToResource.toResource(unchanged, context)).thenReturn(resource);
+    when(fileToResource.toResource(changed, context)).thenReturn(resource);
+    when(previousSha1Finder.find(resource)).thenReturn("SHA1");
+    when(blameVersionSelector.read(unchanged, null, context)).thenReturn(unchangedVersion);
+    when(blameVersionSelector.read(changed, null, context)).thenReturn(changedVersion);
+    when(blameVersionSelector.notChanged(unchangedVersion)).thenReturn(copy);
+    when(blameVersionSelector.blame(changedVersion)).thenReturn(measureUpdate);
+
+    // Not a git working copy
+    scmActivitySensor.analyse(project, context);
+
+    verify(copy).execute(timeMachine, context);
+    verify(measureUpdate).execute(timeMachine, context);
+  }
+
+  @Test
+  public void should_keep_measures_of_files_not_changed_since_previous_commit() throws Exception {
+    assumeTrue(isGitInstalled());
+    File root = temp.newFolder("repository");
+    InputFile unchanged = write(root, "Unchanged.java");
+    InputFile changed = write(root, "Changed.java");
+    git(root, "init", "-q");
+    String previous = commit(root);
+    FileUtils.writeStringToFile(changed.getFile(), "changed");
+    String head = commit(root);
+    Resource unchangedResource = mock(Resource.class);
+    when(projectFileSystem.getBasedir()).thenReturn(root);
+    when(conf.getThreadCount()).thenReturn(1);
+    when(conf.getTimeouts()).thenReturn(BlameTimeouts.none());
+    when(conf.isGit()).thenReturn(true);
+    when(project.getLanguageKey()).thenReturn("java");
+    when(project.getFileSystem()).thenReturn(projectFileSystem);
+    when(projectFileSystem.mainFiles("java")).thenReturn(Arrays.asList(unchanged, changed));
+    when(fileToResource.toResource(unchanged, context)).thenReturn(unchangedResource);
+    when(fileToResource.toResource(changed, context)).thenReturn(resource);
+    when(previousSha1Finder.find(any(Resource.class))).thenReturn("SHA1");
+    when(timeMachine.getMeasures(any(TimeMachineQuery.class))).thenReturn(Arrays.asList(new Measure(ScmActivityMetrics.SCM_REVISION, previous)));
+    when(blameVersionSelector.detect(changed, "SHA1", null, context)).thenReturn(measureUpdate);
 
     scmActivitySensor.analyse(project, context);
 
+    verify(blameVersionSelector, never()).detect(eq(unchanged), anyString(), anyString(), any(SensorContext.class));
     verify(measureUpdate).execute(timeMachine, context);
+    verify(previousMeasuresLoader).load(Arrays.asList(unchangedResource), CopyPreviousMeasures.METRICS);
+    ArgumentCaptor<Measure> revision = ArgumentCaptor.forClass(Measure.class);
+    verify(context).saveMeasure(revision.capture());
+    assertThat(revision.getValue().getMetric()).isEqualTo(ScmActivityMetrics.SCM_REVISION);
+    assertThat(revision.getValue().getData()).isEqualTo(head);
+  }
+
+  @Test(timeout = 10000)
+  public void should_keep_previous_measures_of_files_not_read_before_total_timeout() {
+    InputFile slow = file("Slow.java");
+    when(conf.getThreadCount()).thenReturn(1);
+    when(conf.getTimeouts()).thenReturn(new BlameTimeouts(0, 100, TimeUnit.MILLISECONDS));
+    when(conf.isSinglePassBlame()).thenReturn(true);
+    when(project.getLanguageKey()).thenReturn("java");
+    when(project.getFileSystem()).thenReturn(projectFileSystem);
+    when(projectFileSystem.mainFiles("java")).thenReturn(Arrays.asList(slow));
+    when(fileToResource.toResource(slow, context)).thenReturn(resource);
+    when(previousSha1Finder.find(resource)).thenReturn("SHA1");
+    when(blameVersionSelector.read(slow, null, context)).thenAnswer(new Answer<FileVersion>() {
+      public FileVersion answer(InvocationOnMock invocation) throws InterruptedException {
+        // Until cancelled
+        new CountDownLatch(1).await();
+        return null;
+      }
+    });
+
+    scmActivitySensor.analyse(project, context);
+
+    verify(blameVersionSelector, never()).blame(any(FileVersion.class));
+    verify(previousMeasuresLoader).load(Arrays.asList(resource), CopyPreviousMeasures.METRICS);
+    verify(context, never()).saveMeasure(any(Measure.class));
+  }
+
+  @Test(timeout = 10000)
+  public void should_keep_previous_measures_of_files_not_reported_by_the_walk_before_total_timeout() {
+    InputFile changed = file("Changed.java");
+    FileVersion changedVersion = new FileVersion(changed.getFile(), resource, "NEW", 10);
+    final AtomicBoolean cancelled = new AtomicBoolean();
+    GitHistoryBlame neverReporting = new GitHistoryBlame(temp.getRoot(), blameService.getCommits()) {
+      @Override
+      void start(Collection<File> files) {
+        // Walk stuck before reporting any file
+      }
+
+      @Override
+      void cancel() {
+        cancelled.set(true);
+      }
+    };
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      MeasureUpdatePipeline pipeline = new MeasureUpdatePipeline(executor, BlameThreadCount.fixed(1), timeMachine, context,
+          new CarryForwardMeasures(previousMeasuresLoader, timeMachine, context, timings), new BlameTimeouts(0, 100, TimeUnit.MILLISECONDS),
+          new BlameProgress(1, blameService), timings);
+
+      scmActivitySensor.blameInSinglePass(pipeline, neverReporting, ImmutableMap.of(changed, changedVersion));
+      pipeline.drain();
+
+      assertThat(cancelled.get()).isTrue();
+      assertThat(pipeline.isComplete()).isFalse();
+      verify(blameVersionSelector, never()).blame(changedVersion);
+      verify(previousMeasuresLoader).load(Arrays.asList(resource), CopyPreviousMeasures.METRICS);
+    } finally {
+      executor.shutdownNow();
+    }
   }
 
   @Test
@@ -152,6 +328,21 @@ public class ScmActivitySensorTest {
     assertThat(debugName).isEqualTo("ScmActivitySensor");
   }
 
+  static InputFile write(File root, String name) throws IOException {
+    InputFile inputFile = mock(InputFile.class);
+    File file = new File(root, name);
+    FileUtils.writeStringToFile(file, name);
+    when(inputFile.getFile()).thenReturn(file);
+    return inputFile;
+  }
+
+  static String commit(File root) throws IOException {
+    git(root, "add", "-A");
+    git(root, "-c", "user.name=developer", "-c", "user.email=developer@company.net", "-c", "commit.gpgsign=false",
+        "commit", "-q", "-m", "Commit");
+    return git(root, "rev-parse", "HEAD").trim();
+  }
+
   static InputFile file(String name) {
     InputFile inputFile = mock(InputFile.class);
     when(inputFile.getFile()).thenReturn(new File(name));
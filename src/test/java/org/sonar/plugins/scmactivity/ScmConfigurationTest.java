@@ -28,6 +28,8 @@ import org.sonar.api.config.PropertyDefinitions;
 import org.sonar.api.config.Settings;
 import org.sonar.api.utils.SonarException;
 
+import java.util.concurrent.TimeUnit;
+
 import static org.fest.assertions.Assertions.assertThat;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
@@ -118,6 +120,67 @@ public class ScmConfigurationTest {
     assertThat(scmConfiguration.getThreadCount()).isEqualTo(1000);
   }
 
+  @Test
+  public void should_not_be_adaptive_by_default() {
+    assertThat(scmConfiguration.isThreadCountAdaptive()).isFalse();
+  }
+
+  @Test
+  public void should_use_adaptive_thread_count() {
+    settings.setProperty(ScmActivityPlugin.THREAD_COUNT, "auto");
+
+    assertThat(scmConfiguration.isThreadCountAdaptive()).isTrue();
+    assertThat(scmConfiguration.getThreadCount()).isEqualTo(Runtime.getRuntime().availableProcessors());
+  }
+
+  @Test
+  public void should_use_jgit_for_git_urls() {
+    settings.setProperty(ScmActivityPlugin.JGIT, true);
+    settings.setProperty(ScmActivityPlugin.URL, "scm:git:git@github.com:SonarCommunity/sonar-scm-activity.git");
+
+    assertThat(scmConfiguration.getUrl()).isEqualTo("scm:jgit:git@github.com:SonarCommunity/sonar-scm-activity.git");
+    assertThat(scmConfiguration.getScmProvider()).isEqualTo("jgit");
+  }
+
+  @Test
+  public void should_not_use_jgit_for_other_urls() {
+    settings.setProperty(ScmActivityPlugin.JGIT, true);
+    settings.setProperty(ScmActivityPlugin.URL, "scm:svn:http://foo");
+
+    assertThat(scmConfiguration.getUrl()).isEqualTo("scm:svn:http://foo");
+  }
+
+  @Test
+  public void should_use_git_index_fingerprints_only_for_git_modules() {
+    settings.setProperty(ScmActivityPlugin.GIT_INDEX_FINGERPRINT, true);
+
+    settings.setProperty(ScmActivityPlugin.URL, "scm:jgit:git@github.com:SonarCommunity/sonar-scm-activity.git");
+    assertThat(scmConfiguration.isGitIndexFingerprint()).isTrue();
+
+    ScmConfiguration svnConfiguration = new ScmConfiguration(settings, scmUrlGuess, mavenConf);
+    settings.setProperty(ScmActivityPlugin.URL, "scm:svn:http://foo");
+    assertThat(svnConfiguration.isGitIndexFingerprint()).isFalse();
+  }
+
+  @Test
+  public void should_blame_in_single_pass_only_git_modules() {
+    settings.setProperty(ScmActivityPlugin.SINGLE_PASS_BLAME, true);
+
+    settings.setProperty(ScmActivityPlugin.URL, "scm:git:git@github.com:SonarCommunity/sonar-scm-activity.git");
+    assertThat(scmConfiguration.isSinglePassBlame()).isTrue();
+
+    ScmConfiguration svnConfiguration = new ScmConfiguration(settings, scmUrlGuess, mavenConf);
+    settings.setProperty(ScmActivityPlugin.URL, "scm:svn:http://foo");
+    assertThat(svnConfiguration.isSinglePassBlame()).isFalse();
+  }
+
+  @Test
+  public void should_not_blame_in_single_pass_by_default() {
+    settings.setProperty(ScmActivityPlugin.URL, "scm:git:git@github.com:SonarCommunity/sonar-scm-activity.git");
+
+    assertThat(scmConfiguration.isSinglePassBlame()).isFalse();
+  }
+
   @Test
   public void shouldGetMavenDeveloperUrlIfCredentials() {
     when(mavenConf.getDeveloperUrl()).thenReturn("scm:svn:https:writable");
@@ -219,4 +282,61 @@ public class ScmConfigurationTest {
 
     assertThat(scmConfiguration.getPerforceClientspecName()).isEqualTo("myclientspec");
   }
+
+  @Test
+  public void should_get_default_timeouts() {
+    BlameTimeouts timeouts = scmConfiguration.getTimeouts();
+
+    assertThat(timeouts.getFileTimeoutNanos()).isEqualTo(TimeUnit.SECONDS.toNanos(600));
+    assertThat(timeouts.hasTotalTimeout()).isFalse();
+  }
+
+  @Test
+  public void should_get_timeouts() {
+    settings.setProperty(ScmActivityPlugin.FILE_TIMEOUT, "0");
+    settings.setProperty(ScmActivityPlugin.TOTAL_TIMEOUT, "3600");
+
+    BlameTimeouts timeouts = scmConfiguration.getTimeouts();
+
+    assertThat(timeouts.hasFileTimeout()).isFalse();
+    assertThat(timeouts.getTotalTimeoutNanos()).isEqualTo(TimeUnit.SECONDS.toNanos(3600));
+  }
+
+  @Test
+  public void should_fail_on_negative_timeout() {
+    settings.setProperty(ScmActivityPlugin.FILE_TIMEOUT, "-1");
+
+    exception.expect(SonarException.class);
+    exception.expectMessage("negative timeout");
+
+    scmConfiguration.getTimeouts();
+  }
+
+  @Test
+  public void should_get_default_circuit_breaker_thresholds() {
+    assertThat(scmConfiguration.getCircuitBreakerFailures()).isEqualTo(BlameCircuitBreaker.DEFAULT_FAILURE_THRESHOLD);
+    assertThat(scmConfiguration.getCircuitBreakerWindow()).isEqualTo(BlameCircuitBreaker.DEFAULT_FAILURE_WINDOW_SECONDS);
+    assertThat(scmConfiguration.getCircuitBreakerOpenDuration()).isEqualTo(BlameCircuitBreaker.DEFAULT_OPEN_DURATION_SECONDS);
+  }
+
+  @Test
+  public void should_get_circuit_breaker_thresholds() {
+    settings.setProperty(ScmActivityPlugin.CIRCUIT_BREAKER_FAILURES, "0");
+    settings.setProperty(ScmActivityPlugin.CIRCUIT_BREAKER_WINDOW, "120");
+    settings.setProperty(ScmActivityPlugin.CIRCUIT_BREAKER_OPEN_DURATION, "10");
+
+    assertThat(scmConfiguration.getCircuitBreakerFailures()).isZero();
+    assertThat(scmConfiguration.getCircuitBreakerWindow()).isEqualTo(120);
+    assertThat(scmConfiguration.getCircuitBreakerOpenDuration()).isEqualTo(10);
+  }
+
+  @Test
+  public void should_fail_on_negative_circuit_breaker_threshold() {
+    settings.setProperty(ScmActivityPlugin.CIRCUIT_BREAKER_FAILURES, "-1");
+
+    exception.expect(SonarException.class);
+    exception.expectMessage("negative value");
+
+    scmConfiguration.getCircuitBreakerFailures();
+  }
 }
@@ -46,6 +46,8 @@ import static org.mockito.Mockito.when;
 public class ScmFacadeTest {
   ScmFacade scmFacade;
 
+  BlameService blameService = new BlameService();
+
   ScmConfiguration conf = mock(ScmConfiguration.class);
   SonarScmManager manager = mock(SonarScmManager.class);
   ScmRepository repository = mock(ScmRepository.class);
@@ -55,7 +57,7 @@ public class ScmFacadeTest {
 
   @Before
   public void setUp() {
-    scmFacade = new ScmFacade(manager, conf);
+    scmFacade = new ScmFacade(manager, conf, blameService);
   }
 
   @Test
@@ -102,6 +104,17 @@ public class ScmFacadeTest {
     verify(provider).setPassword("");
   }
 
+  @Test
+  public void should_share_repository_between_modules() throws ScmException {
+    when(conf.getUrl()).thenReturn("/url");
+    when(manager.makeScmRepository("/url")).thenReturn(repository);
+
+    ScmFacade otherModule = new ScmFacade(manager, conf, blameService);
+
+    assertThat(otherModule.getScmRepository()).isSameAs(scmFacade.getScmRepository());
+    verify(manager).makeScmRepository("/url");
+  }
+
   @Test
   public void shouldInitSvn() throws ScmException {
     when(conf.getUrl()).thenReturn("/url");
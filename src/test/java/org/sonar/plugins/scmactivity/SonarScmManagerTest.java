@@ -36,6 +36,7 @@ import org.junit.Test;
 import org.mockito.InOrder;
 import org.mockito.Mockito;
 import org.slf4j.Logger;
+import org.sonar.plugins.scmactivity.maven.SonarJGitScmProvider;
 
 import static org.fest.assertions.Assertions.assertThat;
 import static org.mockito.Mockito.mock;
@@ -50,10 +51,11 @@ public class SonarScmManagerTest {
   public void should_use_native_providers() throws NoSuchScmProviderException {
     when(conf.isEnabled()).thenReturn(true);
 
-    SonarScmManager scmManager = new SonarScmManager();
+    SonarScmManager scmManager = new SonarScmManager(new BlameService());
 
     assertThat(scmManager.getProviderByType("svn")).isInstanceOf(SvnExeScmProvider.class);
     assertThat(scmManager.getProviderByType("git")).isInstanceOf(GitExeScmProvider.class);
+    assertThat(scmManager.getProviderByType("jgit")).isInstanceOf(SonarJGitScmProvider.class);
     assertThat(scmManager.getProviderByType("cvs")).isInstanceOf(CvsExeScmProvider.class);
     assertThat(scmManager.getProviderByType("hg")).isInstanceOf(HgScmProvider.class);
     assertThat(scmManager.getProviderByType("bazaar")).isInstanceOf(BazaarScmProvider.class);
@@ -65,6 +67,16 @@ public class SonarScmManagerTest {
     assertThat(scmManager.getProviderByType("integrity")).isInstanceOf(IntegrityScmProvider.class);
   }
 
+  @Test
+  public void should_create_git_providers_for_each_batch() throws NoSuchScmProviderException {
+    SonarScmManager first = new SonarScmManager(new BlameService());
+    SonarScmManager second = new SonarScmManager(new BlameService());
+
+    assertThat(first.getProviderByType("git")).isNotSameAs(second.getProviderByType("git"));
+    assertThat(first.getProviderByType("jgit")).isNotSameAs(second.getProviderByType("jgit"));
+    assertThat(first.getProviderByType("svn")).isSameAs(second.getProviderByType("svn"));
+  }
+
   @Test
   public void should_log() {
     when(error.getMessage()).thenReturn("errorMessage");
@@ -0,0 +1,110 @@
+/*
+ * Sonar SCM Activity Plugin
+ * Copyright (C) 2010 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+
+package org.sonar.plugins.scmactivity.maven;
+
+import org.apache.maven.scm.command.blame.BlameLine;
+import org.junit.Test;
+
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static com.google.common.collect.Lists.newArrayList;
+import static org.fest.assertions.Assertions.assertThat;
+
+public class BlameCommitsTest {
+  static final String REVISION = "1111111111111111111111111111111111111111";
+
+  BlameCommits blameCommits = new BlameCommits();
+
+  @Test
+  public void should_store_commit_once() {
+    BlameLine first = blameCommits.line(new Date(1000L), REVISION, "author@company.net", "committer@company.net");
+    BlameLine second = blameCommits.line(new Date(2000L), REVISION, "other@company.net", "other@company.net");
+
+    assertThat(second).isSameAs(first);
+    assertThat(second.getAuthor()).isEqualTo("author@company.net");
+    assertThat(blameCommits.get(REVISION)).isSameAs(first);
+    assertThat(blameCommits.size()).isEqualTo(1);
+  }
+
+  @Test
+  public void should_intern_values_of_new_lines() {
+    StringPool strings = new StringPool();
+    String email = strings.intern("author@company.net");
+    blameCommits = new BlameCommits(strings);
+
+    BlameLine line = blameCommits.line(new Date(), new String(REVISION), new String("author@company.net"), new String("author@company.net"));
+
+    assertThat(line.getAuthor()).isSameAs(email);
+    assertThat(line.getCommitter()).isSameAs(email);
+    assertThat(line.getRevision()).isSameAs(strings.intern(REVISION));
+    assertThat(blameCommits.getStrings()).isSameAs(strings);
+  }
+
+  @Test
+  public void should_not_share_uncommitted_lines() {
+    String notCommitted = "0000000000000000000000000000000000000000";
+
+    BlameLine first = blameCommits.line(new Date(1000L), notCommitted, "not.committed.yet", "not.committed.yet");
+    BlameLine second = blameCommits.line(new Date(2000L), notCommitted, "not.committed.yet", "not.committed.yet");
+
+    assertThat(second).isNotSameAs(first);
+    assertThat(second.getDate()).isEqualTo(new Date(2000L));
+    assertThat(blameCommits.get(notCommitted)).isNull();
+    assertThat(blameCommits.line(null, null, null, null).getRevision()).isNull();
+    assertThat(blameCommits.get(null)).isNull();
+  }
+
+  @Test
+  public void should_forget_commits_on_clear() {
+    blameCommits.line(new Date(), REVISION, "author@company.net", "author@company.net");
+
+    blameCommits.clear();
+
+    assertThat(blameCommits.get(REVISION)).isNull();
+    assertThat(blameCommits.size()).isZero();
+  }
+
+  @Test
+  public void should_share_commit_between_threads() throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<BlameLine>> lines = newArrayList();
+      for (int i = 0; i < 100; i++) {
+        lines.add(executor.submit(new Callable<BlameLine>() {
+          public BlameLine call() {
+            return blameCommits.line(new Date(), REVISION, "author@company.net", "author@company.net");
+          }
+        }));
+      }
+
+      for (Future<BlameLine> line : lines) {
+        assertThat(line.get()).isSameAs(blameCommits.get(REVISION));
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+}
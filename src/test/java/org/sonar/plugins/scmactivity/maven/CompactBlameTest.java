@@ -0,0 +1,87 @@
+/*
+ * Sonar SCM Activity Plugin
+ * Copyright (C) 2010 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+
+package org.sonar.plugins.scmactivity.maven;
+
+import org.apache.maven.scm.command.blame.BlameLine;
+import org.apache.maven.scm.command.blame.BlameScmResult;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class CompactBlameTest {
+  static final BlameLine FIRST = new BlameLine(new Date(1000L), "1111111111111111111111111111111111111111", "first@company.net");
+  static final BlameLine SECOND = new BlameLine(new Date(2000L), "2222222222222222222222222222222222222222", "second@company.net");
+
+  @Test
+  public void should_store_commit_index_by_line() {
+    CompactBlame blame = new CompactBlame(1);
+    int first = blame.addCommit(FIRST);
+    int second = blame.addCommit(SECOND);
+    blame.addLine(first);
+    blame.addLine(second);
+    blame.addLine(first);
+
+    assertThat(blame.getLineCount()).isEqualTo(3);
+    assertThat(blame.getCommitCount()).isEqualTo(2);
+    assertThat(blame.getCommitIndex(2)).isEqualTo(first);
+    assertThat(blame.getCommit(second)).isSameAs(SECOND);
+    assertThat(blame.asList()).containsExactly(FIRST, SECOND, FIRST);
+  }
+
+  @Test
+  public void should_group_shared_lines_by_commit() {
+    CompactBlame blame = CompactBlame.of(Arrays.asList(FIRST, FIRST, SECOND, FIRST));
+
+    assertThat(blame.getCommitCount()).isEqualTo(2);
+    assertThat(blame.asList()).containsExactly(FIRST, FIRST, SECOND, FIRST);
+  }
+
+  @Test
+  public void should_reuse_blame_of_compact_results() {
+    CompactBlame blame = CompactBlame.of(Arrays.asList(FIRST));
+
+    assertThat(CompactBlame.of(new CompactBlameScmResult("git blame", blame))).isSameAs(blame);
+    assertThat(CompactBlame.of(new BlameScmResult("svn blame", Arrays.asList(FIRST, SECOND))).asList()).containsExactly(FIRST, SECOND);
+  }
+
+  @Test(expected = IndexOutOfBoundsException.class)
+  public void should_fail_on_unknown_commit() {
+    new CompactBlame().addLine(0);
+  }
+
+  @Test(expected = IndexOutOfBoundsException.class)
+  public void should_fail_on_unknown_line() {
+    CompactBlame blame = CompactBlame.of(Arrays.asList(FIRST));
+
+    blame.asList().get(1);
+  }
+
+  @Test(expected = UnsupportedOperationException.class)
+  public void should_be_read_only() {
+    List<BlameLine> lines = CompactBlame.of(Arrays.asList(FIRST)).asList();
+
+    lines.add(SECOND);
+  }
+}
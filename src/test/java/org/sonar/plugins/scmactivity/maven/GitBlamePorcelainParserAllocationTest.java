@@ -0,0 +1,97 @@
+/*
+ * Sonar SCM Activity Plugin
+ * Copyright (C) 2010 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+
+package org.sonar.plugins.scmactivity.maven;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Joiner;
+import org.junit.Before;
+import org.junit.Test;
+import org.sonar.plugins.scmactivity.test.AllocationMeter;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.List;
+
+import static com.google.common.collect.Lists.newArrayList;
+import static org.fest.assertions.Assertions.assertThat;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Fails when a change increases the allocations per line of <code>git blame --porcelain</code> output parsed by {@link GitBlamePorcelainParser}.
+ * Lower the budget when allocations are reduced.
+ */
+public class GitBlamePorcelainParserAllocationTest {
+  static final int LINES = 1000;
+  static final long MAX_BYTES_PER_LINE = 150;
+
+  byte[] output;
+
+  @Before
+  public void setUp() {
+    assumeTrue(AllocationMeter.isSupported());
+
+    output = Joiner.on('\n').join(porcelain(LINES, 50)).getBytes(Charsets.UTF_8);
+  }
+
+  @Test
+  public void should_not_regress_allocations_per_line() {
+    long bytes = AllocationMeter.bytesPerRun(new Runnable() {
+      public void run() {
+        try {
+          new GitBlamePorcelainParser(new BlameCommits()).parse(new ByteArrayInputStream(output));
+        } catch (IOException e) {
+          throw new IllegalStateException(e);
+        }
+      }
+    });
+
+    assertThat(bytes / LINES).as("bytes allocated per line").isLessThanOrEqualTo(MAX_BYTES_PER_LINE);
+  }
+
+  /**
+   * Output of <code>git blame --porcelain</code>: the commit headers are only given the first time a commit appears.
+   */
+  static List<String> porcelain(int lineCount, int commitCount) {
+    List<String> output = newArrayList();
+    boolean[] described = new boolean[commitCount];
+    for (int i = 1; i <= lineCount; i++) {
+      int commit = (i / 8 * 7) % commitCount;
+      output.add(String.format("%040x", commit * 2654435761L) + " " + i + " " + i + " 1");
+      if (!described[commit]) {
+        described[commit] = true;
+        long time = 1300000000L + commit * 3600L;
+        String mail = "<developer" + commit + "@example.com>";
+        output.add("author Developer " + commit);
+        output.add("author-mail " + mail);
+        output.add("author-time " + time);
+        output.add("author-tz +0100");
+        output.add("committer Developer " + commit);
+        output.add("committer-mail " + mail);
+        output.add("committer-time " + time);
+        output.add("committer-tz +0100");
+        output.add("summary Commit number " + commit);
+        output.add("filename src/main/java/Foo.java");
+      }
+      output.add("\tint value" + i + " = compute(" + i + ");");
+    }
+    return output;
+  }
+}
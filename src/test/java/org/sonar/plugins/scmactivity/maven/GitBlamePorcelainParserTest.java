@@ -0,0 +1,282 @@
+/*
+ * Sonar SCM Activity Plugin
+ * Copyright (C) 2010 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+
+package org.sonar.plugins.scmactivity.maven;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Strings;
+import com.google.common.collect.Lists;
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.scm.command.blame.BlameLine;
+import org.junit.Test;
+import org.mockito.InOrder;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Date;
+import java.util.List;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class GitBlamePorcelainParserTest {
+  static final String[] OUTPUTS = {"git-blame.out", "git-blame-3.out", "git-blame-empty.out", "git-blame-new-file.out",
+    "git-blame-different-author.out"};
+
+  @Test
+  public void should_parse_blame() throws IOException {
+    List<BlameLine> lines = parse(fixture("git-blame.out"), 1024);
+
+    assertThat(lines).hasSize(187);
+    assertThat(lines.get(11).getRevision()).isEqualTo("e670863b2b03e158c59f34af1fee20f91b2bd852");
+    assertThat(lines.get(11).getAuthor()).isEqualTo("struberg@yahoo.de");
+    assertThat(lines.get(11).getDate()).isNotNull();
+  }
+
+  @Test
+  public void should_parse_blame_with_repeated_commits() throws IOException {
+    List<BlameLine> lines = parse(fixture("git-blame-3.out"), 1024);
+
+    assertThat(lines).hasSize(36);
+    assertThat(lines.get(11).getRevision()).isEqualTo("e670863b2b03e158c59f34af1fee20f91b2bd852");
+    assertThat(lines.get(11).getAuthor()).isEqualTo("struberg@yahoo.de");
+    assertThat(lines.get(11).getDate()).isNotNull();
+  }
+
+  @Test
+  public void should_parse_empty_file() throws IOException {
+    assertThat(parse(fixture("git-blame-empty.out"), 1024)).isEmpty();
+  }
+
+  /**
+   * File not added to the repository yet.
+   */
+  @Test
+  public void should_parse_new_file() throws IOException {
+    List<BlameLine> lines = parse(fixture("git-blame-new-file.out"), 1024);
+
+    assertThat(lines).hasSize(3);
+    assertThat(lines.get(0).getRevision()).isEqualTo("0000000000000000000000000000000000000000");
+    assertThat(lines.get(0).getAuthor()).isEqualTo("not.committed.yet");
+  }
+
+  @Test
+  public void should_parse_different_author_and_committer() throws IOException {
+    List<BlameLine> lines = parse(fixture("git-blame-different-author.out"), 1024);
+
+    assertThat(lines).hasSize(93);
+    assertThat(lines.get(0).getRevision()).isEqualTo("39574726d20f62023d39311e6032c7ab0a9d3cdb");
+    assertThat(lines.get(0).getAuthor()).isEqualTo("struberg@yahoo.de");
+    assertThat(lines.get(0).getCommitter()).isEqualTo("struberg@yahoo.de");
+    assertThat(lines.get(12).getRevision()).isEqualTo("41e5bc05953781a5702f597a1a36c55371b517d3");
+    assertThat(lines.get(12).getAuthor()).isEqualTo("another-email@struct.at");
+    assertThat(lines.get(12).getCommitter()).isEqualTo("struberg@yahoo.de");
+  }
+
+  @Test
+  public void should_extract_commit_data() throws IOException {
+    String output = "1111111111111111111111111111111111111111 1 1 1\n"
+      + "author Dave Loper\n"
+      + "author-mail <author@company.net>\n"
+      + "author-time 1332150000\n"
+      + "author-tz +0000\n"
+      + "committer Dave Loper\n"
+      + "committer-mail <committer@company.net>\n"
+      + "committer-time 1332152193\n"
+      + "committer-tz +0000\n"
+      + "\tfoo\n";
+
+    BlameLine line = parse(output, 1024).get(0);
+
+    assertThat(line.getAuthor()).isEqualTo("author@company.net");
+    assertThat(line.getCommitter()).isEqualTo("committer@company.net");
+    assertThat(line.getDate()).isEqualTo(new Date(1332152193000L));
+  }
+
+  @Test
+  public void should_handle_crlf_line_breaks() throws IOException {
+    String output = header("1111111111111111111111111111111111111111", "developer@company.net").replace("\n", "\r\n") + "\tfoo\r\n";
+
+    BlameLine line = parse(output, 16).get(0);
+
+    assertThat(line.getRevision()).isEqualTo("1111111111111111111111111111111111111111");
+    assertThat(line.getCommitter()).isEqualTo("developer@company.net");
+    assertThat(line.getDate()).isEqualTo(new Date(1332152193000L));
+  }
+
+  @Test
+  public void should_not_depend_on_buffer_size() throws IOException {
+    for (String name : OUTPUTS) {
+      String output = fixture(name);
+
+      assertThat(describe(parse(output, 16))).as(name).isEqualTo(describe(parse(output, 64 * 1024)));
+    }
+  }
+
+  @Test
+  public void should_share_lines_of_same_commit() throws IOException {
+    String output = fixture("git-blame-different-author.out");
+
+    List<BlameLine> lines = parse(output, 1024);
+
+    assertThat(lines.get(2)).isSameAs(lines.get(1));
+    assertThat(lines.get(6)).isSameAs(lines.get(1));
+    assertThat(lines.get(12).getCommitter()).isSameAs(lines.get(0).getCommitter());
+  }
+
+  @Test
+  public void should_share_lines_of_same_commit_between_files() throws IOException {
+    BlameCommits blameCommits = new BlameCommits();
+    String revision = "1111111111111111111111111111111111111111";
+
+    BlameLine first = parse(header(revision, "dev@company.net") + "\tfoo\n", 1024, blameCommits).get(0);
+    BlameLine second = parse(header(revision, "other@company.net") + "\tbar\n", 1024, blameCommits).get(0);
+
+    assertThat(second).isSameAs(first);
+    // Metadata of a known commit is not decoded again
+    assertThat(second.getAuthor()).isEqualTo("dev@company.net");
+    assertThat(blameCommits.get(revision)).isSameAs(first);
+  }
+
+  @Test
+  public void should_skip_content_lines_longer_than_buffer() throws IOException {
+    String output = header("1111111111111111111111111111111111111111", "first@company.net") + "\t" + Strings.repeat("x", 1000) + "\n"
+      + header("2222222222222222222222222222222222222222", "second@company.net") + "\t" + Strings.repeat("y", 1000);
+
+    List<BlameLine> lines = parse(output, 32);
+
+    assertThat(lines).hasSize(2);
+    assertThat(lines.get(0).getAuthor()).isEqualTo("first@company.net");
+    assertThat(lines.get(1).getRevision()).isEqualTo("2222222222222222222222222222222222222222");
+    assertThat(lines.get(1).getDate().getTime()).isEqualTo(1332152193000L);
+  }
+
+  @Test
+  public void should_parse_sha256_revisions() throws IOException {
+    String sha1 = Strings.repeat("a", 40);
+    String sha256 = sha1 + Strings.repeat("b", 24);
+    String output = header(sha256, "first@company.net") + "\tfoo\n" + header(sha1, "second@company.net") + "\tbar\n"
+      + sha256 + " 3 3\n\tbaz\n";
+
+    List<BlameLine> lines = parse(output, 16);
+
+    assertThat(lines).hasSize(3);
+    assertThat(lines.get(0).getRevision()).isEqualTo(sha256);
+    assertThat(lines.get(1).getRevision()).isEqualTo(sha1);
+    assertThat(lines.get(1).getAuthor()).isEqualTo("second@company.net");
+    assertThat(lines.get(2)).isSameAs(lines.get(0));
+  }
+
+  @Test(expected = IOException.class)
+  public void should_fail_on_short_revision() throws IOException {
+    parse(header("1111111", "dev@company.net") + "\tfoo\n", 1024);
+  }
+
+  @Test(expected = IOException.class)
+  public void should_fail_on_malformed_revision() throws IOException {
+    parse(header(Strings.repeat("x", 40), "dev@company.net") + "\tfoo\n", 1024);
+  }
+
+  @Test
+  public void should_decode_utf8_emails() throws IOException {
+    List<BlameLine> lines = parse(header("1111111111111111111111111111111111111111", "développeur@company.net") + "\tfoo\n", 16);
+
+    assertThat(lines.get(0).getAuthor()).isEqualTo("développeur@company.net");
+  }
+
+  @Test
+  public void should_push_lines_to_sink() throws IOException {
+    String output = fixture("git-blame-different-author.out");
+    BlameSink sink = mock(BlameSink.class);
+    when(sink.addCommit(any(BlameLine.class))).thenReturn(7, 8, 9);
+
+    GitBlamePorcelainParser parser = new GitBlamePorcelainParser(new BlameCommits(), sink);
+    parser.parse(stream(output));
+
+    InOrder inOrder = inOrder(sink);
+    inOrder.verify(sink).addCommit(any(BlameLine.class));
+    inOrder.verify(sink).addLine(7);
+    inOrder.verify(sink).addCommit(any(BlameLine.class));
+    inOrder.verify(sink, atLeastOnce()).addLine(8);
+    verify(sink, times(parse(output, 1024).size())).addLine(anyInt());
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void should_not_keep_lines_pushed_to_sink() {
+    new GitBlamePorcelainParser(new BlameCommits(), mock(BlameSink.class)).getLines();
+  }
+
+  @Test
+  public void should_record_parse_time() throws IOException {
+    GitBlamePorcelainParser parser = new GitBlamePorcelainParser(new BlameCommits());
+    parser.parse(new ByteArrayInputStream(header("1111111111111111111111111111111111111111", "dev@company.net").getBytes(Charsets.UTF_8)));
+
+    assertThat(parser.getParseNanos()).isGreaterThan(0);
+  }
+
+  static String header(String revision, String email) {
+    return revision + " 1 1 1\n"
+      + "author Dev\n"
+      + "author-mail <" + email + ">\n"
+      + "author-time 1332152193\n"
+      + "author-tz +0000\n"
+      + "committer Dev\n"
+      + "committer-mail <" + email + ">\n"
+      + "committer-time 1332152193\n"
+      + "committer-tz +0000\n"
+      + "summary Some\tsummary\n"
+      + "filename Foo.java\n";
+  }
+
+  static List<BlameLine> parse(String output, int bufferSize) throws IOException {
+    return parse(output, bufferSize, new BlameCommits());
+  }
+
+  static List<BlameLine> parse(String output, int bufferSize, BlameCommits blameCommits) throws IOException {
+    CompactBlame blame = new CompactBlame();
+    new GitBlamePorcelainParser(bufferSize, blameCommits, blame).parse(stream(output));
+    return blame.asList();
+  }
+
+  static InputStream stream(String output) {
+    return new ByteArrayInputStream(output.getBytes(Charsets.UTF_8));
+  }
+
+  static String fixture(String name) throws IOException {
+    return FileUtils.readFileToString(new File("src/test/resources/git/blame/" + name), "UTF-8");
+  }
+
+  static List<String> describe(List<BlameLine> lines) {
+    List<String> descriptions = Lists.newArrayList();
+    for (BlameLine line : lines) {
+      descriptions.add(line.getRevision() + " " + line.getAuthor() + " " + line.getCommitter() + " " + line.getDate().getTime());
+    }
+    return descriptions;
+  }
+}
@@ -0,0 +1,65 @@
+/*
+ * Sonar SCM Activity Plugin
+ * Copyright (C) 2010 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+
+package org.sonar.plugins.scmactivity.maven;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.junit.Assume.assumeTrue;
+import static org.sonar.plugins.scmactivity.test.GitCommands.isGitInstalled;
+
+public class ProcessWatchdogTest {
+  @Test(timeout = 10000)
+  public void should_destroy_process_of_interrupted_thread() throws Exception {
+    assumeTrue(isGitInstalled());
+    // Waits for its input until it's closed
+    final Process process = new ProcessBuilder("git", "hash-object", "--stdin").start();
+    final CountDownLatch ended = new CountDownLatch(1);
+
+    Thread reader = new Thread(new Runnable() {
+      public void run() {
+        ProcessWatchdog.watch(process);
+        try {
+          while (process.getInputStream().read() != -1) {
+            // Blocks until the process is destroyed
+          }
+        } catch (IOException e) {
+          // Destroyed
+        } finally {
+          ProcessWatchdog.unwatch(process);
+          ended.countDown();
+        }
+      }
+    });
+    reader.start();
+    Thread.sleep(2 * ProcessWatchdog.PERIOD_MILLIS);
+    assertThat(ended.getCount()).isEqualTo(1);
+
+    reader.interrupt();
+
+    assertThat(ended.await(5, TimeUnit.SECONDS)).isTrue();
+    process.getOutputStream().close();
+  }
+}
@@ -0,0 +1,120 @@
+/*
+ * Sonar SCM Activity Plugin
+ * Copyright (C) 2010 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+
+package org.sonar.plugins.scmactivity.maven;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.scm.CommandParameter;
+import org.apache.maven.scm.CommandParameters;
+import org.apache.maven.scm.ScmFileSet;
+import org.apache.maven.scm.command.blame.BlameLine;
+import org.apache.maven.scm.command.blame.BlameScmResult;
+import org.apache.maven.scm.log.DefaultLog;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.junit.Assume.assumeTrue;
+import static org.sonar.plugins.scmactivity.test.GitCommands.git;
+import static org.sonar.plugins.scmactivity.test.GitCommands.isGitInstalled;
+
+public class SonarGitBlameCommandTest {
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  File repository;
+  SonarGitBlameCommand command = new SonarGitBlameCommand(new BlameCommits());
+
+  @Before
+  public void setUp() throws IOException {
+    assumeTrue(isGitInstalled());
+
+    repository = temp.newFolder("repository");
+    command.setLogger(new DefaultLog());
+    git(repository, "init", "-q");
+    git(repository, "config", "commit.gpgsign", "false");
+    git(repository, "config", "user.name", "developer");
+    git(repository, "config", "user.email", "developer@company.net");
+  }
+
+  @Test
+  public void should_blame_file() throws Exception {
+    FileUtils.writeStringToFile(new File(repository, "Foo.java"), "a\nb\n");
+    git(repository, "add", "-A");
+    git(repository, "commit", "-q", "-m", "First", "--date", "1300000000 +0000");
+    String revision = git(repository, "rev-parse", "HEAD").trim();
+    FileUtils.writeStringToFile(new File(repository, "Foo.java"), "a\nb\nc\n");
+
+    BlameScmResult result = blame("Foo.java");
+
+    assertThat(result.isSuccess()).isTrue();
+    assertThat(result).isInstanceOf(TimedBlameScmResult.class);
+    List<BlameLine> lines = result.getLines();
+    assertThat(lines).hasSize(3);
+    assertThat(lines.get(0).getRevision()).isEqualTo(revision);
+    assertThat(lines.get(0).getAuthor()).isEqualTo("developer@company.net");
+    assertThat(lines.get(1).getRevision()).isEqualTo(revision);
+    assertThat(lines.get(2).getRevision()).isEqualTo("0000000000000000000000000000000000000000");
+    assertThat(lines.get(2).getAuthor()).isEqualTo("not.committed.yet");
+  }
+
+  @Test
+  public void should_attribute_merged_lines_to_merge_commit_when_following_first_parent() throws Exception {
+    FileUtils.writeStringToFile(new File(repository, "Foo.java"), "a\n");
+    git(repository, "add", "-A");
+    git(repository, "commit", "-q", "-m", "First");
+    git(repository, "checkout", "-q", "-b", "feature");
+    FileUtils.writeStringToFile(new File(repository, "Foo.java"), "a\nfeature\n");
+    git(repository, "commit", "-q", "-a", "-m", "Feature");
+    String feature = git(repository, "rev-parse", "HEAD").trim();
+    git(repository, "checkout", "-q", "-");
+    FileUtils.writeStringToFile(new File(repository, "Other.java"), "other\n");
+    git(repository, "add", "-A");
+    git(repository, "commit", "-q", "-m", "Second");
+    git(repository, "merge", "-q", "--no-ff", "-m", "Merge", "feature");
+    String merge = git(repository, "rev-parse", "HEAD").trim();
+
+    assertThat(blame("Foo.java").getLines().get(1).getRevision()).isEqualTo(feature);
+
+    command = new SonarGitBlameCommand(new BlameCommits(), true);
+    command.setLogger(new DefaultLog());
+    assertThat(blame("Foo.java").getLines().get(1).getRevision()).isEqualTo(merge);
+  }
+
+  @Test
+  public void should_fail_on_unknown_file() throws Exception {
+    BlameScmResult result = blame("Unknown.java");
+
+    assertThat(result.isSuccess()).isFalse();
+    assertThat(result.getCommandOutput()).isNotEmpty();
+  }
+
+  private BlameScmResult blame(String filename) throws Exception {
+    CommandParameters parameters = new CommandParameters();
+    parameters.setString(CommandParameter.FILE, filename);
+    return (BlameScmResult) command.executeCommand(null, new ScmFileSet(repository), parameters);
+  }
+}
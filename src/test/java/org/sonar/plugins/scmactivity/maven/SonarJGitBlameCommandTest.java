@@ -0,0 +1,148 @@
+/*
+ * Sonar SCM Activity Plugin
+ * Copyright (C) 2010 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+
+package org.sonar.plugins.scmactivity.maven;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.scm.ScmFileSet;
+import org.apache.maven.scm.command.blame.BlameLine;
+import org.apache.maven.scm.command.blame.BlameScmResult;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.Date;
+import java.util.List;
+import java.util.TimeZone;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class SonarJGitBlameCommandTest {
+  static final PersonIdent AUTHOR = new PersonIdent("Author", "author@mail.com", new Date(1300000000000L), TimeZone.getTimeZone("UTC"));
+  static final PersonIdent COMMITTER = new PersonIdent("Committer", "committer@mail.com", new Date(1300003600000L), TimeZone.getTimeZone("UTC"));
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  File repository;
+  Git git;
+  BlameCommits blameCommits = new BlameCommits();
+  JGitRepositories repositories = new JGitRepositories();
+  SonarJGitBlameCommand command = new SonarJGitBlameCommand(repositories, blameCommits);
+
+  @Before
+  public void setUp() throws Exception {
+    repository = temp.newFolder("repo");
+    git = Git.init().setDirectory(repository).call();
+  }
+
+  @Test
+  public void should_blame_committed_lines() throws Exception {
+    RevCommit first = commit("src/Foo.java", "one\ntwo\n");
+    RevCommit second = commit("src/Foo.java", "one\n  two\nthree\n");
+
+    List<BlameLine> lines = blame("src/Foo.java");
+
+    assertThat(lines).hasSize(3);
+    assertThat(lines.get(0).getRevision()).isEqualTo(first.getName());
+    assertThat(lines.get(0).getAuthor()).isEqualTo("author@mail.com");
+    assertThat(lines.get(0).getCommitter()).isEqualTo("committer@mail.com");
+    assertThat(lines.get(0).getDate()).isEqualTo(new Date(1300003600000L));
+    // Whitespace changes are ignored
+    assertThat(lines.get(1).getRevision()).isEqualTo(first.getName());
+    assertThat(lines.get(2).getRevision()).isEqualTo(second.getName());
+  }
+
+  @Test
+  public void should_reopen_repositories_once_closed() throws Exception {
+    RevCommit first = commit("Foo.java", "one\n");
+    blame("Foo.java");
+    assertThat(repositories.size()).isEqualTo(1);
+
+    repositories.close();
+
+    assertThat(repositories.size()).isZero();
+    assertThat(blame("Foo.java").get(0).getRevision()).isEqualTo(first.getName());
+  }
+
+  @Test
+  public void should_blame_uncommitted_lines() throws Exception {
+    RevCommit first = commit("Foo.java", "one\n");
+    FileUtils.writeStringToFile(new File(repository, "Foo.java"), "one\ntwo\n");
+
+    List<BlameLine> lines = blame("Foo.java");
+
+    assertThat(lines).hasSize(2);
+    assertThat(lines.get(0).getRevision()).isEqualTo(first.getName());
+    assertThat(lines.get(1).getRevision()).isEqualTo(SonarJGitBlameCommand.NOT_COMMITTED_REVISION);
+    assertThat(lines.get(1).getAuthor()).isEqualTo(SonarJGitBlameCommand.NOT_COMMITTED_AUTHOR);
+  }
+
+  @Test
+  public void should_share_lines_of_same_commit_between_files() throws Exception {
+    FileUtils.writeStringToFile(new File(repository, "Foo.java"), "one\n");
+    FileUtils.writeStringToFile(new File(repository, "Bar.java"), "two\nthree\n");
+    git.add().addFilepattern(".").call();
+    RevCommit commit = git.commit().setMessage("both").setAuthor(AUTHOR).setCommitter(COMMITTER).call();
+
+    List<BlameLine> foo = blame("Foo.java");
+    List<BlameLine> bar = blame("Bar.java");
+
+    assertThat(bar.get(0)).isSameAs(foo.get(0));
+    assertThat(bar.get(1)).isSameAs(foo.get(0));
+    assertThat(blameCommits.get(commit.getName())).isSameAs(foo.get(0));
+  }
+
+  @Test
+  public void should_blame_from_sub_directory() throws Exception {
+    RevCommit first = commit("module/src/Foo.java", "one\n");
+
+    BlameScmResult result = command.executeBlameCommand(null, new ScmFileSet(new File(repository, "module")), "src/Foo.java");
+
+    assertThat(result.isSuccess()).isTrue();
+    assertThat(result.getLines().get(0).getRevision()).isEqualTo(first.getName());
+  }
+
+  @Test
+  public void should_fail_on_unknown_file() throws Exception {
+    commit("Foo.java", "one\n");
+
+    BlameScmResult result = command.executeBlameCommand(null, new ScmFileSet(repository), "Bar.java");
+
+    assertThat(result.isSuccess()).isFalse();
+  }
+
+  List<BlameLine> blame(String filename) throws Exception {
+    BlameScmResult result = command.executeBlameCommand(null, new ScmFileSet(repository), filename);
+    assertThat(result.isSuccess()).isTrue();
+    return result.getLines();
+  }
+
+  RevCommit commit(String path, String content) throws Exception {
+    FileUtils.writeStringToFile(new File(repository, path), content);
+    git.add().addFilepattern(path).call();
+    return git.commit().setMessage("change " + path).setAuthor(AUTHOR).setCommitter(COMMITTER).call();
+  }
+}
@@ -0,0 +1,80 @@
+/*
+ * Sonar SCM Activity Plugin
+ * Copyright (C) 2010 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+
+package org.sonar.plugins.scmactivity.maven;
+
+import org.apache.maven.scm.command.blame.BlameLine;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Date;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class StringPoolTest {
+  StringPool strings = new StringPool();
+
+  @Test
+  public void should_return_first_instance() {
+    String first = new String("dev@company.net");
+    String second = new String("dev@company.net");
+
+    assertThat(strings.intern(first)).isSameAs(first);
+    assertThat(strings.intern(second)).isSameAs(first);
+    assertThat(strings.intern(null)).isNull();
+    assertThat(strings.size()).isEqualTo(1);
+  }
+
+  @Test
+  public void should_count_hits_and_misses() {
+    strings.intern("a");
+    strings.intern("a");
+    strings.intern("a");
+    strings.intern("b");
+
+    assertThat(strings.getHits()).isEqualTo(2);
+    assertThat(strings.getMisses()).isEqualTo(2);
+  }
+
+  @Test
+  public void should_intern_values_of_lines() {
+    String author = strings.intern("dev@company.net");
+    String revision = strings.intern("12");
+    BlameLine line = new BlameLine(new Date(), new String("12"), new String("dev@company.net"), new String("dev@company.net"));
+
+    strings.internAll(Arrays.asList(line));
+
+    assertThat(line.getAuthor()).isSameAs(author);
+    assertThat(line.getCommitter()).isSameAs(author);
+    assertThat(line.getRevision()).isSameAs(revision);
+  }
+
+  @Test
+  public void should_forget_values_and_statistics_on_clear() {
+    strings.intern("a");
+    strings.intern("a");
+
+    strings.clear();
+
+    assertThat(strings.size()).isZero();
+    assertThat(strings.getHits()).isZero();
+    assertThat(strings.getMisses()).isZero();
+  }
+}
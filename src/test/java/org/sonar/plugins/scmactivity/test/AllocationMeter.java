@@ -0,0 +1,65 @@
+/*
+ * Sonar SCM Activity Plugin
+ * Copyright (C) 2010 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+
+package org.sonar.plugins.scmactivity.test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Measures the bytes allocated on the heap by the current thread, on the JVMs which expose
+ * <code>com.sun.management.ThreadMXBean#getThreadAllocatedBytes()</code> (HotSpot and OpenJ9).
+ * <p/>
+ * The code is run a number of times first so that the measure is taken on compiled code, like in a real analysis.
+ */
+public final class AllocationMeter {
+  private static final int WARMUP_RUNS = 200;
+  private static final int MEASURED_RUNS = 50;
+
+  private AllocationMeter() {
+    // static utility class
+  }
+
+  public static boolean isSupported() {
+    ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+    if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+      return false;
+    }
+    com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) bean;
+    return allocations.isThreadAllocatedMemorySupported() && allocations.isThreadAllocatedMemoryEnabled();
+  }
+
+  /**
+   * @return the average number of bytes allocated by one run of the given code
+   */
+  public static long bytesPerRun(Runnable code) {
+    for (int i = 0; i < WARMUP_RUNS; i++) {
+      code.run();
+    }
+
+    long threadId = Thread.currentThread().getId();
+    com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    long before = bean.getThreadAllocatedBytes(threadId);
+    for (int i = 0; i < MEASURED_RUNS; i++) {
+      code.run();
+    }
+    return (bean.getThreadAllocatedBytes(threadId) - before) / MEASURED_RUNS;
+  }
+}
@@ -0,0 +1,64 @@
+/*
+ * Sonar SCM Activity Plugin
+ * Copyright (C) 2010 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+
+package org.sonar.plugins.scmactivity.test;
+
+import com.google.common.collect.Lists;
+import org.apache.commons.io.IOUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+/**
+ * Runs the git command line in the tests, which should be skipped when git is not installed.
+ */
+public final class GitCommands {
+  private GitCommands() {
+    // only static methods
+  }
+
+  public static boolean isGitInstalled() {
+    try {
+      return new ProcessBuilder("git", "--version").start().waitFor() == 0;
+    } catch (Exception e) {
+      return false;
+    }
+  }
+
+  /**
+   * @return the output of the command, which must succeed
+   */
+  public static String git(File directory, String... args) throws IOException {
+    List<String> command = Lists.newArrayList("git");
+    command.addAll(Arrays.asList(args));
+    Process process = new ProcessBuilder(command).directory(directory).redirectErrorStream(true).start();
+    try {
+      String output = IOUtils.toString(process.getInputStream(), "UTF-8");
+      assertThat(process.waitFor()).as(output).isEqualTo(0);
+      return output;
+    } catch (InterruptedException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+}